@@ -0,0 +1,90 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import net.fabricmc.mappingio.tree.MappingTree;
+import org.cadixdev.lorenz.MappingSet;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The shared state of the benchmarks, holding synthetic mappings
+ * both on disk and loaded.
+ */
+@State(Scope.Benchmark)
+public class MappingsState {
+
+	@Param("20000")
+	public int classes;
+
+	@Param("42")
+	public long seed;
+
+	Path directory;
+	Path primary;
+	Path secondary;
+
+	MappingTree primaryTree;
+	MappingTree secondaryTree;
+	MappingSet mappings;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		final SyntheticMappings generator = new SyntheticMappings(this.classes, this.seed);
+
+		this.directory = Files.createTempDirectory("lorenz-tiny-jmh");
+		this.primary = this.directory.resolve("primary.tiny");
+		this.secondary = this.directory.resolve("secondary.tiny");
+		generator.writePrimary(this.primary);
+		generator.writeSecondary(this.secondary);
+
+		this.primaryTree = load(this.primary);
+		this.secondaryTree = load(this.secondary);
+		this.mappings = new TinyMappingsReader(this.primaryTree, "official", "named").read(MappingSet.create());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(this.primary);
+		Files.deleteIfExists(this.secondary);
+		Files.deleteIfExists(this.directory);
+	}
+
+	static MappingTree load(final Path path) throws IOException {
+		try (final BufferedReader reader = Files.newBufferedReader(path)) {
+			return TinyMappingFormat.TINY_2.load(reader);
+		}
+	}
+
+}
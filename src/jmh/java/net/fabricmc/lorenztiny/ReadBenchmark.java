@@ -0,0 +1,71 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import net.fabricmc.mappingio.tree.MappingTree;
+import org.cadixdev.lorenz.MappingSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks parsing Tiny v2 mappings, and converting them into
+ * a {@link MappingSet mapping set}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ReadBenchmark {
+
+	@Benchmark
+	public MappingTree parse(final MappingsState state) throws IOException {
+		return MappingsState.load(state.primary);
+	}
+
+	@Benchmark
+	public MappingSet convert(final MappingsState state) {
+		return new TinyMappingsReader(state.primaryTree, "official", "named").read(MappingSet.create());
+	}
+
+	@Benchmark
+	public MappingSet convertFromIntermediary(final MappingsState state) {
+		return new TinyMappingsReader(state.primaryTree, "intermediary", "named").read(MappingSet.create());
+	}
+
+	@Benchmark
+	public MappingSet readStreaming(final MappingsState state) throws IOException {
+		return TinyMappingFormat.TINY_2.readStreaming(state.primary, "official", "named");
+	}
+
+}
@@ -0,0 +1,189 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.function.IntFunction;
+
+/**
+ * A deterministic generator of synthetic Tiny v2 mappings, shaped
+ * like those of a Minecraft version.
+ * <p>
+ * The primary mappings have the namespaces {@code official},
+ * {@code intermediary} and {@code named}. The secondary mappings
+ * have the namespaces {@code intermediary} and {@code mojmap}, so
+ * that they can be joined against the primary mappings by their
+ * intermediary names. The same seed and size always produce the
+ * same files.
+ */
+final class SyntheticMappings {
+
+	private static final String PRIMITIVES = "ZBCSIJFD";
+
+	private final int classes;
+	private final long seed;
+
+	/**
+	 * Creates a new generator.
+	 *
+	 * @param classes The number of classes to generate, each having
+	 *                on average 6 fields and 12 methods
+	 * @param seed The random seed
+	 */
+	SyntheticMappings(final int classes, final long seed) {
+		this.classes = classes;
+		this.seed = seed;
+	}
+
+	void writePrimary(final Path path) throws IOException {
+		try (final Writer writer = new BufferedWriter(Files.newBufferedWriter(path), 1 << 16)) {
+			writer.write("tiny\t2\t0\tofficial\tintermediary\tnamed\n");
+			this.write(writer, SyntheticMappings::obfuscated, true);
+		}
+	}
+
+	void writeSecondary(final Path path) throws IOException {
+		try (final Writer writer = new BufferedWriter(Files.newBufferedWriter(path), 1 << 16)) {
+			writer.write("tiny\t2\t0\tintermediary\tmojmap\n");
+			this.write(writer, SyntheticMappings::intermediary, false);
+		}
+	}
+
+	private void write(final Writer writer, final IntFunction<String> classNames, final boolean primary) throws IOException {
+		// Both files are generated from the same sequence, so that they match
+		final SplittableRandom random = new SplittableRandom(this.seed);
+		final StringBuilder desc = new StringBuilder();
+		int fieldId = 0;
+		int methodId = 0;
+
+		for (int klass = 0; klass < this.classes; klass++) {
+			final String pkg = "pkg" + random.nextInt(64);
+			writer.write("c\t");
+			writer.write(classNames.apply(klass));
+			writer.write('\t');
+			if (primary) {
+				writer.write(intermediary(klass));
+				writer.write('\t');
+				writer.write("net/minecraft/" + pkg + "/Named" + klass);
+			}
+			else {
+				writer.write("net/minecraft/" + pkg + "/Moj" + klass);
+			}
+			writer.write('\n');
+
+			final int fields = random.nextInt(13);
+			for (int i = 0; i < fields; i++) {
+				desc.setLength(0);
+				this.type(random, desc, classNames);
+
+				writer.write("\tf\t");
+				writer.write(desc.toString());
+				writer.write('\t');
+				this.member(writer, primary, obfuscated(i), "field_" + fieldId, "field" + fieldId, "mojField" + fieldId);
+				fieldId++;
+			}
+
+			final int methods = random.nextInt(25);
+			for (int i = 0; i < methods; i++) {
+				final int params = random.nextInt(5);
+				desc.setLength(0);
+				desc.append('(');
+				for (int j = 0; j < params; j++) {
+					this.type(random, desc, classNames);
+				}
+				desc.append(')');
+				if (random.nextInt(3) == 0) desc.append('V');
+				else this.type(random, desc, classNames);
+
+				writer.write("\tm\t");
+				writer.write(desc.toString());
+				writer.write('\t');
+				this.member(writer, primary, obfuscated(i), "method_" + methodId, "method" + methodId, "mojMethod" + methodId);
+
+				for (int j = 0; j < params; j++) {
+					writer.write("\t\tp\t");
+					writer.write(Integer.toString(j + 1));
+					writer.write("\t\t");
+					if (primary) writer.write('\t');
+					writer.write((primary ? "arg" : "mojArg") + j);
+					writer.write('\n');
+				}
+				methodId++;
+			}
+		}
+	}
+
+	private void member(final Writer writer, final boolean primary,
+	                    final String obfuscated, final String intermediary,
+	                    final String named, final String mojmap) throws IOException {
+		if (primary) {
+			writer.write(obfuscated);
+			writer.write('\t');
+			writer.write(intermediary);
+			writer.write('\t');
+			writer.write(named);
+		}
+		else {
+			writer.write(intermediary);
+			writer.write('\t');
+			writer.write(mojmap);
+		}
+		writer.write('\n');
+	}
+
+	private void type(final SplittableRandom random, final StringBuilder desc, final IntFunction<String> classNames) {
+		if (random.nextInt(8) == 0) desc.append('[');
+
+		final int kind = random.nextInt(4);
+		if (kind == 0) {
+			desc.append(PRIMITIVES.charAt(random.nextInt(PRIMITIVES.length())));
+		}
+		else if (kind == 1) {
+			desc.append("Ljava/lang/String;");
+		}
+		else {
+			desc.append('L').append(classNames.apply(random.nextInt(this.classes))).append(';');
+		}
+	}
+
+	private static String obfuscated(int index) {
+		final StringBuilder builder = new StringBuilder();
+		do {
+			builder.append((char) ('a' + index % 26));
+			index = index / 26 - 1;
+		} while (index >= 0);
+		return builder.reverse().toString();
+	}
+
+	private static String intermediary(final int index) {
+		return "net/minecraft/class_" + index;
+	}
+
+}
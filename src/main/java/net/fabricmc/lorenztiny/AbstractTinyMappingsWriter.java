@@ -24,37 +24,146 @@
 
 package net.fabricmc.lorenztiny;
 
-import java.io.BufferedWriter;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import org.cadixdev.bombe.type.FieldType;
 import org.cadixdev.lorenz.io.MappingsWriter;
 import org.cadixdev.lorenz.model.FieldMapping;
 
 abstract class AbstractTinyMappingsWriter extends MappingsWriter {
 
+	/**
+	 * A print writer over the same output as this writer, for subclasses
+	 * written against it. It is unbuffered, so it may be used alongside
+	 * the writer's own output.
+	 */
 	protected final PrintWriter writer;
+	private final TinyOutput output;
 
 	protected final String from;
 	protected final String to;
 
+	protected TinyMetrics metrics = TinyMetrics.NONE;
+
 	AbstractTinyMappingsWriter(final Writer writer, final String from, final String to) {
-		this.writer = writer instanceof PrintWriter ?
-				(PrintWriter) writer :
-				writer instanceof BufferedWriter ?
-						new PrintWriter(writer) :
-						new PrintWriter(new BufferedWriter(writer));
+		this(new TinyOutput(writer), from, to);
+	}
+
+	AbstractTinyMappingsWriter(final OutputStream stream, final String from, final String to) {
+		this(new TinyOutput(stream), from, to);
+	}
+
+	AbstractTinyMappingsWriter(final WritableByteChannel channel, final String from, final String to) {
+		this(new TinyOutput(channel), from, to);
+	}
+
+	private AbstractTinyMappingsWriter(final TinyOutput output, final String from, final String to) {
+		this.output = output;
+		this.writer = new PrintWriter(output.asWriter());
 		this.from = from;
 		this.to = to;
 	}
 
+	/**
+	 * Sets the metrics to report writing to.
+	 *
+	 * @param metrics The metrics
+	 * @since 4.1.0
+	 */
+	public void setMetrics(final TinyMetrics metrics) {
+		this.metrics = metrics != null ? metrics : TinyMetrics.NONE;
+	}
+
+	/**
+	 * Sorts the given list in place, unless it is already sorted.
+	 *
+	 * @return The time spent sorting, if metrics are enabled, otherwise {@code 0}
+	 */
+	protected <T> long sort(final List<T> list, final Comparator<? super T> comparator) {
+		if (!this.metrics.isEnabled()) {
+			if (!isSorted(list, comparator)) list.sort(comparator);
+			return 0;
+		}
+
+		final long start = System.nanoTime();
+		if (!isSorted(list, comparator)) list.sort(comparator);
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Passes the items matching the filter to the given action, in sorted order.
+	 * <p>
+	 * Where the items are already in order, as when read from a sorted file
+	 * into an {@link InsertionOrderedModelFactory insertion ordered} mapping
+	 * set, they are passed on directly without being copied. Otherwise the
+	 * matching items are collected and sorted first.
+	 */
+	protected static <T> void forEachSorted(final Collection<? extends T> items, final Predicate<? super T> filter,
+	                                        final Comparator<? super T> comparator, final Consumer<? super T> action) {
+		if (items.isEmpty()) return;
+
+		if (isSorted(items, comparator)) {
+			for (final T item : items) {
+				if (filter.test(item)) action.accept(item);
+			}
+			return;
+		}
+
+		final List<T> list = new ArrayList<>(items.size());
+		for (final T item : items) {
+			if (filter.test(item)) list.add(item);
+		}
+		list.sort(comparator);
+		list.forEach(action);
+	}
+
+	private static <T> boolean isSorted(final Iterable<? extends T> items, final Comparator<? super T> comparator) {
+		T previous = null;
+		for (final T item : items) {
+			if (previous != null && comparator.compare(previous, item) > 0) return false;
+			previous = item;
+		}
+		return true;
+	}
+
+	/**
+	 * Reports a completed write to the metrics, with all time not spent
+	 * sorting counted as rendering.
+	 *
+	 * @param start The time the write started, from {@link System#nanoTime()}
+	 * @param sortNanos The time spent sorting
+	 * @param written The amount written before the write started
+	 */
+	protected void reportWrite(final long start, final long sortNanos, final long written) {
+		this.metrics.phase(TinyMetrics.Phase.SORT, sortNanos);
+		this.metrics.phase(TinyMetrics.Phase.RENDER, System.nanoTime() - start - sortNanos);
+		this.metrics.bytesWritten(this.output.getWritten() - written);
+	}
+
 	protected FieldType requireType(final FieldMapping mapping) {
 		return mapping.getType().orElseThrow(() ->
 				new IllegalStateException("Field mapping does not have type information: " + mapping));
 	}
 
+	/**
+	 * Gets the output being written to.
+	 *
+	 * @return The output
+	 */
+	TinyOutput getOutput() {
+		return this.output;
+	}
+
 	@Override
 	public void close() {
-		this.writer.close();
+		this.output.close();
 	}
 }
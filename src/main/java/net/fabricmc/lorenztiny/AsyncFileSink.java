@@ -0,0 +1,210 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A {@link WritableByteChannel channel} that writes to a file behind
+ * the producer, through an {@link AsynchronousFileChannel asynchronous
+ * channel}.
+ * <p>
+ * Each write is copied and handed to the file channel, so the producer can
+ * carry on while the disk is written. The producer only waits once a fixed
+ * number of writes are outstanding. Writes are issued one at a time, in
+ * order.
+ */
+final class AsyncFileSink implements WritableByteChannel {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int WRITE_BEHIND = 4;
+
+	private final AsynchronousFileChannel channel;
+	private final Semaphore permits = new Semaphore(WRITE_BEHIND);
+	private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+	private final CompletionHandler<Integer, ByteBuffer> handler = new Handler();
+
+	// Guarded by this
+	private final Queue<ByteBuffer> pending = new ArrayDeque<>();
+	private boolean writing;
+	private long position;
+	private Throwable failure;
+
+	private boolean open = true;
+
+	private AsyncFileSink(final AsynchronousFileChannel channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * Opens the given file for writing, replacing its contents.
+	 *
+	 * @param path The file to write
+	 * @return The sink
+	 * @throws IOException if an I/O error occurs opening the file
+	 */
+	static AsyncFileSink open(final Path path) throws IOException {
+		return new AsyncFileSink(AsynchronousFileChannel.open(path,
+				StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING));
+	}
+
+	@Override
+	public int write(final ByteBuffer src) throws IOException {
+		if (!this.open) throw new ClosedChannelException();
+
+		final int count = src.remaining();
+		if (count == 0) return 0;
+
+		this.acquire(1);
+
+		ByteBuffer copy = this.free.poll();
+		if (copy == null || copy.capacity() < count) copy = ByteBuffer.allocate(Math.max(count, BUFFER_SIZE));
+		copy.clear();
+		copy.put(src).flip();
+
+		synchronized (this) {
+			if (this.failure != null) {
+				this.permits.release();
+				throw new IOException("Failed to write mappings", this.failure);
+			}
+
+			this.pending.add(copy);
+			this.next();
+		}
+		return count;
+	}
+
+	// Called holding this
+	private void next() {
+		if (this.writing || this.failure != null) return;
+
+		final ByteBuffer buf = this.pending.peek();
+		if (buf == null) return;
+
+		this.writing = true;
+		try {
+			this.channel.write(buf, this.position, buf, this.handler);
+		}
+		catch (final RuntimeException ex) {
+			this.writing = false;
+			this.fail(ex);
+		}
+	}
+
+	// Called holding this
+	private void fail(final Throwable ex) {
+		this.failure = ex;
+
+		// Release everything still waiting, so that the producer sees the failure
+		this.permits.release(this.pending.size());
+		this.pending.clear();
+	}
+
+	private void acquire(final int permits) throws IOException {
+		try {
+			this.permits.acquire(permits);
+		}
+		catch (final InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	private synchronized void checkFailure() throws IOException {
+		if (this.failure != null) {
+			throw new IOException("Failed to write mappings", this.failure);
+		}
+	}
+
+	@Override
+	public boolean isOpen() {
+		return this.open;
+	}
+
+	/**
+	 * Waits for all outstanding writes to complete, then closes the file.
+	 *
+	 * @throws IOException if any write failed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!this.open) return;
+		this.open = false;
+
+		try {
+			this.acquire(WRITE_BEHIND);
+			this.checkFailure();
+		}
+		finally {
+			this.channel.close();
+		}
+	}
+
+	private final class Handler implements CompletionHandler<Integer, ByteBuffer> {
+
+		@Override
+		public void completed(final Integer count, final ByteBuffer buf) {
+			final AsyncFileSink sink = AsyncFileSink.this;
+
+			synchronized (sink) {
+				sink.writing = false;
+				sink.position += count;
+
+				if (!buf.hasRemaining()) {
+					sink.pending.poll();
+					sink.free.add(buf);
+					sink.permits.release();
+				}
+
+				// Either the rest of this buffer, or the next one
+				sink.next();
+			}
+		}
+
+		@Override
+		public void failed(final Throwable ex, final ByteBuffer buf) {
+			final AsyncFileSink sink = AsyncFileSink.this;
+
+			synchronized (sink) {
+				sink.writing = false;
+				sink.fail(ex);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,619 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import net.fabricmc.mappingio.MappedElementKind;
+import net.fabricmc.mappingio.MappingVisitor;
+import net.fabricmc.mappingio.tree.MappingTree;
+import net.fabricmc.mappingio.tree.MemoryMappingTree;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A compact binary serialization of a loaded {@link MappingTree mapping tree},
+ * used to skip parsing text mappings that haven't changed.
+ * <p>
+ * A cache file holds a string pool, followed by fixed-width records for
+ * every class, field, method, argument and variable, which refer to
+ * strings by their index in the pool. The header records the format
+ * version, and the size and checksum of the source file the cache was
+ * built from, so stale caches are detected and ignored.
+ *
+ * @see TinyMappingFormat#loadCached(Path)
+ * @since 4.1.0
+ */
+public final class BinaryMappingsCache {
+
+	private static final int MAGIC = 0x4C544243; // LTBC
+	private static final int VERSION = 1;
+	private static final String EXTENSION = ".lorenztiny-cache";
+
+	private static final int NULL = -1;
+
+	private BinaryMappingsCache() {
+	}
+
+	/**
+	 * Gets the path of the cache file for the given source file, which
+	 * sits next to the source file.
+	 *
+	 * @param source The source mappings file
+	 * @return The cache path
+	 */
+	public static Path getCachePath(final Path source) {
+		return source.resolveSibling(source.getFileName() + EXTENSION);
+	}
+
+	/**
+	 * Writes the given tree to the cache file of the given source file.
+	 * <p>
+	 * The cache is written to a temporary file first, and then moved into
+	 * place, so concurrent readers never see a partially written cache.
+	 * <p>
+	 * The source file is checksummed as it is now, so it must not have
+	 * changed since the tree was loaded from it. Where it may have, use
+	 * {@link #write(MappingTree, Path, TinyMappingFormat, long, long)}
+	 * with the size and checksum of the bytes the tree was loaded from.
+	 *
+	 * @param tree The tree loaded from the source file
+	 * @param source The source mappings file
+	 * @param format The format the source file was read with
+	 * @throws IOException if an I/O error occurs reading the source or writing the cache
+	 */
+	public static void write(final MappingTree tree, final Path source, final TinyMappingFormat format) throws IOException {
+		write(tree, source, format, Files.size(source), checksum(source));
+	}
+
+	/**
+	 * Writes the given tree to the cache file of the given source file,
+	 * recording the given size and checksum for it.
+	 * <p>
+	 * The cache is written to a temporary file first, and then moved into
+	 * place, so concurrent readers never see a partially written cache.
+	 *
+	 * @param tree The tree loaded from the source file
+	 * @param source The source mappings file
+	 * @param format The format the source file was read with
+	 * @param size The size of the bytes the tree was loaded from
+	 * @param checksum The CRC-32 of the bytes the tree was loaded from
+	 * @throws IOException if an I/O error occurs writing the cache
+	 * @see ChecksumInputStream
+	 */
+	public static void write(final MappingTree tree, final Path source, final TinyMappingFormat format,
+	                         final long size, final long checksum) throws IOException {
+		final Path cache = getCachePath(source);
+		final Path temp = Files.createTempFile(cache.toAbsolutePath().getParent(), cache.getFileName().toString(), ".tmp");
+
+		try {
+			try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				write(tree, out, format, size, checksum);
+			}
+
+			try {
+				Files.move(temp, cache, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch (final AtomicMoveNotSupportedException ex) {
+				Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Reads the cached tree for the given source file, if there is a valid
+	 * cache for it.
+	 *
+	 * @param source The source mappings file
+	 * @param format The format the source file is read with
+	 * @return The cached tree, or {@code null} if there is no cache, or it is stale
+	 * @throws IOException if an I/O error occurs reading the source or the cache
+	 */
+	public static MappingTree read(final Path source, final TinyMappingFormat format) throws IOException {
+		final Cache cache = open(source, format);
+		if (cache == null) return null;
+
+		final MemoryMappingTree tree = new MemoryMappingTree();
+		try {
+			cache.accept(tree);
+		}
+		catch (final RuntimeException ex) {
+			// Records are validated up front, so this should never happen, but a cache is never worth failing over
+			return null;
+		}
+		return tree;
+	}
+
+	/**
+	 * Opens the cache for the given source file, validating it against
+	 * the source file, and validating the structure of all of its records.
+	 *
+	 * @return The cache, or {@code null} if there is no cache, or it is stale or corrupt
+	 */
+	static Cache open(final Path source, final TinyMappingFormat format) throws IOException {
+		final Path path = getCachePath(source);
+		if (!Files.isRegularFile(path)) return null;
+
+		final ByteBuffer buf;
+		try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		try {
+			if (buf.getInt() != MAGIC || buf.getInt() != VERSION || buf.getInt() != format.ordinal()) return null;
+
+			final long size = buf.getLong();
+			final long checksum = buf.getLong();
+			if (size != Files.size(source) || checksum != checksum(source)) return null;
+
+			// The string table is already deduplicated, so each string only needs pooling once
+			final TinyStringPool pool = TinyMappingFormat.getStringPool();
+			// Every string takes at least its length
+			final int count = buf.getInt();
+			if (count < 0 || count > buf.remaining() / Integer.BYTES) return null;
+
+			final String[] strings = new String[count];
+			byte[] scratch = new byte[256];
+			for (int i = 0; i < strings.length; i++) {
+				final int length = buf.getInt();
+				if (length < 0 || length > buf.remaining()) return null;
+				if (scratch.length < length) scratch = new byte[Math.max(length, scratch.length * 2)];
+				buf.get(scratch, 0, length);
+				final String string = new String(scratch, 0, length, StandardCharsets.UTF_8);
+				strings[i] = pool != null ? pool.intern(string) : string;
+			}
+
+			final ByteBuffer records = buf.slice();
+			if (!validate(records.duplicate(), strings.length)) return null;
+			return new Cache(strings, records);
+		}
+		catch (final BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException ex) {
+			// Truncated or otherwise corrupt, treat it as stale
+			return null;
+		}
+	}
+
+	/**
+	 * Walks the records without visiting them, checking that every count
+	 * and string index is in range, and that no record is truncated.
+	 */
+	private static boolean validate(final ByteBuffer buf, final int stringCount) {
+		if (!validString(buf.getInt(), stringCount, false)) return false;
+
+		final int dstCount = buf.getInt();
+		if (dstCount < 0 || dstCount > buf.remaining() / Integer.BYTES) return false;
+		for (int i = 0; i < dstCount; i++) {
+			if (!validString(buf.getInt(), stringCount, false)) return false;
+		}
+
+		final int classes = buf.getInt();
+		if (classes < 0) return false;
+
+		for (int i = 0; i < classes; i++) {
+			if (!validElement(buf, stringCount, dstCount)) return false;
+			final int fields = buf.getInt();
+			final int methods = buf.getInt();
+			if (fields < 0 || methods < 0) return false;
+
+			for (int j = 0; j < fields; j++) {
+				if (!validElement(buf, stringCount, dstCount) || !validString(buf.getInt(), stringCount, true)) return false;
+			}
+
+			for (int j = 0; j < methods; j++) {
+				if (!validElement(buf, stringCount, dstCount) || !validString(buf.getInt(), stringCount, true)) return false;
+				final int args = buf.getInt();
+				final int vars = buf.getInt();
+				if (args < 0 || vars < 0) return false;
+
+				for (int k = 0; k < args; k++) {
+					if (!validElement(buf, stringCount, dstCount)) return false;
+					buf.position(buf.position() + 2 * Integer.BYTES);
+				}
+
+				for (int k = 0; k < vars; k++) {
+					if (!validElement(buf, stringCount, dstCount)) return false;
+					buf.position(buf.position() + 3 * Integer.BYTES);
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private static boolean validElement(final ByteBuffer buf, final int stringCount, final int dstCount) {
+		// Only arguments and variables may lack a source name, which the visitor accepts
+		if (!validString(buf.getInt(), stringCount, true)) return false;
+		for (int i = 0; i < dstCount + 1; i++) {
+			if (!validString(buf.getInt(), stringCount, true)) return false;
+		}
+		return true;
+	}
+
+	private static boolean validString(final int index, final int stringCount, final boolean nullable) {
+		return index < stringCount && (index >= 0 || nullable && index == NULL);
+	}
+
+	private static long checksum(final Path source) throws IOException {
+		final CRC32 crc = new CRC32();
+
+		try (final FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+			final long size = channel.size();
+			final long chunk = Integer.MAX_VALUE;
+
+			for (long pos = 0; pos < size; pos += chunk) {
+				crc.update(channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(chunk, size - pos)));
+			}
+		}
+		return crc.getValue();
+	}
+
+	private static void write(final MappingTree tree, final DataOutputStream out, final TinyMappingFormat format,
+	                          final long size, final long checksum) throws IOException {
+		final Map<String, Integer> pool = new HashMap<>();
+		final List<String> strings = new ArrayList<>();
+		final int dstCount = tree.getDstNamespaces().size();
+
+		// The string pool comes first, so every string needs to be known up front
+		intern(pool, strings, tree.getSrcNamespace());
+		tree.getDstNamespaces().forEach(ns -> intern(pool, strings, ns));
+		for (final MappingTree.ClassMapping klass : tree.getClasses()) {
+			internElement(pool, strings, klass, dstCount);
+
+			for (final MappingTree.FieldMapping field : klass.getFields()) {
+				internElement(pool, strings, field, dstCount);
+				intern(pool, strings, field.getSrcDesc());
+			}
+
+			for (final MappingTree.MethodMapping method : klass.getMethods()) {
+				internElement(pool, strings, method, dstCount);
+				intern(pool, strings, method.getSrcDesc());
+				method.getArgs().forEach(arg -> internElement(pool, strings, arg, dstCount));
+				method.getVars().forEach(var -> internElement(pool, strings, var, dstCount));
+			}
+		}
+
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(format.ordinal());
+		out.writeLong(size);
+		out.writeLong(checksum);
+
+		out.writeInt(strings.size());
+		for (final String string : strings) {
+			final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		out.writeInt(pool.get(tree.getSrcNamespace()));
+		out.writeInt(dstCount);
+		for (final String ns : tree.getDstNamespaces()) {
+			out.writeInt(pool.get(ns));
+		}
+
+		out.writeInt(tree.getClasses().size());
+		for (final MappingTree.ClassMapping klass : tree.getClasses()) {
+			writeElement(out, pool, klass, dstCount);
+			out.writeInt(klass.getFields().size());
+			out.writeInt(klass.getMethods().size());
+
+			for (final MappingTree.FieldMapping field : klass.getFields()) {
+				writeElement(out, pool, field, dstCount);
+				out.writeInt(index(pool, field.getSrcDesc()));
+			}
+
+			for (final MappingTree.MethodMapping method : klass.getMethods()) {
+				writeElement(out, pool, method, dstCount);
+				out.writeInt(index(pool, method.getSrcDesc()));
+				out.writeInt(method.getArgs().size());
+				out.writeInt(method.getVars().size());
+
+				for (final MappingTree.MethodArgMapping arg : method.getArgs()) {
+					writeElement(out, pool, arg, dstCount);
+					out.writeInt(arg.getArgPosition());
+					out.writeInt(arg.getLvIndex());
+				}
+
+				for (final MappingTree.MethodVarMapping var : method.getVars()) {
+					writeElement(out, pool, var, dstCount);
+					out.writeInt(var.getLvtRowIndex());
+					out.writeInt(var.getLvIndex());
+					out.writeInt(var.getStartOpIdx());
+				}
+			}
+		}
+	}
+
+	private static void internElement(final Map<String, Integer> pool, final List<String> strings,
+	                                  final MappingTree.ElementMapping element, final int dstCount) {
+		intern(pool, strings, element.getSrcName());
+		for (int i = 0; i < dstCount; i++) {
+			intern(pool, strings, element.getDstName(i));
+		}
+		intern(pool, strings, element.getComment());
+	}
+
+	private static void intern(final Map<String, Integer> pool, final List<String> strings, final String string) {
+		if (string != null && !pool.containsKey(string)) {
+			pool.put(string, strings.size());
+			strings.add(string);
+		}
+	}
+
+	private static int index(final Map<String, Integer> pool, final String string) {
+		return string == null ? NULL : pool.get(string);
+	}
+
+	private static void writeElement(final DataOutputStream out, final Map<String, Integer> pool,
+	                                 final MappingTree.ElementMapping element, final int dstCount) throws IOException {
+		out.writeInt(index(pool, element.getSrcName()));
+		for (int i = 0; i < dstCount; i++) {
+			out.writeInt(index(pool, element.getDstName(i)));
+		}
+		out.writeInt(index(pool, element.getComment()));
+	}
+
+	/**
+	 * An input stream keeping the size and CRC-32 of all the bytes read
+	 * through it, so that a cache can be checked against exactly the bytes
+	 * its tree was loaded from.
+	 */
+	public static final class ChecksumInputStream extends FilterInputStream {
+
+		private final CRC32 crc = new CRC32();
+		private long size;
+
+		/**
+		 * Creates a new stream, reading from the given stream.
+		 *
+		 * @param in The stream to read from
+		 */
+		public ChecksumInputStream(final InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int b = this.in.read();
+			if (b != -1) {
+				this.crc.update(b);
+				this.size++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			final int read = this.in.read(b, off, len);
+			if (read > 0) {
+				this.crc.update(b, off, read);
+				this.size += read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(final long n) throws IOException {
+			// Skipped bytes must still be checksummed
+			final byte[] buf = new byte[(int) Math.min(n, 8192)];
+			long skipped = 0;
+			while (skipped < n) {
+				final int read = this.read(buf, 0, (int) Math.min(n - skipped, buf.length));
+				if (read == -1) break;
+				skipped += read;
+			}
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		/**
+		 * Reads the rest of the stream, so that the size and checksum
+		 * cover all of it.
+		 *
+		 * @throws IOException if an I/O error occurs reading the stream
+		 */
+		public void drain() throws IOException {
+			final byte[] buf = new byte[8192];
+			while (this.read(buf, 0, buf.length) != -1) {
+				// Checksummed as it is read
+			}
+		}
+
+		/**
+		 * Gets the number of bytes read so far.
+		 *
+		 * @return The size
+		 */
+		public long getSize() {
+			return this.size;
+		}
+
+		/**
+		 * Gets the CRC-32 of the bytes read so far.
+		 *
+		 * @return The checksum
+		 */
+		public long getChecksum() {
+			return this.crc.getValue();
+		}
+
+	}
+
+	/**
+	 * A validated cache, which can be replayed into any number of visitors.
+	 */
+	static final class Cache {
+
+		private final String[] strings;
+		private final ByteBuffer records;
+
+		Cache(final String[] strings, final ByteBuffer records) {
+			this.strings = strings;
+			this.records = records;
+		}
+
+		void accept(final MappingVisitor visitor) throws IOException {
+			do {
+				final ByteBuffer buf = this.records.duplicate();
+
+				final String srcNamespace = this.string(buf);
+				final List<String> dstNamespaces = new ArrayList<>();
+				for (int i = buf.getInt(); i > 0; i--) {
+					dstNamespaces.add(this.string(buf));
+				}
+				final int dstCount = dstNamespaces.size();
+
+				if (visitor.visitHeader()) {
+					visitor.visitNamespaces(srcNamespace, dstNamespaces);
+				}
+
+				if (visitor.visitContent()) {
+					for (int classes = buf.getInt(); classes > 0; classes--) {
+						this.acceptClass(visitor, buf, dstCount);
+					}
+				}
+			} while (!visitor.visitEnd());
+		}
+
+		private void acceptClass(final MappingVisitor visitor, final ByteBuffer buf, final int dstCount) throws IOException {
+			final int start = buf.position();
+			final boolean visit = visitor.visitClass(this.string(buf))
+					&& this.visitElement(visitor, buf, MappedElementKind.CLASS, dstCount);
+
+			buf.position(start + (dstCount + 2) * Integer.BYTES);
+			final int fields = buf.getInt();
+			final int methods = buf.getInt();
+
+			for (int i = 0; i < fields; i++) {
+				final int fieldStart = buf.position();
+				final String srcName = this.string(buf);
+				buf.position(fieldStart + (dstCount + 2) * Integer.BYTES);
+				final String srcDesc = this.string(buf);
+				final int next = buf.position();
+
+				if (visit && visitor.visitField(srcName, srcDesc)) {
+					buf.position(fieldStart + Integer.BYTES);
+					this.visitElement(visitor, buf, MappedElementKind.FIELD, dstCount);
+				}
+				buf.position(next);
+			}
+
+			for (int i = 0; i < methods; i++) {
+				final int methodStart = buf.position();
+				final String srcName = this.string(buf);
+				buf.position(methodStart + (dstCount + 2) * Integer.BYTES);
+				final String srcDesc = this.string(buf);
+				final int args = buf.getInt();
+				final int vars = buf.getInt();
+				final int next = buf.position();
+
+				boolean visitMethod = false;
+				if (visit && visitor.visitMethod(srcName, srcDesc)) {
+					buf.position(methodStart + Integer.BYTES);
+					visitMethod = this.visitElement(visitor, buf, MappedElementKind.METHOD, dstCount);
+				}
+				buf.position(next);
+
+				for (int j = 0; j < args; j++) {
+					final int argStart = buf.position();
+					final String argName = this.string(buf);
+					buf.position(argStart + (dstCount + 2) * Integer.BYTES);
+					final int argPosition = buf.getInt();
+					final int lvIndex = buf.getInt();
+					final int argNext = buf.position();
+
+					if (visitMethod && visitor.visitMethodArg(argPosition, lvIndex, argName)) {
+						buf.position(argStart + Integer.BYTES);
+						this.visitElement(visitor, buf, MappedElementKind.METHOD_ARG, dstCount);
+					}
+					buf.position(argNext);
+				}
+
+				for (int j = 0; j < vars; j++) {
+					final int varStart = buf.position();
+					final String varName = this.string(buf);
+					buf.position(varStart + (dstCount + 2) * Integer.BYTES);
+					final int lvtRowIndex = buf.getInt();
+					final int lvIndex = buf.getInt();
+					final int startOpIdx = buf.getInt();
+					final int varNext = buf.position();
+
+					if (visitMethod && visitor.visitMethodVar(lvtRowIndex, lvIndex, startOpIdx, varName)) {
+						buf.position(varStart + Integer.BYTES);
+						this.visitElement(visitor, buf, MappedElementKind.METHOD_VAR, dstCount);
+					}
+					buf.position(varNext);
+				}
+			}
+		}
+
+		/**
+		 * Visits the destination names and comment of an element, with the
+		 * buffer positioned just after its source name.
+		 */
+		private boolean visitElement(final MappingVisitor visitor, final ByteBuffer buf,
+		                             final MappedElementKind kind, final int dstCount) throws IOException {
+			for (int i = 0; i < dstCount; i++) {
+				final String name = this.string(buf);
+				if (name != null) visitor.visitDstName(kind, i, name);
+			}
+			final String comment = this.string(buf);
+
+			if (!visitor.visitElementContent(kind)) return false;
+			if (comment != null) visitor.visitComment(kind, comment);
+			return true;
+		}
+
+		private String string(final ByteBuffer buf) {
+			final int index = buf.getInt();
+			return index == NULL ? null : this.strings[index];
+		}
+
+	}
+
+}
@@ -0,0 +1,205 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * An {@link InputStream input stream} over a file, that reads the file
+ * ahead in chunks through an {@link AsynchronousFileChannel asynchronous
+ * channel}.
+ * <p>
+ * Up to a fixed number of chunks are read ahead of the consumer, so the
+ * disk is read while the consumer is busy with the previous chunks, and
+ * the memory used stays bounded however large the file is.
+ */
+final class ChannelInputStream extends InputStream {
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+	private static final int READ_AHEAD = 4;
+
+	// Queued after the last chunk
+	private static final Object EOF = new Object();
+
+	private final AsynchronousFileChannel channel;
+	private final BlockingQueue<Object> chunks = new ArrayBlockingQueue<>(READ_AHEAD + 1);
+	private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+	private final CompletionHandler<Integer, ByteBuffer> handler = new Handler();
+
+	// Guarded by this
+	private long position;
+	private boolean reading;
+	private boolean done;
+
+	// Only touched by the consumer
+	private ByteBuffer current;
+	private boolean finished;
+
+	private ChannelInputStream(final AsynchronousFileChannel channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * Opens the given file, and starts reading it ahead.
+	 *
+	 * @param path The file to read
+	 * @return The input stream
+	 * @throws IOException if an I/O error occurs opening the file
+	 */
+	static ChannelInputStream open(final Path path) throws IOException {
+		final ChannelInputStream stream = new ChannelInputStream(AsynchronousFileChannel.open(path, StandardOpenOption.READ));
+		stream.fill();
+		return stream;
+	}
+
+	private synchronized void fill() {
+		if (this.reading || this.done || this.chunks.size() >= READ_AHEAD) return;
+		this.reading = true;
+
+		ByteBuffer buf = this.free.poll();
+		if (buf == null) buf = ByteBuffer.allocate(CHUNK_SIZE);
+		buf.clear();
+
+		try {
+			this.channel.read(buf, this.position, buf, this.handler);
+		}
+		catch (final RuntimeException ex) {
+			this.handler.failed(ex, buf);
+		}
+	}
+
+	private ByteBuffer next() throws IOException {
+		while (this.current == null || !this.current.hasRemaining()) {
+			if (this.finished) return null;
+
+			if (this.current != null) {
+				this.free.add(this.current);
+				this.current = null;
+			}
+
+			final Object chunk;
+			try {
+				chunk = this.chunks.take();
+			}
+			catch (final InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+			this.fill();
+
+			if (chunk == EOF) {
+				this.finished = true;
+				return null;
+			}
+			if (chunk instanceof Throwable) {
+				this.finished = true;
+				throw new IOException("Failed to read mappings", (Throwable) chunk);
+			}
+			this.current = (ByteBuffer) chunk;
+		}
+		return this.current;
+	}
+
+	@Override
+	public int read() throws IOException {
+		final ByteBuffer buf = this.next();
+		return buf != null ? buf.get() & 0xFF : -1;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) throws IOException {
+		if (len == 0) return 0;
+
+		final ByteBuffer buf = this.next();
+		if (buf == null) return -1;
+
+		final int count = Math.min(len, buf.remaining());
+		buf.get(b, off, count);
+		return count;
+	}
+
+	@Override
+	public int available() {
+		return this.current != null ? this.current.remaining() : 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			this.done = true;
+		}
+		this.channel.close();
+	}
+
+	private final class Handler implements CompletionHandler<Integer, ByteBuffer> {
+
+		@Override
+		public void completed(final Integer count, final ByteBuffer buf) {
+			final ChannelInputStream stream = ChannelInputStream.this;
+
+			synchronized (stream) {
+				stream.reading = false;
+
+				if (count == -1) {
+					stream.done = true;
+					stream.chunks.add(EOF);
+					return;
+				}
+
+				stream.position += count;
+				buf.flip();
+				stream.chunks.add(buf);
+			}
+
+			stream.fill();
+		}
+
+		@Override
+		public void failed(final Throwable ex, final ByteBuffer buf) {
+			final ChannelInputStream stream = ChannelInputStream.this;
+
+			synchronized (stream) {
+				stream.reading = false;
+				if (stream.done) return;
+
+				stream.done = true;
+				stream.chunks.add(ex);
+			}
+		}
+
+	}
+
+}
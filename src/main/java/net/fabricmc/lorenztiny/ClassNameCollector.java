@@ -0,0 +1,153 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import net.fabricmc.mappingio.MappedElementKind;
+import net.fabricmc.mappingio.MappingVisitor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link MappingVisitor mapping visitor} that only records the names
+ * of classes in one or more namespaces, skipping all members.
+ * <p>
+ * This is used ahead of streaming reads, where descriptors need to be
+ * remapped from the source namespace into another namespace before the
+ * referenced classes have necessarily been visited.
+ */
+final class ClassNameCollector implements MappingVisitor {
+
+	private final List<String> namespaces;
+	private final List<Map<String, String>> classNames;
+
+	private boolean[] source;
+	private int[] indices;
+	private String srcName;
+
+	ClassNameCollector(final String namespace) {
+		this(Collections.singletonList(namespace));
+	}
+
+	ClassNameCollector(final Collection<String> namespaces) {
+		this.namespaces = new ArrayList<>(namespaces);
+		this.classNames = new ArrayList<>(this.namespaces.size());
+		for (int i = 0; i < this.namespaces.size(); i++) {
+			this.classNames.add(new HashMap<>());
+		}
+	}
+
+	/**
+	 * Gets the collected class names, from the source namespace to the
+	 * first requested namespace.
+	 *
+	 * @return The class names, or {@code null} if the requested namespace
+	 *         is the source namespace
+	 */
+	Map<String, String> getClassNames() {
+		return this.getClassNames(this.namespaces.get(0));
+	}
+
+	/**
+	 * Gets the collected class names, from the source namespace to the
+	 * given namespace.
+	 *
+	 * @param namespace The namespace, which must have been requested
+	 * @return The class names, or {@code null} if the namespace is the
+	 *         source namespace
+	 */
+	Map<String, String> getClassNames(final String namespace) {
+		final int i = this.namespaces.indexOf(namespace);
+		if (i == -1) throw new IllegalArgumentException("Class names were not collected for namespace " + namespace);
+		return this.source != null && this.source[i] ? null : this.classNames.get(i);
+	}
+
+	@Override
+	public void visitNamespaces(final String srcNamespace, final List<String> dstNamespaces) {
+		this.source = new boolean[this.namespaces.size()];
+		this.indices = new int[this.namespaces.size()];
+
+		for (int i = 0; i < this.namespaces.size(); i++) {
+			this.source[i] = this.namespaces.get(i).equals(srcNamespace);
+			this.indices[i] = dstNamespaces.indexOf(this.namespaces.get(i));
+		}
+	}
+
+	@Override
+	public boolean visitContent() {
+		for (final int index : this.indices) {
+			if (index != -1) return true;
+		}
+		return false;
+	}
+	@Override
+	public boolean visitClass(final String srcName) {
+		this.srcName = srcName;
+		return true;
+	}
+
+	@Override
+	public boolean visitField(final String srcName, final String srcDesc) {
+		return false;
+	}
+
+	@Override
+	public boolean visitMethod(final String srcName, final String srcDesc) {
+		return false;
+	}
+
+	@Override
+	public boolean visitMethodArg(final int argPosition, final int lvIndex, final String srcName) {
+		return false;
+	}
+
+	@Override
+	public boolean visitMethodVar(final int lvtRowIndex, final int lvIndex, final int startOpIdx, final String srcName) {
+		return false;
+	}
+
+	@Override
+	public void visitDstName(final MappedElementKind targetKind, final int namespace, final String name) {
+		if (targetKind != MappedElementKind.CLASS || name == null) return;
+
+		for (int i = 0; i < this.indices.length; i++) {
+			if (this.indices[i] == namespace) this.classNames.get(i).put(this.srcName, name);
+		}
+	}
+
+	@Override
+	public boolean visitElementContent(final MappedElementKind targetKind) {
+		return false;
+	}
+
+	@Override
+	public void visitComment(final MappedElementKind targetKind, final String comment) {
+	}
+
+}
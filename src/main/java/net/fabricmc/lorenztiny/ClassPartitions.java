@@ -0,0 +1,122 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import org.cadixdev.lorenz.MappingSet;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs work that populates a {@link MappingSet mapping set} concurrently,
+ * partitioned by top-level class.
+ * <p>
+ * Lorenz's model is not safe for concurrent insertion, however each
+ * top-level class mapping owns all of its members and inner classes.
+ * All top-level class mappings are created up front, on the calling
+ * thread, after which each partition only ever touches its own
+ * top-level classes.
+ */
+final class ClassPartitions {
+
+	// The number of classes to batch into a single task
+	private static final int BATCH_SIZE = 256;
+
+	private ClassPartitions() {
+	}
+
+	/**
+	 * Runs the given action for every class, on the given executor.
+	 * <p>
+	 * Classes sharing a top-level class are always handled by the same
+	 * task, in their original order.
+	 *
+	 * @param mappings The mapping set being populated
+	 * @param classes The classes to process
+	 * @param obfName A function getting the obfuscated name of a class
+	 * @param action The action to run for each class
+	 * @param executor The executor to run the actions on
+	 * @param <T> The type of the classes
+	 */
+	static <T> void forEach(final MappingSet mappings, final Iterable<? extends T> classes,
+	                        final Function<? super T, String> obfName, final Consumer<? super T> action,
+	                        final Executor executor) {
+		final Map<String, List<T>> partitions = new LinkedHashMap<>();
+		for (final T klass : classes) {
+			partitions.computeIfAbsent(topLevelName(obfName.apply(klass)), name -> new ArrayList<>()).add(klass);
+		}
+
+		for (final String name : partitions.keySet()) {
+			mappings.getOrCreateTopLevelClassMapping(name);
+		}
+
+		final List<CompletableFuture<Void>> tasks = new ArrayList<>();
+		List<List<T>> batch = new ArrayList<>();
+		int batchSize = 0;
+
+		for (final List<T> partition : partitions.values()) {
+			batch.add(partition);
+			batchSize += partition.size();
+
+			if (batchSize >= BATCH_SIZE) {
+				tasks.add(run(batch, action, executor));
+				batch = new ArrayList<>();
+				batchSize = 0;
+			}
+		}
+		if (!batch.isEmpty()) tasks.add(run(batch, action, executor));
+
+		try {
+			CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+		}
+		catch (final CompletionException ex) {
+			if (ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+			if (ex.getCause() instanceof Error) throw (Error) ex.getCause();
+			throw ex;
+		}
+	}
+
+	private static <T> CompletableFuture<Void> run(final List<List<T>> batch, final Consumer<? super T> action,
+	                                               final Executor executor) {
+		return CompletableFuture.runAsync(() -> {
+			for (final List<T> partition : batch) {
+				partition.forEach(action);
+			}
+		}, executor);
+	}
+
+	static String topLevelName(final String name) {
+		final int index = name.indexOf('$');
+		return index == -1 ? name : name.substring(0, index);
+	}
+
+}
@@ -0,0 +1,383 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import org.cadixdev.bombe.type.FieldType;
+import org.cadixdev.bombe.type.MethodDescriptor;
+import org.cadixdev.bombe.type.signature.FieldSignature;
+import org.cadixdev.bombe.type.signature.MethodSignature;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.impl.MappingSetModelFactoryImpl;
+import org.cadixdev.lorenz.impl.model.FieldMappingImpl;
+import org.cadixdev.lorenz.impl.model.InnerClassMappingImpl;
+import org.cadixdev.lorenz.impl.model.MethodMappingImpl;
+import org.cadixdev.lorenz.impl.model.TopLevelClassMappingImpl;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.InnerClassMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+import org.cadixdev.lorenz.model.TopLevelClassMapping;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A {@link org.cadixdev.lorenz.MappingSetModelFactory model factory} whose
+ * field and method mappings cache their de-obfuscated signatures.
+ * <p>
+ * Lorenz works out de-obfuscated descriptors by looking up the class
+ * mapping of every type in the descriptor, each time they are asked for.
+ * Mappings created by this factory instead cache them, sharing the result
+ * for equal descriptors across the whole mapping set. Any change to the
+ * name of a class mapping invalidates every cached descriptor, so they are
+ * never stale.
+ * <p>
+ * When a {@link TinyMappingsReader} reads into an empty mapping set created
+ * by this factory, the de-obfuscated descriptors are taken straight from the
+ * mapping tree, so they never need working out at all.
+ * <p>
+ * A factory may be shared by any number of mapping sets, such as those
+ * made by {@link MappingSet#copy()} or {@link MappingSet#reverse()}, each
+ * of which keeps its own cache.
+ *
+ * @see #createMappingSet()
+ * @since 4.1.0
+ */
+public final class DescriptorCachingModelFactory extends MappingSetModelFactoryImpl {
+
+	// Lorenz's mapping sets use identity equality, so this is keyed by identity, without keeping sets alive
+	private final Map<MappingSet, State> states = Collections.synchronizedMap(new WeakHashMap<>());
+
+	/**
+	 * Creates a new, empty {@link MappingSet mapping set} using a new
+	 * descriptor caching factory.
+	 *
+	 * @return The mapping set
+	 */
+	public static MappingSet createMappingSet() {
+		return MappingSet.create(new DescriptorCachingModelFactory());
+	}
+
+	@Override
+	public TopLevelClassMapping createTopLevelClassMapping(final MappingSet parent, final String obfuscatedName, final String deobfuscatedName) {
+		final State state = this.state(parent);
+		state.invalidate();
+		return new TopLevel(state, parent, obfuscatedName, deobfuscatedName);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public InnerClassMapping createInnerClassMapping(final ClassMapping parent, final String obfuscatedName, final String deobfuscatedName) {
+		final State state = this.state(parent);
+		state.invalidate();
+		return new Inner(state, parent, obfuscatedName, deobfuscatedName);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public FieldMapping createFieldMapping(final ClassMapping parent, final FieldSignature signature, final String deobfuscatedName) {
+		return new CachingFieldMapping(this.state(parent), parent, signature, deobfuscatedName);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public MethodMapping createMethodMapping(final ClassMapping parent, final MethodSignature signature, final String deobfuscatedName) {
+		return new CachingMethodMapping(this.state(parent), parent, signature, deobfuscatedName);
+	}
+
+	private State state(final MappingSet mappings) {
+		return this.states.computeIfAbsent(mappings, key -> new State());
+	}
+
+	private State state(final ClassMapping<?, ?> klass) {
+		// Class mappings of our own carry the state of their set, sparing the lookup
+		if (klass instanceof TopLevel) return ((TopLevel) klass).state;
+		if (klass instanceof Inner) return ((Inner) klass).state;
+		return this.state(klass.getMappings());
+	}
+
+	/**
+	 * Sets the de-obfuscated descriptor of the given member, as taken from
+	 * a mapping tree. It is only used once {@link #seal(MappingSet) sealed},
+	 * and until any class mapping in its set is next renamed.
+	 */
+	void preset(final MethodMapping mapping, final String deobfDesc) {
+		if (deobfDesc != null && mapping instanceof CachingMethodMapping) {
+			((CachingMethodMapping) mapping).presetDesc = deobfDesc;
+		}
+	}
+
+	void preset(final FieldMapping mapping, final String deobfDesc) {
+		if (deobfDesc != null && mapping instanceof CachingFieldMapping) {
+			((CachingFieldMapping) mapping).presetDesc = deobfDesc;
+		}
+	}
+
+	/**
+	 * Marks the preset descriptors of the given set as matching its
+	 * current class mappings.
+	 */
+	void seal(final MappingSet mappings) {
+		final State state = this.state(mappings);
+		state.presetGeneration = state.generation.get();
+	}
+
+	/**
+	 * The cache of a single mapping set.
+	 */
+	private static final class State {
+
+		// Bumped whenever any class mapping in the set is created or renamed
+		final AtomicLong generation = new AtomicLong();
+		// The generation at which descriptors from the tree were last known to be valid
+		volatile long presetGeneration = -1;
+
+		// De-obfuscated descriptors shared across the mapping set, for the latest generation to use them
+		private final AtomicReference<Shared> shared = new AtomicReference<>(new Shared(0));
+
+		void invalidate() {
+			this.generation.incrementAndGet();
+		}
+
+		boolean usePresets(final long generation) {
+			return this.presetGeneration == generation;
+		}
+
+		/**
+		 * Gets the shared descriptors for the given generation, replacing
+		 * those of any earlier one, or {@code null} if a later generation
+		 * has already replaced it.
+		 */
+		private Shared shared(final long generation) {
+			Shared shared = this.shared.get();
+			while (shared.generation < generation) {
+				final Shared next = new Shared(generation);
+				if (this.shared.compareAndSet(shared, next)) return next;
+				shared = this.shared.get();
+			}
+			return shared.generation == generation ? shared : null;
+		}
+
+		Deobfuscated deobfuscate(final MappingSet mappings, final MethodDescriptor descriptor, final long generation) {
+			final Shared shared = this.shared(generation);
+			if (shared == null) return Deobfuscated.of(mappings, descriptor);
+			return shared.methods.computeIfAbsent(descriptor, desc -> Deobfuscated.of(mappings, desc));
+		}
+
+		FieldType deobfuscate(final MappingSet mappings, final FieldType type, final long generation) {
+			final Shared shared = this.shared(generation);
+			if (shared == null) return mappings.deobfuscate(type);
+			return shared.fields.computeIfAbsent(type, mappings::deobfuscate);
+		}
+
+	}
+
+	/**
+	 * The descriptors shared across a mapping set, for a single generation.
+	 * Each generation gets its own maps, so that a descriptor worked out
+	 * for one can never be seen by another.
+	 */
+	private static final class Shared {
+
+		final long generation;
+		final Map<MethodDescriptor, Deobfuscated> methods = new ConcurrentHashMap<>();
+		final Map<FieldType, FieldType> fields = new ConcurrentHashMap<>();
+
+		Shared(final long generation) {
+			this.generation = generation;
+		}
+
+	}
+
+	private static final class Deobfuscated {
+
+		final MethodDescriptor descriptor;
+		final String string;
+
+		Deobfuscated(final MethodDescriptor descriptor, final String string) {
+			this.descriptor = descriptor;
+			this.string = string;
+		}
+
+		static Deobfuscated of(final MappingSet mappings, final MethodDescriptor descriptor) {
+			final MethodDescriptor deobf = mappings.deobfuscate(descriptor);
+			return new Deobfuscated(deobf, deobf.toString());
+		}
+
+	}
+
+	private static final class TopLevel extends TopLevelClassMappingImpl {
+
+		private final State state;
+
+		TopLevel(final State state, final MappingSet mappings,
+		         final String obfuscatedName, final String deobfuscatedName) {
+			super(mappings, obfuscatedName, deobfuscatedName);
+			this.state = state;
+		}
+
+		@Override
+		public TopLevelClassMapping setDeobfuscatedName(final String deobfuscatedName) {
+			// Also called while constructing, before the state is set
+			if (this.state != null) this.state.invalidate();
+			return super.setDeobfuscatedName(deobfuscatedName);
+		}
+
+	}
+
+	private static final class Inner extends InnerClassMappingImpl {
+
+		private final State state;
+
+		@SuppressWarnings("rawtypes")
+		Inner(final State state, final ClassMapping parent,
+		      final String obfuscatedName, final String deobfuscatedName) {
+			super(parent, obfuscatedName, deobfuscatedName);
+			this.state = state;
+		}
+
+		@Override
+		public InnerClassMapping setDeobfuscatedName(final String deobfuscatedName) {
+			if (this.state != null) this.state.invalidate();
+			return super.setDeobfuscatedName(deobfuscatedName);
+		}
+
+	}
+
+	private static final class CachingMethodMapping extends MethodMappingImpl {
+
+		private final State state;
+		volatile String presetDesc;
+		private volatile CachedMethod cached;
+
+		CachingMethodMapping(final State state, final ClassMapping<?, ?> parent,
+		                     final MethodSignature signature, final String deobfuscatedName) {
+			super(parent, signature, deobfuscatedName);
+			this.state = state;
+		}
+
+		@Override
+		public MethodSignature getDeobfuscatedSignature() {
+			return this.cached().signature;
+		}
+
+		@Override
+		public String getDeobfuscatedDescriptor() {
+			return this.cached().descriptor;
+		}
+
+		private CachedMethod cached() {
+			final long generation = this.state.generation.get();
+			final String name = this.getDeobfuscatedName();
+
+			CachedMethod cached = this.cached;
+			if (cached != null && cached.generation == generation && cached.signature.getName().equals(name)) {
+				return cached;
+			}
+
+			final String preset = this.presetDesc;
+			if (preset != null && this.state.usePresets(generation)) {
+				cached = new CachedMethod(new MethodSignature(name, MethodDescriptor.of(preset)), preset, generation);
+			}
+			else {
+				final Deobfuscated deobf = this.state.deobfuscate(this.getMappings(), this.getDescriptor(), generation);
+				cached = new CachedMethod(new MethodSignature(name, deobf.descriptor), deobf.string, generation);
+			}
+			return this.cached = cached;
+		}
+
+	}
+
+	private static final class CachedMethod {
+
+		final MethodSignature signature;
+		final String descriptor;
+		final long generation;
+
+		CachedMethod(final MethodSignature signature, final String descriptor, final long generation) {
+			this.signature = signature;
+			this.descriptor = descriptor;
+			this.generation = generation;
+		}
+
+	}
+
+	private static final class CachingFieldMapping extends FieldMappingImpl {
+
+		private final State state;
+		volatile String presetDesc;
+		private volatile CachedField cached;
+
+		CachingFieldMapping(final State state, final ClassMapping<?, ?> parent,
+		                    final FieldSignature signature, final String deobfuscatedName) {
+			super(parent, signature, deobfuscatedName);
+			this.state = state;
+		}
+
+		@Override
+		public FieldSignature getDeobfuscatedSignature() {
+			final long generation = this.state.generation.get();
+			final String name = this.getDeobfuscatedName();
+
+			CachedField cached = this.cached;
+			if (cached != null && cached.generation == generation && cached.signature.getName().equals(name)) {
+				return cached.signature;
+			}
+
+			final FieldType type;
+			final String preset = this.presetDesc;
+			if (preset != null && this.state.usePresets(generation)) {
+				type = FieldType.of(preset);
+			}
+			else {
+				type = this.getType()
+						.map(obf -> this.state.deobfuscate(this.getMappings(), obf, generation))
+						.orElse(null);
+			}
+
+			cached = new CachedField(new FieldSignature(name, type), generation);
+			this.cached = cached;
+			return cached.signature;
+		}
+
+	}
+
+	private static final class CachedField {
+
+		final FieldSignature signature;
+		final long generation;
+
+		CachedField(final FieldSignature signature, final long generation) {
+			this.signature = signature;
+			this.generation = generation;
+		}
+
+	}
+
+}
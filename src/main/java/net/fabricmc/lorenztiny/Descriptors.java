@@ -0,0 +1,88 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Helpers for working with raw JVM descriptors.
+ */
+final class Descriptors {
+
+	private Descriptors() {
+	}
+
+	/**
+	 * Remaps the class names within the given field or method
+	 * descriptor, using the supplied class name mapping. Class names
+	 * not present in the mapping are left as they are.
+	 *
+	 * @param desc The descriptor to remap, may be {@code null}
+	 * @param classNames The class name mapping
+	 * @return The remapped descriptor
+	 */
+	static String remap(final String desc, final Map<String, String> classNames) {
+		if (desc == null || classNames.isEmpty()) return desc;
+		return remap(desc, (UnaryOperator<String>) classNames::get);
+	}
+
+	/**
+	 * Remaps the class names within the given field or method
+	 * descriptor, using the supplied function. Class names the
+	 * function returns {@code null} for are left as they are.
+	 *
+	 * @param desc The descriptor to remap, may be {@code null}
+	 * @param classNames The class name mapping function
+	 * @return The remapped descriptor
+	 */
+	static String remap(final String desc, final UnaryOperator<String> classNames) {
+		if (desc == null) return null;
+
+		StringBuilder builder = null;
+		int last = 0;
+		int start = desc.indexOf('L');
+
+		while (start != -1) {
+			final int end = desc.indexOf(';', start + 1);
+			if (end == -1) break;
+
+			final String name = desc.substring(start + 1, end);
+			final String mapped = classNames.apply(name);
+
+			if (mapped != null && !mapped.equals(name)) {
+				if (builder == null) builder = new StringBuilder(desc.length() + 16);
+				builder.append(desc, last, start + 1).append(mapped);
+				last = end;
+			}
+
+			start = desc.indexOf('L', end + 1);
+		}
+
+		if (builder == null) return desc;
+		return builder.append(desc, last, desc.length()).toString();
+	}
+
+}
@@ -0,0 +1,233 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import net.fabricmc.mappingio.MappedElementKind;
+import net.fabricmc.mappingio.MappingVisitor;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link MappingVisitor mapping visitor} that passes every visit on
+ * to several other visitors, so that they can all be fed by a single
+ * pass over the mappings.
+ * <p>
+ * Each visitor may skip the header, the content or any element
+ * independently of the others, an element is only skipped entirely once
+ * every visitor has asked for it to be. If any visitor requests another
+ * pass, only the visitors that have not yet finished are visited again.
+ */
+final class FanOutMappingVisitor implements MappingVisitor {
+
+	private static final int CLASS = 0;
+	private static final int MEMBER = 1;
+	private static final int LOCAL = 2;
+
+	private final MappingVisitor[] visitors;
+
+	// Whether each visitor wants the header and the content of the current pass
+	private final boolean[] header;
+	private final boolean[] content;
+	// Whether each visitor has finished, and is left out of further passes
+	private final boolean[] done;
+
+	// Whether each visitor wants the current element, at each depth
+	private final boolean[][] active;
+
+	FanOutMappingVisitor(final List<? extends MappingVisitor> visitors) {
+		this.visitors = visitors.toArray(new MappingVisitor[0]);
+		this.active = new boolean[3][this.visitors.length];
+		this.header = new boolean[this.visitors.length];
+		this.content = new boolean[this.visitors.length];
+		this.done = new boolean[this.visitors.length];
+	}
+
+	@Override
+	public boolean visitHeader() throws IOException {
+		boolean visit = false;
+		for (int i = 0; i < this.visitors.length; i++) {
+			visit |= this.header[i] = !this.done[i] && this.visitors[i].visitHeader();
+		}
+		return visit;
+	}
+
+	@Override
+	public void visitNamespaces(final String srcNamespace, final List<String> dstNamespaces) throws IOException {
+		for (int i = 0; i < this.visitors.length; i++) {
+			if (this.header[i]) this.visitors[i].visitNamespaces(srcNamespace, dstNamespaces);
+		}
+	}
+
+	@Override
+	public void visitMetadata(final String key, final String value) throws IOException {
+		for (int i = 0; i < this.visitors.length; i++) {
+			if (this.header[i]) this.visitors[i].visitMetadata(key, value);
+		}
+	}
+
+	@Override
+	public boolean visitContent() throws IOException {
+		boolean visit = false;
+		for (int i = 0; i < this.visitors.length; i++) {
+			visit |= this.content[i] = !this.done[i] && this.visitors[i].visitContent();
+		}
+		return visit;
+	}
+
+	@Override
+	public boolean visitClass(final String srcName) throws IOException {
+		final boolean[] active = this.active[CLASS];
+		boolean visit = false;
+
+		for (int i = 0; i < this.visitors.length; i++) {
+			visit |= active[i] = this.content[i] && this.visitors[i].visitClass(srcName);
+		}
+
+		return visit;
+	}
+
+	@Override
+	public boolean visitField(final String srcName, final String srcDesc) throws IOException {
+		final boolean[] parent = this.active[CLASS];
+		final boolean[] active = this.active[MEMBER];
+		boolean visit = false;
+
+		for (int i = 0; i < this.visitors.length; i++) {
+			visit |= active[i] = parent[i] && this.visitors[i].visitField(srcName, srcDesc);
+		}
+
+		return visit;
+	}
+
+	@Override
+	public boolean visitMethod(final String srcName, final String srcDesc) throws IOException {
+		final boolean[] parent = this.active[CLASS];
+		final boolean[] active = this.active[MEMBER];
+		boolean visit = false;
+
+		for (int i = 0; i < this.visitors.length; i++) {
+			visit |= active[i] = parent[i] && this.visitors[i].visitMethod(srcName, srcDesc);
+		}
+
+		return visit;
+	}
+
+	@Override
+	public boolean visitMethodArg(final int argPosition, final int lvIndex, final String srcName) throws IOException {
+		final boolean[] parent = this.active[MEMBER];
+		final boolean[] active = this.active[LOCAL];
+		boolean visit = false;
+
+		for (int i = 0; i < this.visitors.length; i++) {
+			visit |= active[i] = parent[i] && this.visitors[i].visitMethodArg(argPosition, lvIndex, srcName);
+		}
+
+		return visit;
+	}
+
+	@Override
+	public boolean visitMethodVar(final int lvtRowIndex, final int lvIndex, final int startOpIdx, final String srcName) throws IOException {
+		final boolean[] parent = this.active[MEMBER];
+		final boolean[] active = this.active[LOCAL];
+		boolean visit = false;
+
+		for (int i = 0; i < this.visitors.length; i++) {
+			visit |= active[i] = parent[i] && this.visitors[i].visitMethodVar(lvtRowIndex, lvIndex, startOpIdx, srcName);
+		}
+
+		return visit;
+	}
+
+	@Override
+	public boolean visitEnd() throws IOException {
+		boolean done = true;
+		for (int i = 0; i < this.visitors.length; i++) {
+			if (!this.done[i]) this.done[i] = this.visitors[i].visitEnd();
+			done &= this.done[i];
+		}
+
+		if (done) {
+			// Every visitor has finished, so the next visit starts afresh
+			Arrays.fill(this.done, false);
+		}
+		Arrays.fill(this.header, false);
+		Arrays.fill(this.content, false);
+		return done;
+	}
+
+	@Override
+	public void visitDstName(final MappedElementKind targetKind, final int namespace, final String name) throws IOException {
+		final boolean[] active = this.active[depth(targetKind)];
+
+		for (int i = 0; i < this.visitors.length; i++) {
+			if (active[i]) this.visitors[i].visitDstName(targetKind, namespace, name);
+		}
+	}
+
+	@Override
+	public void visitDstDesc(final MappedElementKind targetKind, final int namespace, final String desc) throws IOException {
+		final boolean[] active = this.active[depth(targetKind)];
+
+		for (int i = 0; i < this.visitors.length; i++) {
+			if (active[i]) this.visitors[i].visitDstDesc(targetKind, namespace, desc);
+		}
+	}
+
+	@Override
+	public boolean visitElementContent(final MappedElementKind targetKind) throws IOException {
+		final boolean[] active = this.active[depth(targetKind)];
+		boolean visit = false;
+
+		for (int i = 0; i < this.visitors.length; i++) {
+			visit |= active[i] = active[i] && this.visitors[i].visitElementContent(targetKind);
+		}
+		return visit;
+	}
+
+	@Override
+	public void visitComment(final MappedElementKind targetKind, final String comment) throws IOException {
+		final boolean[] active = this.active[depth(targetKind)];
+
+		for (int i = 0; i < this.visitors.length; i++) {
+			if (active[i]) this.visitors[i].visitComment(targetKind, comment);
+		}
+	}
+
+	// Calls for an element carry its kind, which may come after its members, as for a class comment
+	private static int depth(final MappedElementKind kind) {
+		switch (kind) {
+			case CLASS:
+				return CLASS;
+			case FIELD:
+			case METHOD:
+				return MEMBER;
+			default:
+				return LOCAL;
+		}
+	}
+
+}
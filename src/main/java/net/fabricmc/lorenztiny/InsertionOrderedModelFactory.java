@@ -0,0 +1,225 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import org.cadixdev.bombe.type.signature.FieldSignature;
+import org.cadixdev.bombe.type.signature.MethodSignature;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.impl.MappingSetModelFactoryImpl;
+import org.cadixdev.lorenz.impl.model.InnerClassMappingImpl;
+import org.cadixdev.lorenz.impl.model.MethodMappingImpl;
+import org.cadixdev.lorenz.impl.model.TopLevelClassMappingImpl;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.InnerClassMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+import org.cadixdev.lorenz.model.MethodParameterMapping;
+import org.cadixdev.lorenz.model.TopLevelClassMapping;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link org.cadixdev.lorenz.MappingSetModelFactory model factory} whose
+ * mappings list their classes, members and parameters in the order they
+ * were created, rather than in hash order.
+ * <p>
+ * Reading a sorted Tiny file into a {@link #createMappingSet() mapping set}
+ * of this factory keeps the mappings in the order of the file, so that
+ * writing them back out again needs no sorting.
+ * <p>
+ * Where a mapping is replaced, the order no longer matches the mappings,
+ * and Lorenz's own order is used instead.
+ *
+ * @see TinyMappingFormat#read(java.nio.file.Path, String, String)
+ * @since 4.1.0
+ */
+public final class InsertionOrderedModelFactory extends MappingSetModelFactoryImpl {
+
+	/**
+	 * Creates a new, empty {@link MappingSet mapping set}, keeping its
+	 * top-level classes in order too, using a new insertion ordered factory.
+	 *
+	 * @return The mapping set
+	 */
+	public static MappingSet createMappingSet() {
+		return new OrderedMappingSet(new InsertionOrderedModelFactory());
+	}
+
+	@Override
+	public TopLevelClassMapping createTopLevelClassMapping(final MappingSet parent, final String obfuscatedName, final String deobfuscatedName) {
+		final TopLevel mapping = new TopLevel(parent, obfuscatedName, deobfuscatedName);
+		if (parent instanceof OrderedMappingSet) ((OrderedMappingSet) parent).classes.add(mapping);
+		return mapping;
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public InnerClassMapping createInnerClassMapping(final ClassMapping parent, final String obfuscatedName, final String deobfuscatedName) {
+		final Inner mapping = new Inner(parent, obfuscatedName, deobfuscatedName);
+		final Order order = order(parent);
+		if (order != null) order.classes.add(mapping);
+		return mapping;
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public FieldMapping createFieldMapping(final ClassMapping parent, final FieldSignature signature, final String deobfuscatedName) {
+		final FieldMapping mapping = super.createFieldMapping(parent, signature, deobfuscatedName);
+		final Order order = order(parent);
+		if (order != null) order.fields.add(mapping);
+		return mapping;
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public MethodMapping createMethodMapping(final ClassMapping parent, final MethodSignature signature, final String deobfuscatedName) {
+		final Method mapping = new Method(parent, signature, deobfuscatedName);
+		final Order order = order(parent);
+		if (order != null) order.methods.add(mapping);
+		return mapping;
+	}
+
+	@Override
+	public MethodParameterMapping createMethodParameterMapping(final MethodMapping parent, final int index, final String deobfuscatedName) {
+		final MethodParameterMapping mapping = super.createMethodParameterMapping(parent, index, deobfuscatedName);
+		if (parent instanceof Method) ((Method) parent).parameters.add(mapping);
+		return mapping;
+	}
+
+	private static Order order(final ClassMapping<?, ?> klass) {
+		if (klass instanceof TopLevel) return ((TopLevel) klass).order;
+		if (klass instanceof Inner) return ((Inner) klass).order;
+		return null;
+	}
+
+	/**
+	 * Gets the mappings in the order they were created, if they still match
+	 * the given mappings.
+	 */
+	private static <T> Collection<T> inOrder(final List<T> order, final Collection<T> mappings) {
+		return order.size() == mappings.size() ? Collections.unmodifiableList(order) : mappings;
+	}
+
+	private static <T> List<T> newOrder() {
+		// Classes may be populated concurrently, as by a partitioned read
+		return Collections.synchronizedList(new ArrayList<>());
+	}
+
+	/**
+	 * The order of the children of a class mapping.
+	 */
+	private static final class Order {
+
+		final List<InnerClassMapping> classes = newOrder();
+		final List<FieldMapping> fields = newOrder();
+		final List<MethodMapping> methods = newOrder();
+
+	}
+
+	private static final class OrderedMappingSet extends MappingSet {
+
+		final List<TopLevelClassMapping> classes = newOrder();
+
+		OrderedMappingSet(final InsertionOrderedModelFactory modelFactory) {
+			super(modelFactory);
+		}
+
+		@Override
+		public Collection<TopLevelClassMapping> getTopLevelClassMappings() {
+			return inOrder(this.classes, super.getTopLevelClassMappings());
+		}
+
+	}
+
+	private static final class TopLevel extends TopLevelClassMappingImpl {
+
+		final Order order = new Order();
+
+		TopLevel(final MappingSet mappings, final String obfuscatedName, final String deobfuscatedName) {
+			super(mappings, obfuscatedName, deobfuscatedName);
+		}
+
+		@Override
+		public Collection<FieldMapping> getFieldMappings() {
+			return inOrder(this.order.fields, super.getFieldMappings());
+		}
+
+		@Override
+		public Collection<MethodMapping> getMethodMappings() {
+			return inOrder(this.order.methods, super.getMethodMappings());
+		}
+
+		@Override
+		public Collection<InnerClassMapping> getInnerClassMappings() {
+			return inOrder(this.order.classes, super.getInnerClassMappings());
+		}
+
+	}
+
+	private static final class Inner extends InnerClassMappingImpl {
+
+		final Order order = new Order();
+
+		@SuppressWarnings("rawtypes")
+		Inner(final ClassMapping parent, final String obfuscatedName, final String deobfuscatedName) {
+			super(parent, obfuscatedName, deobfuscatedName);
+		}
+
+		@Override
+		public Collection<FieldMapping> getFieldMappings() {
+			return inOrder(this.order.fields, super.getFieldMappings());
+		}
+
+		@Override
+		public Collection<MethodMapping> getMethodMappings() {
+			return inOrder(this.order.methods, super.getMethodMappings());
+		}
+
+		@Override
+		public Collection<InnerClassMapping> getInnerClassMappings() {
+			return inOrder(this.order.classes, super.getInnerClassMappings());
+		}
+
+	}
+
+	private static final class Method extends MethodMappingImpl {
+
+		final List<MethodParameterMapping> parameters = newOrder();
+
+		Method(final ClassMapping<?, ?> parent, final MethodSignature signature, final String deobfuscatedName) {
+			super(parent, signature, deobfuscatedName);
+		}
+
+		@Override
+		public Collection<MethodParameterMapping> getParameterMappings() {
+			return inOrder(this.parameters, super.getParameterMappings());
+		}
+
+	}
+
+}
@@ -0,0 +1,109 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import net.fabricmc.mappingio.MappedElementKind;
+import net.fabricmc.mappingio.MappingVisitor;
+import net.fabricmc.mappingio.adapter.ForwardingMappingVisitor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link MappingVisitor mapping visitor} that passes every name and
+ * descriptor through a {@link TinyStringPool string pool}, before
+ * passing them on to another visitor.
+ * <p>
+ * Only the strings are pooled here, descriptors are parsed into types
+ * later on, when the mappings are converted into a
+ * {@link org.cadixdev.lorenz.MappingSet mapping set}. The readers parse
+ * them through the same pool, with
+ * {@link TinyStringPool#internFieldType(String)} and
+ * {@link TinyStringPool#internMethodDescriptor(String)}.
+ *
+ * @since 4.1.0
+ */
+public class InterningMappingVisitor extends ForwardingMappingVisitor {
+
+	private final TinyStringPool pool;
+
+	/**
+	 * Creates a new interning visitor.
+	 *
+	 * @param next The visitor to pass the interned names on to
+	 * @param pool The pool to intern names with
+	 */
+	public InterningMappingVisitor(final MappingVisitor next, final TinyStringPool pool) {
+		super(next);
+		this.pool = pool;
+	}
+
+	@Override
+	public void visitNamespaces(final String srcNamespace, final List<String> dstNamespaces) throws IOException {
+		final List<String> interned = new ArrayList<>(dstNamespaces.size());
+		for (final String namespace : dstNamespaces) {
+			interned.add(this.pool.intern(namespace));
+		}
+
+		super.visitNamespaces(this.pool.intern(srcNamespace), interned);
+	}
+
+	@Override
+	public boolean visitClass(final String srcName) throws IOException {
+		return super.visitClass(this.pool.intern(srcName));
+	}
+
+	@Override
+	public boolean visitField(final String srcName, final String srcDesc) throws IOException {
+		return super.visitField(this.pool.intern(srcName), this.pool.intern(srcDesc));
+	}
+
+	@Override
+	public boolean visitMethod(final String srcName, final String srcDesc) throws IOException {
+		return super.visitMethod(this.pool.intern(srcName), this.pool.intern(srcDesc));
+	}
+
+	@Override
+	public boolean visitMethodArg(final int argPosition, final int lvIndex, final String srcName) throws IOException {
+		return super.visitMethodArg(argPosition, lvIndex, this.pool.intern(srcName));
+	}
+
+	@Override
+	public boolean visitMethodVar(final int lvtRowIndex, final int lvIndex, final int startOpIdx, final String srcName) throws IOException {
+		return super.visitMethodVar(lvtRowIndex, lvIndex, startOpIdx, this.pool.intern(srcName));
+	}
+
+	@Override
+	public void visitDstName(final MappedElementKind targetKind, final int namespace, final String name) throws IOException {
+		super.visitDstName(targetKind, namespace, this.pool.intern(name));
+	}
+
+	@Override
+	public void visitDstDesc(final MappedElementKind targetKind, final int namespace, final String desc) throws IOException {
+		super.visitDstDesc(targetKind, namespace, this.pool.intern(desc));
+	}
+
+}
@@ -0,0 +1,329 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts the records of a {@link TinySortMergeJoiner sort-merge join},
+ * spilling sorted runs to disk whenever more than a chunk's worth of
+ * records are held.
+ * <p>
+ * Records are ordered by owner, kind, name and then descriptor, so that
+ * every class is immediately followed by its members.
+ */
+final class JoinRecordSorter implements Closeable {
+
+	static final byte CLASS = 0;
+	static final byte FIELD = 1;
+	static final byte METHOD = 2;
+
+	private static final Comparator<String> NULLS_FIRST = Comparator.nullsFirst(Comparator.naturalOrder());
+	static final Comparator<Record> ORDER = Comparator
+			.comparing((Record record) -> record.owner, NULLS_FIRST)
+			.thenComparingInt(record -> record.kind)
+			.thenComparing(record -> record.name, NULLS_FIRST)
+			.thenComparing(record -> record.desc, NULLS_FIRST);
+
+	private final int chunkSize;
+	private final Path directory;
+	private final String prefix;
+
+	private final List<Record> chunk = new ArrayList<>();
+	private final List<Path> runs = new ArrayList<>();
+
+	/**
+	 * Creates a new sorter.
+	 *
+	 * @param chunkSize The number of records to hold before spilling
+	 * @param directory The directory to spill runs to, created when first needed
+	 * @param prefix The prefix of the files to spill runs to
+	 */
+	JoinRecordSorter(final int chunkSize, final Path directory, final String prefix) {
+		this.chunkSize = chunkSize;
+		this.directory = directory;
+		this.prefix = prefix;
+	}
+
+	void add(final Record record) throws IOException {
+		this.chunk.add(record);
+		if (this.chunk.size() >= this.chunkSize) this.spill();
+	}
+
+	/**
+	 * Opens the sorted records for reading. The records may be read any
+	 * number of times, until the sorter is closed.
+	 *
+	 * @return The sorted records
+	 */
+	RecordIterator open() throws IOException {
+		if (this.runs.isEmpty()) {
+			this.chunk.sort(ORDER);
+			return new ChunkIterator(this.chunk.iterator());
+		}
+
+		if (!this.chunk.isEmpty()) this.spill();
+		return new MergingIterator(this.runs);
+	}
+
+	private void spill() throws IOException {
+		this.chunk.sort(ORDER);
+
+		Files.createDirectories(this.directory);
+		final Path run = this.directory.resolve(this.prefix + this.runs.size());
+		this.runs.add(run);
+
+		try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)))) {
+			out.writeInt(this.chunk.size());
+			for (final Record record : this.chunk) {
+				record.write(out);
+			}
+		}
+
+		this.chunk.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.chunk.clear();
+
+		for (final Path run : this.runs) {
+			Files.deleteIfExists(run);
+		}
+		this.runs.clear();
+	}
+
+	/**
+	 * A single class, field or method from one of the joined inputs.
+	 */
+	static final class Record {
+
+		/**
+		 * The name of the owning class, in the matched namespace.
+		 */
+		final String owner;
+		final byte kind;
+		/**
+		 * The name of the member, in the matched namespace.
+		 */
+		final String name;
+		/**
+		 * The descriptor of the member, in the matched namespace.
+		 */
+		final String desc;
+		/**
+		 * The name to carry through the join.
+		 */
+		final String value;
+		/**
+		 * The descriptor to carry through the join.
+		 */
+		final String valueDesc;
+
+		Record(final String owner, final byte kind, final String name, final String desc,
+		       final String value, final String valueDesc) {
+			this.owner = owner;
+			this.kind = kind;
+			this.name = name;
+			this.desc = desc;
+			this.value = value;
+			this.valueDesc = valueDesc;
+		}
+
+		void write(final DataOutput out) throws IOException {
+			out.writeByte(this.kind);
+			writeString(out, this.owner);
+			writeString(out, this.name);
+			writeString(out, this.desc);
+			writeString(out, this.value);
+			writeString(out, this.valueDesc);
+		}
+
+		static Record read(final DataInput in) throws IOException {
+			final byte kind = in.readByte();
+			return new Record(readString(in), kind, readString(in), readString(in), readString(in), readString(in));
+		}
+
+		private static void writeString(final DataOutput out, final String string) throws IOException {
+			out.writeBoolean(string != null);
+			if (string != null) out.writeUTF(string);
+		}
+
+		private static String readString(final DataInput in) throws IOException {
+			return in.readBoolean() ? in.readUTF() : null;
+		}
+
+	}
+
+	/**
+	 * An iterator over sorted records, which may be peeked at.
+	 */
+	abstract static class RecordIterator implements Closeable {
+
+		private Record next;
+		private boolean fetched;
+
+		/**
+		 * Gets the next record, without consuming it.
+		 *
+		 * @return The next record, or {@code null} if there are no more
+		 */
+		Record peek() throws IOException {
+			if (!this.fetched) {
+				this.next = this.fetch();
+				this.fetched = true;
+			}
+			return this.next;
+		}
+
+		/**
+		 * Gets and consumes the next record.
+		 *
+		 * @return The next record, or {@code null} if there are no more
+		 */
+		Record next() throws IOException {
+			final Record record = this.peek();
+			this.fetched = false;
+			return record;
+		}
+
+		abstract Record fetch() throws IOException;
+
+		@Override
+		public void close() throws IOException {
+		}
+
+	}
+
+	private static final class ChunkIterator extends RecordIterator {
+
+		private final Iterator<Record> records;
+
+		ChunkIterator(final Iterator<Record> records) {
+			this.records = records;
+		}
+
+		@Override
+		Record fetch() {
+			return this.records.hasNext() ? this.records.next() : null;
+		}
+
+	}
+
+	/**
+	 * Merges any number of spilled runs, holding only the head record
+	 * of each in memory.
+	 */
+	private static final class MergingIterator extends RecordIterator {
+
+		private final List<Run> runs = new ArrayList<>();
+		private final PriorityQueue<Run> queue = new PriorityQueue<>(Comparator.comparing((Run run) -> run.head, ORDER));
+
+		MergingIterator(final List<Path> paths) throws IOException {
+			try {
+				for (final Path path : paths) {
+					final Run run = new Run(path);
+					this.runs.add(run);
+					if (run.advance()) this.queue.add(run);
+				}
+			}
+			catch (final IOException ex) {
+				this.close();
+				throw ex;
+			}
+		}
+
+		@Override
+		Record fetch() throws IOException {
+			final Run run = this.queue.poll();
+			if (run == null) return null;
+
+			final Record record = run.head;
+			if (run.advance()) this.queue.add(run);
+			return record;
+		}
+
+		@Override
+		public void close() throws IOException {
+			IOException failure = null;
+			for (final Run run : this.runs) {
+				try {
+					run.in.close();
+				}
+				catch (final IOException ex) {
+					if (failure == null) failure = ex;
+				}
+			}
+			if (failure != null) throw failure;
+		}
+
+	}
+
+	private static final class Run {
+
+		final DataInputStream in;
+		int remaining;
+		Record head;
+
+		Run(final Path path) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+
+			try {
+				this.remaining = this.in.readInt();
+			}
+			catch (final IOException ex) {
+				this.in.close();
+				throw ex;
+			}
+		}
+
+		boolean advance() throws IOException {
+			if (this.remaining == 0) {
+				this.head = null;
+				return false;
+			}
+
+			this.head = Record.read(this.in);
+			this.remaining--;
+			return true;
+		}
+
+	}
+
+}
@@ -0,0 +1,226 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import net.fabricmc.mappingio.tree.MappingTree;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.MappingSetModelFactory;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.TopLevelClassMapping;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link MappingSet mapping set} backed by a {@link MappingTree tiny tree},
+ * which only creates Lorenz mappings for a class when it is first looked up.
+ * <p>
+ * Each top-level class is converted as a whole, together with its inner
+ * classes and members, the first time it or any of its inner classes are
+ * requested. Operations over every class, such as
+ * {@link #getTopLevelClassMappings()}, convert everything that is left.
+ * <p>
+ * The resulting mappings are the same as those produced by
+ * {@link TinyMappingsReader}, using the from namespace (as the obfuscated
+ * names in Lorenz) to the to namespace (as the de-obfuscated names in Lorenz).
+ * Converting classes is reported to the {@link TinyMappingFormat#getMetrics()
+ * metrics} of the formats, as they are converted.
+ *
+ * @see TinyMappingFormat#readLazily(java.nio.file.Path, String, String)
+ * @since 4.1.0
+ */
+public class LazyTinyMappingSet extends MappingSet {
+
+	private final TinyMappingsReader reader;
+	private final TinyMetrics metrics = TinyMappingFormat.getMetrics();
+
+	// Top-level obfuscated name -> the classes within it that are yet to be converted
+	private final Map<String, List<MappingTree.ClassMapping>> pending = new ConcurrentHashMap<>();
+	private final Object lock = new Object();
+	private String loading;
+
+	/**
+	 * Creates a lazy mapping set over the given tree.
+	 *
+	 * @param tree The Tiny mappings tree to create mappings from
+	 * @param from The namespace to use in the tiny file, as Lorenz's
+	 *             obfuscated names
+	 * @param to   The namespace to use in the tiny file, as Lorenz's
+	 *             de-obfuscated names
+	 * @throws IllegalArgumentException if the {@code from} or {@code to} namespace is not present in the tiny tree
+	 */
+	public LazyTinyMappingSet(final MappingTree tree, final String from, final String to) {
+		this.reader = new TinyMappingsReader(tree, from, to);
+		this.reader.setMetrics(this.metrics);
+		this.index(tree, from);
+	}
+
+	/**
+	 * Creates a lazy mapping set over the given tree, using the given
+	 * model factory.
+	 *
+	 * @param modelFactory The model factory to create mappings with
+	 * @param tree The Tiny mappings tree to create mappings from
+	 * @param from The namespace to use in the tiny file, as Lorenz's
+	 *             obfuscated names
+	 * @param to   The namespace to use in the tiny file, as Lorenz's
+	 *             de-obfuscated names
+	 * @throws IllegalArgumentException if the {@code from} or {@code to} namespace is not present in the tiny tree
+	 */
+	public LazyTinyMappingSet(final MappingSetModelFactory modelFactory,
+	                          final MappingTree tree, final String from, final String to) {
+		super(modelFactory);
+		this.reader = new TinyMappingsReader(tree, from, to);
+		this.reader.setMetrics(this.metrics);
+		this.index(tree, from);
+	}
+
+	private void index(final MappingTree tree, final String from) {
+		for (final MappingTree.ClassMapping klass : tree.getClasses()) {
+			final String name = ClassPartitions.topLevelName(klass.getName(from));
+			this.pending.computeIfAbsent(name, k -> new ArrayList<>()).add(klass);
+		}
+	}
+
+	/**
+	 * Converts the given top-level class, if it hasn't been already.
+	 *
+	 * @param name The obfuscated name of the top-level class
+	 */
+	private void load(final String name) {
+		if (!this.pending.containsKey(name)) return;
+
+		synchronized (this.lock) {
+			// Converting a class looks itself up again
+			if (name.equals(this.loading)) return;
+
+			final List<MappingTree.ClassMapping> classes = this.pending.get(name);
+			if (classes == null) return;
+
+			final long start = this.metrics.isEnabled() ? System.nanoTime() : 0;
+			this.loading = name;
+			try {
+				for (final MappingTree.ClassMapping klass : classes) {
+					this.reader.readClass(this, klass);
+				}
+			}
+			finally {
+				this.loading = null;
+			}
+
+			if (this.metrics.isEnabled()) this.metrics.phase(TinyMetrics.Phase.CONVERT, System.nanoTime() - start);
+
+			// Only published once fully converted
+			this.pending.remove(name);
+		}
+	}
+
+	private void loadAll() {
+		for (final String name : this.pending.keySet()) {
+			this.load(name);
+		}
+	}
+
+	/**
+	 * Gets whether every class in the tree has been converted.
+	 *
+	 * @return {@code true} if every class has been converted
+	 */
+	public boolean isFullyLoaded() {
+		return this.pending.isEmpty();
+	}
+
+	@Override
+	public TopLevelClassMapping createTopLevelClassMapping(final String obfuscatedName, final String deobfuscatedName) {
+		this.load(obfuscatedName);
+		return super.createTopLevelClassMapping(obfuscatedName, deobfuscatedName);
+	}
+
+	@Override
+	public Optional<TopLevelClassMapping> getTopLevelClassMapping(final String obfuscatedName) {
+		this.load(obfuscatedName);
+		return super.getTopLevelClassMapping(obfuscatedName);
+	}
+
+	@Override
+	public Collection<TopLevelClassMapping> getTopLevelClassMappings() {
+		this.loadAll();
+		return super.getTopLevelClassMappings();
+	}
+
+	@Override
+	public TopLevelClassMapping getOrCreateTopLevelClassMapping(final String obfuscatedName) {
+		this.load(obfuscatedName);
+		return super.getOrCreateTopLevelClassMapping(obfuscatedName);
+	}
+
+	@Override
+	public boolean hasTopLevelClassMapping(final String obfuscatedName) {
+		this.load(obfuscatedName);
+		return super.hasTopLevelClassMapping(obfuscatedName);
+	}
+
+	@Override
+	public Optional<? extends ClassMapping<?, ?>> getClassMapping(final String obfuscatedName) {
+		this.load(ClassPartitions.topLevelName(obfuscatedName));
+		return super.getClassMapping(obfuscatedName);
+	}
+
+	@Override
+	public ClassMapping<?, ?> getOrCreateClassMapping(final String obfuscatedName) {
+		this.load(ClassPartitions.topLevelName(obfuscatedName));
+		return super.getOrCreateClassMapping(obfuscatedName);
+	}
+
+	@Override
+	public Optional<? extends ClassMapping<?, ?>> computeClassMapping(final String obfuscatedName) {
+		this.load(ClassPartitions.topLevelName(obfuscatedName));
+		return super.computeClassMapping(obfuscatedName);
+	}
+
+	@Override
+	public Iterator<TopLevelClassMapping> iterator() {
+		this.loadAll();
+		return super.iterator();
+	}
+
+	@Override
+	public MappingSet reverse() {
+		this.loadAll();
+		return super.reverse();
+	}
+
+	@Override
+	public MappingSet copy() {
+		this.loadAll();
+		return super.copy();
+	}
+
+}
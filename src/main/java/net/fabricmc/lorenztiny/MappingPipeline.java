@@ -0,0 +1,438 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import net.fabricmc.mappingio.MappedElementKind;
+import net.fabricmc.mappingio.MappingVisitor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Parses mappings in one stage, and feeds them to a visitor in another,
+ * with the two stages connected by a bounded queue.
+ * <p>
+ * The file is read ahead through a {@link ChannelInputStream}, and the
+ * producer stage records each run of parsed classes as a batch. Batches
+ * are replayed into the consumer visitor on the executor, strictly in
+ * order and never concurrently. When the queue is full the producer
+ * replays batches itself, so the pipeline cannot deadlock even on an
+ * executor with a single thread.
+ */
+final class MappingPipeline {
+
+	// The number of classes recorded into a single batch
+	private static final int BATCH_CLASSES = 256;
+	// The number of batches that may wait for the consumer
+	private static final int QUEUE_DEPTH = 8;
+
+	private static final int OP_NAMESPACES = 0;
+	private static final int OP_METADATA = 1;
+	private static final int OP_CONTENT = 2;
+	private static final int OP_CLASS = 3;
+	private static final int OP_FIELD = 4;
+	private static final int OP_METHOD = 5;
+	private static final int OP_ARG = 6;
+	private static final int OP_VAR = 7;
+	private static final int OP_DST_NAME = 8;
+	private static final int OP_DST_DESC = 9;
+	private static final int OP_ELEMENT_CONTENT = 10;
+	private static final int OP_COMMENT = 11;
+
+	private static final MappedElementKind[] KINDS = MappedElementKind.values();
+
+	private final MappingVisitor consumer;
+	private final Executor executor;
+	private final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUE_DEPTH);
+	private final ReentrantLock lock = new ReentrantLock();
+	private volatile Throwable failure;
+
+	// Replay state, guarded by lock
+	private boolean content;
+	private boolean inMethod;
+	private final boolean[] visible = new boolean[3];
+
+	private MappingPipeline(final MappingVisitor consumer, final Executor executor) {
+		this.consumer = consumer;
+		this.executor = executor;
+	}
+
+	/**
+	 * Reads the mappings at the given path into the given visitor, through
+	 * the pipeline.
+	 * <p>
+	 * The visitor is only visited once, requests for further passes are
+	 * not supported.
+	 *
+	 * @param format The format to parse the mappings with
+	 * @param path The path to the mappings
+	 * @param consumer The visitor to feed the mappings to
+	 * @param executor The executor to run both stages on
+	 * @return A future completing once the visitor has visited all mappings
+	 */
+	static CompletableFuture<Void> run(final TinyMappingFormat format, final Path path,
+	                                   final MappingVisitor consumer, final Executor executor) {
+		final MappingPipeline pipeline = new MappingPipeline(consumer, executor);
+		final CompletableFuture<Void> future = new CompletableFuture<>();
+
+		executor.execute(() -> {
+			try {
+				pipeline.produce(format, path);
+				future.complete(null);
+			}
+			catch (final Throwable ex) {
+				future.completeExceptionally(ex instanceof UncheckedIOException ? ex.getCause() : ex);
+			}
+		});
+		return future;
+	}
+
+	private void produce(final TinyMappingFormat format, final Path path) throws IOException {
+		final Recorder recorder = new Recorder();
+
+		try (final BufferedReader reader = new BufferedReader(new InputStreamReader(ChannelInputStream.open(path), StandardCharsets.UTF_8))) {
+			format.accept(reader, recorder);
+		}
+		recorder.flush();
+
+		this.lock.lock();
+		try {
+			this.drainLocked();
+			this.checkFailure();
+			this.consumer.visitEnd();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	private void submit(final Batch batch) throws IOException {
+		while (!this.queue.offer(batch)) {
+			this.checkFailure();
+
+			// Replay on this thread, unless the consumer is already running
+			if (!this.drain()) {
+				try {
+					if (this.queue.offer(batch, 10, TimeUnit.MILLISECONDS)) break;
+				}
+				catch (final InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+			}
+		}
+
+		try {
+			this.executor.execute(this::drain);
+		}
+		catch (final RejectedExecutionException ignored) {
+			// The batch is replayed by the producer instead
+		}
+	}
+
+	/**
+	 * Replays all queued batches, unless another thread already is.
+	 *
+	 * @return {@code false} if another thread is replaying batches
+	 */
+	private boolean drain() {
+		if (!this.lock.tryLock()) return false;
+
+		try {
+			this.drainLocked();
+		}
+		finally {
+			this.lock.unlock();
+		}
+		return true;
+	}
+
+	private void drainLocked() {
+		try {
+			Batch batch;
+			while (this.failure == null && (batch = this.queue.poll()) != null) {
+				this.replay(batch);
+			}
+		}
+		catch (final IOException ex) {
+			this.failure = ex;
+		}
+		catch (final RuntimeException | Error ex) {
+			this.failure = ex;
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		final Throwable failure = this.failure;
+		if (failure == null) return;
+
+		if (failure instanceof IOException) throw (IOException) failure;
+		if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+		throw (Error) failure;
+	}
+
+	private void replay(final Batch batch) throws IOException {
+		final MappingVisitor visitor = this.consumer;
+		final int[] ops = batch.ops;
+		final String[] strings = batch.strings;
+		final boolean[] visible = this.visible;
+		int op = 0;
+		int str = 0;
+
+		while (op < batch.opCount) {
+			switch (ops[op++]) {
+				case OP_NAMESPACES: {
+					final int count = ops[op++];
+					final String src = strings[str++];
+					final List<String> dst = Arrays.asList(Arrays.copyOfRange(strings, str, str + count));
+					str += count;
+
+					if (visitor.visitHeader()) visitor.visitNamespaces(src, dst);
+					break;
+				}
+				case OP_METADATA:
+					visitor.visitMetadata(strings[str], strings[str + 1]);
+					str += 2;
+					break;
+				case OP_CONTENT:
+					this.content = visitor.visitContent();
+					break;
+				case OP_CLASS:
+					visible[0] = this.content && visitor.visitClass(strings[str++]);
+					break;
+				case OP_FIELD:
+					this.inMethod = false;
+					visible[1] = visible[0] && visitor.visitField(strings[str], strings[str + 1]);
+					str += 2;
+					break;
+				case OP_METHOD:
+					this.inMethod = true;
+					visible[1] = visible[0] && visitor.visitMethod(strings[str], strings[str + 1]);
+					str += 2;
+					break;
+				case OP_ARG:
+					visible[2] = visible[1] && this.inMethod && visitor.visitMethodArg(ops[op], ops[op + 1], strings[str++]);
+					op += 2;
+					break;
+				case OP_VAR:
+					visible[2] = visible[1] && this.inMethod && visitor.visitMethodVar(ops[op], ops[op + 1], ops[op + 2], strings[str++]);
+					op += 3;
+					break;
+				// These replay the kind they were recorded with, as a class comment may follow its members
+				case OP_DST_NAME: {
+					final MappedElementKind kind = KINDS[ops[op]];
+					if (visible[depth(kind)]) visitor.visitDstName(kind, ops[op + 1], strings[str]);
+					op += 2;
+					str++;
+					break;
+				}
+				case OP_DST_DESC: {
+					final MappedElementKind kind = KINDS[ops[op]];
+					if (visible[depth(kind)]) visitor.visitDstDesc(kind, ops[op + 1], strings[str]);
+					op += 2;
+					str++;
+					break;
+				}
+				case OP_ELEMENT_CONTENT: {
+					final MappedElementKind kind = KINDS[ops[op++]];
+					final int depth = depth(kind);
+					if (visible[depth]) visible[depth] = visitor.visitElementContent(kind);
+					break;
+				}
+				case OP_COMMENT: {
+					final MappedElementKind kind = KINDS[ops[op++]];
+					if (visible[depth(kind)]) visitor.visitComment(kind, strings[str]);
+					str++;
+					break;
+				}
+				default:
+					throw new IllegalStateException("Unknown op " + ops[op - 1]);
+			}
+		}
+	}
+
+	private static int depth(final MappedElementKind kind) {
+		switch (kind) {
+			case CLASS:
+				return 0;
+			case FIELD:
+			case METHOD:
+				return 1;
+			default:
+				return 2;
+		}
+	}
+
+	/**
+	 * A run of recorded visits, stored as a flat stream of ops with
+	 * their integer and string operands.
+	 */
+	private static final class Batch {
+
+		int[] ops = new int[4096];
+		int opCount;
+		String[] strings = new String[4096];
+		int stringCount;
+		int classes;
+
+		void op(final int op) {
+			if (this.opCount == this.ops.length) this.ops = Arrays.copyOf(this.ops, this.opCount * 2);
+			this.ops[this.opCount++] = op;
+		}
+
+		void string(final String string) {
+			if (this.stringCount == this.strings.length) this.strings = Arrays.copyOf(this.strings, this.stringCount * 2);
+			this.strings[this.stringCount++] = string;
+		}
+
+	}
+
+	/**
+	 * The producer stage, recording every visit into batches.
+	 */
+	private final class Recorder implements MappingVisitor {
+
+		private Batch batch = new Batch();
+
+		void flush() throws IOException {
+			if (this.batch.opCount > 0) submit(this.batch);
+			this.batch = new Batch();
+		}
+
+		@Override
+		public void visitNamespaces(final String srcNamespace, final List<String> dstNamespaces) {
+			this.batch.op(OP_NAMESPACES);
+			this.batch.op(dstNamespaces.size());
+			this.batch.string(srcNamespace);
+			for (final String namespace : dstNamespaces) {
+				this.batch.string(namespace);
+			}
+		}
+
+		@Override
+		public void visitMetadata(final String key, final String value) {
+			this.batch.op(OP_METADATA);
+			this.batch.string(key);
+			this.batch.string(value);
+		}
+
+		@Override
+		public boolean visitContent() {
+			this.batch.op(OP_CONTENT);
+			return true;
+		}
+
+		@Override
+		public boolean visitClass(final String srcName) throws IOException {
+			if (this.batch.classes == BATCH_CLASSES) this.flush();
+
+			this.batch.classes++;
+			this.batch.op(OP_CLASS);
+			this.batch.string(srcName);
+			return true;
+		}
+
+		@Override
+		public boolean visitField(final String srcName, final String srcDesc) {
+			this.batch.op(OP_FIELD);
+			this.batch.string(srcName);
+			this.batch.string(srcDesc);
+			return true;
+		}
+
+		@Override
+		public boolean visitMethod(final String srcName, final String srcDesc) {
+			this.batch.op(OP_METHOD);
+			this.batch.string(srcName);
+			this.batch.string(srcDesc);
+			return true;
+		}
+
+		@Override
+		public boolean visitMethodArg(final int argPosition, final int lvIndex, final String srcName) {
+			this.batch.op(OP_ARG);
+			this.batch.op(argPosition);
+			this.batch.op(lvIndex);
+			this.batch.string(srcName);
+			return true;
+		}
+
+		@Override
+		public boolean visitMethodVar(final int lvtRowIndex, final int lvIndex, final int startOpIdx, final String srcName) {
+			this.batch.op(OP_VAR);
+			this.batch.op(lvtRowIndex);
+			this.batch.op(lvIndex);
+			this.batch.op(startOpIdx);
+			this.batch.string(srcName);
+			return true;
+		}
+
+		@Override
+		public void visitDstName(final MappedElementKind targetKind, final int namespace, final String name) {
+			this.batch.op(OP_DST_NAME);
+			this.batch.op(targetKind.ordinal());
+			this.batch.op(namespace);
+			this.batch.string(name);
+		}
+
+		@Override
+		public void visitDstDesc(final MappedElementKind targetKind, final int namespace, final String desc) {
+			this.batch.op(OP_DST_DESC);
+			this.batch.op(targetKind.ordinal());
+			this.batch.op(namespace);
+			this.batch.string(desc);
+		}
+
+		@Override
+		public boolean visitElementContent(final MappedElementKind targetKind) {
+			this.batch.op(OP_ELEMENT_CONTENT);
+			this.batch.op(targetKind.ordinal());
+			return true;
+		}
+
+		@Override
+		public void visitComment(final MappedElementKind targetKind, final String comment) {
+			this.batch.op(OP_COMMENT);
+			this.batch.op(targetKind.ordinal());
+			this.batch.string(comment);
+		}
+
+	}
+
+}
@@ -0,0 +1,210 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import net.fabricmc.mappingio.MappedElementKind;
+import net.fabricmc.mappingio.MappingVisitor;
+import net.fabricmc.mappingio.MappingWriter;
+import net.fabricmc.mappingio.format.MappingFormat;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.io.MappingsWriter;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+import org.cadixdev.lorenz.model.MethodParameterMapping;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * A {@link MappingsWriter mappings writer} that drives mapping-io
+ * {@link MappingVisitor mapping visitors} straight from a
+ * {@link MappingSet mapping set}, without building an intermediate
+ * mapping tree.
+ * <p>
+ * The mapping set is walked once per pass, in the order given by the
+ * writer's config, so any mapping-io {@link MappingWriter mapping writer}
+ * can be used to write the mappings in its format. When given several
+ * visitors, they are all fed from the same walk.
+ * <p>
+ * The mappings are visited using the from namespace as the source
+ * namespace (for the obfuscated names in Lorenz), and the to namespace
+ * as the only destination namespace (for the de-obfuscated names in Lorenz).
+ * The visitors are not closed by the exporter.
+ *
+ * @since 4.1.0
+ */
+public class MappingSetExporter extends MappingsWriter {
+
+	private final MappingVisitor visitor;
+	private final String from;
+	private final String to;
+
+	/**
+	 * Creates a new exporter, driving the given visitor.
+	 *
+	 * @param visitor The visitor to drive
+	 * @param from The namespace to place the obfuscated names under
+	 * @param to The namespace to place the deobfuscated names under
+	 */
+	public MappingSetExporter(final MappingVisitor visitor, final String from, final String to) {
+		this.visitor = visitor;
+		this.from = from;
+		this.to = to;
+	}
+
+	/**
+	 * Creates a new exporter, driving all of the given visitors from
+	 * a single walk of the mappings.
+	 *
+	 * @param visitors The visitors to drive
+	 * @param from The namespace to place the obfuscated names under
+	 * @param to The namespace to place the deobfuscated names under
+	 */
+	public MappingSetExporter(final List<? extends MappingVisitor> visitors, final String from, final String to) {
+		this(visitors.size() == 1 ? visitors.get(0) : new FanOutMappingVisitor(visitors), from, to);
+	}
+
+	/**
+	 * Creates a new exporter, driving all of the given visitors from
+	 * a single walk of the mappings.
+	 *
+	 * @param from The namespace to place the obfuscated names under
+	 * @param to The namespace to place the deobfuscated names under
+	 * @param visitors The visitors to drive
+	 */
+	public MappingSetExporter(final String from, final String to, final MappingVisitor... visitors) {
+		this(Arrays.asList(visitors), from, to);
+	}
+
+	/**
+	 * Writes the given mapping set to a file, in any format supported by
+	 * mapping-io.
+	 *
+	 * @param mappings The mappings to write
+	 * @param path The file to write the mappings to
+	 * @param format The format to write the mappings in
+	 * @param from The namespace to place the obfuscated names under
+	 * @param to The namespace to place the deobfuscated names under
+	 * @throws IOException if an I/O error occurs writing the file
+	 */
+	public static void export(final MappingSet mappings, final Path path, final MappingFormat format,
+	                          final String from, final String to) throws IOException {
+		try (final MappingWriter writer = MappingWriter.create(path, format)) {
+			new MappingSetExporter(writer, from, to).write(mappings);
+		}
+	}
+
+	@Override
+	public void write(final MappingSet mappings) throws IOException {
+		final MappingVisitor visitor = this.visitor;
+
+		do {
+			if (visitor.visitHeader()) {
+				visitor.visitNamespaces(this.from, Collections.singletonList(this.to));
+			}
+
+			if (visitor.visitContent()) {
+				for (final ClassMapping<?, ?> klass : sorted(mappings.getTopLevelClassMappings(),
+						ClassMapping::hasMappings, this.getConfig().getClassMappingComparator())) {
+					this.visitClass(klass);
+				}
+			}
+		} while (!visitor.visitEnd());
+	}
+
+	private void visitClass(final ClassMapping<?, ?> mapping) throws IOException {
+		final MappingVisitor visitor = this.visitor;
+
+		if (visitor.visitClass(mapping.getFullObfuscatedName())) {
+			visitor.visitDstName(MappedElementKind.CLASS, 0, mapping.getFullDeobfuscatedName());
+
+			if (visitor.visitElementContent(MappedElementKind.CLASS)) {
+				for (final FieldMapping field : sorted(mapping.getFieldMappings(),
+						FieldMapping::hasDeobfuscatedName, this.getConfig().getFieldMappingComparator())) {
+					this.visitField(field);
+				}
+
+				for (final MethodMapping method : sorted(mapping.getMethodMappings(),
+						MethodMapping::hasMappings, this.getConfig().getMethodMappingComparator())) {
+					this.visitMethod(method);
+				}
+			}
+		}
+
+		// Inner classes are visited as classes of their own, after their outer class
+		for (final ClassMapping<?, ?> inner : sorted(mapping.getInnerClassMappings(),
+				ClassMapping::hasMappings, this.getConfig().getClassMappingComparator())) {
+			this.visitClass(inner);
+		}
+	}
+
+	private void visitField(final FieldMapping mapping) throws IOException {
+		final String desc = mapping.getType().map(Object::toString).orElse(null);
+
+		if (this.visitor.visitField(mapping.getObfuscatedName(), desc)) {
+			this.visitor.visitDstName(MappedElementKind.FIELD, 0, mapping.getDeobfuscatedName());
+			this.visitor.visitElementContent(MappedElementKind.FIELD);
+		}
+	}
+
+	private void visitMethod(final MethodMapping mapping) throws IOException {
+		final MappingVisitor visitor = this.visitor;
+
+		if (!visitor.visitMethod(mapping.getObfuscatedName(), mapping.getObfuscatedDescriptor())) return;
+		visitor.visitDstName(MappedElementKind.METHOD, 0, mapping.getDeobfuscatedName());
+		if (!visitor.visitElementContent(MappedElementKind.METHOD)) return;
+
+		for (final MethodParameterMapping param : sorted(mapping.getParameterMappings(),
+				MethodParameterMapping::hasDeobfuscatedName, Comparator.comparingInt(MethodParameterMapping::getIndex))) {
+			if (visitor.visitMethodArg(-1, param.getIndex(), null)) {
+				visitor.visitDstName(MappedElementKind.METHOD_ARG, 0, param.getDeobfuscatedName());
+				visitor.visitElementContent(MappedElementKind.METHOD_ARG);
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+	}
+
+	private static <T> List<T> sorted(final Collection<? extends T> mappings, final Predicate<? super T> filter,
+	                                  final Comparator<? super T> comparator) {
+		final List<T> list = new ArrayList<>(mappings.size());
+		for (final T mapping : mappings) {
+			if (filter.test(mapping)) list.add(mapping);
+		}
+		list.sort(comparator);
+		return list;
+	}
+
+}
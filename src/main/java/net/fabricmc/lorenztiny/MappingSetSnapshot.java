@@ -0,0 +1,468 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import org.cadixdev.bombe.type.FieldType;
+import org.cadixdev.bombe.type.MethodDescriptor;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+import org.cadixdev.lorenz.model.MethodParameterMapping;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, array-backed snapshot of a {@link MappingSet mapping set},
+ * for sharing between many threads that only ever look mappings up.
+ * <p>
+ * Every class, field, method and parameter mapping is held in flat arrays,
+ * sharing a single instance of each distinct name, rather than as an object
+ * with maps of its own. Members are kept sorted within their class, and
+ * looked up by binary search. As nothing is ever written once the snapshot
+ * is taken, lookups need no synchronisation at all.
+ * <p>
+ * Lookups answer the same as the equivalent lookups against the mapping set
+ * the snapshot was taken of. The snapshot cannot be modified, it is instead
+ * {@link #toMappingSet() converted back} into a new mapping set to be edited.
+ *
+ * @since 4.1.0
+ */
+public final class MappingSetSnapshot {
+
+	private static final int NONE = -1;
+
+	private static final Comparator<String> NULLS_FIRST = Comparator.nullsFirst(Comparator.naturalOrder());
+
+	// Classes, sorted by obfuscated name, with an open-addressing index over them
+	private final String[] classNames;
+	private final String[] classDeobfNames;
+	private final String[] classFullDeobfNames;
+	private final int[] classIndex;
+
+	// Members, grouped by class, and sorted by name and descriptor within each group
+	private final int[] fieldStarts;
+	private final String[] fieldNames;
+	private final String[] fieldDescs;
+	private final String[] fieldDeobfNames;
+
+	private final int[] methodStarts;
+	private final String[] methodNames;
+	private final String[] methodDescs;
+	private final String[] methodDeobfNames;
+
+	// Parameters, grouped by method, and sorted by index within each group
+	private final int[] paramStarts;
+	private final int[] paramIndices;
+	private final String[] paramDeobfNames;
+
+	private MappingSetSnapshot(final List<ClassMapping<?, ?>> classes) {
+		final Map<String, String> strings = new HashMap<>();
+
+		final int classCount = classes.size();
+		this.classNames = new String[classCount];
+		this.classDeobfNames = new String[classCount];
+		this.classFullDeobfNames = new String[classCount];
+		this.fieldStarts = new int[classCount + 1];
+		this.methodStarts = new int[classCount + 1];
+
+		final List<FieldMapping> fields = new ArrayList<>();
+		final List<MethodMapping> methods = new ArrayList<>();
+
+		for (int i = 0; i < classCount; i++) {
+			final ClassMapping<?, ?> klass = classes.get(i);
+			this.classNames[i] = share(strings, klass.getFullObfuscatedName());
+			this.classDeobfNames[i] = klass.hasDeobfuscatedName() ? share(strings, klass.getDeobfuscatedName()) : null;
+			this.classFullDeobfNames[i] = share(strings, klass.getFullDeobfuscatedName());
+
+			this.fieldStarts[i] = fields.size();
+			final List<FieldMapping> classFields = new ArrayList<>(klass.getFieldMappings());
+			classFields.sort(Comparator.comparing(FieldMapping::getObfuscatedName).thenComparing(MappingSetSnapshot::desc, NULLS_FIRST));
+			fields.addAll(classFields);
+
+			this.methodStarts[i] = methods.size();
+			final List<MethodMapping> classMethods = new ArrayList<>(klass.getMethodMappings());
+			classMethods.sort(Comparator.comparing(MethodMapping::getObfuscatedName).thenComparing(MethodMapping::getObfuscatedDescriptor));
+			methods.addAll(classMethods);
+		}
+		this.fieldStarts[classCount] = fields.size();
+		this.methodStarts[classCount] = methods.size();
+
+		this.fieldNames = new String[fields.size()];
+		this.fieldDescs = new String[fields.size()];
+		this.fieldDeobfNames = new String[fields.size()];
+		for (int i = 0; i < fields.size(); i++) {
+			final FieldMapping field = fields.get(i);
+			this.fieldNames[i] = share(strings, field.getObfuscatedName());
+			this.fieldDescs[i] = share(strings, desc(field));
+			this.fieldDeobfNames[i] = field.hasDeobfuscatedName() ? share(strings, field.getDeobfuscatedName()) : null;
+		}
+
+		this.methodNames = new String[methods.size()];
+		this.methodDescs = new String[methods.size()];
+		this.methodDeobfNames = new String[methods.size()];
+		this.paramStarts = new int[methods.size() + 1];
+
+		final List<MethodParameterMapping> params = new ArrayList<>();
+		for (int i = 0; i < methods.size(); i++) {
+			final MethodMapping method = methods.get(i);
+			this.methodNames[i] = share(strings, method.getObfuscatedName());
+			this.methodDescs[i] = share(strings, method.getObfuscatedDescriptor());
+			this.methodDeobfNames[i] = method.hasDeobfuscatedName() ? share(strings, method.getDeobfuscatedName()) : null;
+
+			this.paramStarts[i] = params.size();
+			final List<MethodParameterMapping> methodParams = new ArrayList<>(method.getParameterMappings());
+			methodParams.sort(Comparator.comparingInt(MethodParameterMapping::getIndex));
+			params.addAll(methodParams);
+		}
+		this.paramStarts[methods.size()] = params.size();
+
+		this.paramIndices = new int[params.size()];
+		this.paramDeobfNames = new String[params.size()];
+		for (int i = 0; i < params.size(); i++) {
+			final MethodParameterMapping param = params.get(i);
+			this.paramIndices[i] = param.getIndex();
+			this.paramDeobfNames[i] = param.hasDeobfuscatedName() ? share(strings, param.getDeobfuscatedName()) : null;
+		}
+
+		// Open-addressing index of class ids, kept at most half full
+		final int capacity = Integer.highestOneBit(Math.max(classCount, 1) * 2 - 1) << 1;
+		this.classIndex = new int[capacity];
+		Arrays.fill(this.classIndex, NONE);
+		for (int i = 0; i < classCount; i++) {
+			int slot = mix(this.classNames[i].hashCode()) & (capacity - 1);
+			while (this.classIndex[slot] != NONE) {
+				slot = (slot + 1) & (capacity - 1);
+			}
+			this.classIndex[slot] = i;
+		}
+	}
+
+	/**
+	 * Takes a snapshot of the given mapping set.
+	 * <p>
+	 * The mapping set must not be modified while the snapshot is taken.
+	 * Once taken, the snapshot does not change with the mapping set.
+	 *
+	 * @param mappings The mapping set
+	 * @return The snapshot
+	 */
+	public static MappingSetSnapshot of(final MappingSet mappings) {
+		final List<ClassMapping<?, ?>> classes = new ArrayList<>();
+		for (final ClassMapping<?, ?> klass : mappings.getTopLevelClassMappings()) {
+			collectClasses(klass, classes);
+		}
+		classes.sort(Comparator.comparing(ClassMapping::getFullObfuscatedName));
+		return new MappingSetSnapshot(classes);
+	}
+
+	private static void collectClasses(final ClassMapping<?, ?> mapping, final List<ClassMapping<?, ?>> classes) {
+		classes.add(mapping);
+
+		for (final ClassMapping<?, ?> inner : mapping.getInnerClassMappings()) {
+			collectClasses(inner, classes);
+		}
+	}
+
+	/**
+	 * Gets the number of class mappings, including inner classes.
+	 *
+	 * @return The number of class mappings
+	 */
+	public int getClassCount() {
+		return this.classNames.length;
+	}
+
+	/**
+	 * Gets the number of field mappings.
+	 *
+	 * @return The number of field mappings
+	 */
+	public int getFieldCount() {
+		return this.fieldNames.length;
+	}
+
+	/**
+	 * Gets the number of method mappings.
+	 *
+	 * @return The number of method mappings
+	 */
+	public int getMethodCount() {
+		return this.methodNames.length;
+	}
+
+	/**
+	 * Establishes whether there is a mapping for the given class.
+	 *
+	 * @param obfuscatedName The fully-qualified obfuscated name of the class
+	 * @return {@code true} if the class is mapped
+	 * @see MappingSet#getClassMapping(String)
+	 */
+	public boolean hasClassMapping(final String obfuscatedName) {
+		return this.classId(obfuscatedName) != NONE;
+	}
+
+	/**
+	 * Gets the fully-qualified de-obfuscated name of the given class.
+	 *
+	 * @param obfuscatedName The fully-qualified obfuscated name of the class
+	 * @return The de-obfuscated name, or {@code null} if there is no
+	 *         mapping for the class
+	 * @see MappingSet#getClassMapping(String)
+	 */
+	public String getDeobfuscatedName(final String obfuscatedName) {
+		final int id = this.classId(obfuscatedName);
+		return id != NONE ? this.classFullDeobfNames[id] : null;
+	}
+
+	/**
+	 * Gets the fully-qualified de-obfuscated name of the given class,
+	 * falling back to the mappings of its outer classes in the same way
+	 * as {@link MappingSet#computeClassMapping(String)}.
+	 *
+	 * @param obfuscatedName The fully-qualified obfuscated name of the class
+	 * @return The de-obfuscated name, or {@code null} if neither the
+	 *         class nor any of its outer classes are mapped
+	 */
+	public String computeDeobfuscatedName(final String obfuscatedName) {
+		final int id = this.classId(obfuscatedName);
+		if (id != NONE) return this.classFullDeobfNames[id];
+
+		final int split = obfuscatedName.lastIndexOf('$');
+		if (split == -1) return null;
+
+		final String outer = this.computeDeobfuscatedName(obfuscatedName.substring(0, split));
+		return outer != null ? outer + obfuscatedName.substring(split) : null;
+	}
+
+	/**
+	 * Gets the de-obfuscated name of the given field. Fields mapped without
+	 * a type match any descriptor, and a field looked up without a
+	 * descriptor matches the first field of that name.
+	 *
+	 * @param owner The fully-qualified obfuscated name of the owning class
+	 * @param name The obfuscated name of the field
+	 * @param desc The obfuscated descriptor of the field, may be {@code null}
+	 * @return The de-obfuscated name, or {@code null} if there is no
+	 *         mapping for the field
+	 */
+	public String getFieldName(final String owner, final String name, final String desc) {
+		final int id = this.classId(owner);
+		if (id == NONE) return null;
+
+		final int start = this.fieldStarts[id];
+		final int end = this.fieldStarts[id + 1];
+
+		// Fields without a type sort first, so this finds the first of that name
+		int field = search(this.fieldNames, this.fieldDescs, start, end, name, desc);
+		if (field < 0 && desc != null) {
+			field = search(this.fieldNames, this.fieldDescs, start, end, name, null);
+		}
+		if (field < 0 && desc == null) {
+			final int first = -field - 1;
+			field = first < end && this.fieldNames[first].equals(name) ? first : NONE;
+		}
+
+		return field >= 0 ? deobfName(this.fieldDeobfNames[field], this.fieldNames[field]) : null;
+	}
+
+	/**
+	 * Gets the de-obfuscated name of the given method.
+	 *
+	 * @param owner The fully-qualified obfuscated name of the owning class
+	 * @param name The obfuscated name of the method
+	 * @param desc The obfuscated descriptor of the method
+	 * @return The de-obfuscated name, or {@code null} if there is no
+	 *         mapping for the method
+	 */
+	public String getMethodName(final String owner, final String name, final String desc) {
+		final int method = this.methodId(owner, name, desc);
+		return method != NONE ? deobfName(this.methodDeobfNames[method], this.methodNames[method]) : null;
+	}
+
+	/**
+	 * Gets the de-obfuscated name of the given method parameter.
+	 *
+	 * @param owner The fully-qualified obfuscated name of the owning class
+	 * @param name The obfuscated name of the method
+	 * @param desc The obfuscated descriptor of the method
+	 * @param index The index of the parameter
+	 * @return The de-obfuscated name, or {@code null} if there is no
+	 *         mapping for the parameter
+	 */
+	public String getParameterName(final String owner, final String name, final String desc, final int index) {
+		final int method = this.methodId(owner, name, desc);
+		if (method == NONE) return null;
+
+		final int param = Arrays.binarySearch(this.paramIndices, this.paramStarts[method], this.paramStarts[method + 1], index);
+		return param >= 0 ? deobfName(this.paramDeobfNames[param], String.valueOf(index)) : null;
+	}
+
+	/**
+	 * De-obfuscates the class names within the given descriptor.
+	 *
+	 * @param desc The obfuscated field or method descriptor
+	 * @return The de-obfuscated descriptor
+	 * @see MappingSet#deobfuscate(MethodDescriptor)
+	 */
+	public String deobfuscateDescriptor(final String desc) {
+		return Descriptors.remap(desc, this::computeDeobfuscatedName);
+	}
+
+	/**
+	 * De-obfuscates the given field type.
+	 *
+	 * @param type The obfuscated type
+	 * @return The de-obfuscated type
+	 * @see MappingSet#deobfuscate(FieldType)
+	 */
+	public FieldType deobfuscate(final FieldType type) {
+		final String desc = type.toString();
+		final String deobf = this.deobfuscateDescriptor(desc);
+		return deobf.equals(desc) ? type : FieldType.of(deobf);
+	}
+
+	/**
+	 * De-obfuscates the given method descriptor.
+	 *
+	 * @param descriptor The obfuscated descriptor
+	 * @return The de-obfuscated descriptor
+	 * @see MappingSet#deobfuscate(MethodDescriptor)
+	 */
+	public MethodDescriptor deobfuscate(final MethodDescriptor descriptor) {
+		final String desc = descriptor.toString();
+		final String deobf = this.deobfuscateDescriptor(desc);
+		return deobf.equals(desc) ? descriptor : MethodDescriptor.of(deobf);
+	}
+
+	/**
+	 * Creates a new, mutable mapping set holding the same mappings as
+	 * the snapshot.
+	 *
+	 * @return The mapping set
+	 */
+	public MappingSet toMappingSet() {
+		return this.toMappingSet(MappingSet.create());
+	}
+
+	/**
+	 * Adds the mappings of the snapshot to the given mapping set.
+	 *
+	 * @param mappings The mapping set to add the mappings to
+	 * @return The given mapping set
+	 */
+	public MappingSet toMappingSet(final MappingSet mappings) {
+		// Outer classes sort ahead of their inner classes, so are always created first
+		for (int i = 0; i < this.classNames.length; i++) {
+			final ClassMapping<?, ?> klass = mappings.getOrCreateClassMapping(this.classNames[i]);
+			if (this.classDeobfNames[i] != null) klass.setDeobfuscatedName(this.classDeobfNames[i]);
+
+			for (int field = this.fieldStarts[i]; field < this.fieldStarts[i + 1]; field++) {
+				final FieldMapping mapping = this.fieldDescs[field] != null ?
+						klass.getOrCreateFieldMapping(this.fieldNames[field], this.fieldDescs[field]) :
+						klass.getOrCreateFieldMapping(this.fieldNames[field]);
+				if (this.fieldDeobfNames[field] != null) mapping.setDeobfuscatedName(this.fieldDeobfNames[field]);
+			}
+
+			for (int method = this.methodStarts[i]; method < this.methodStarts[i + 1]; method++) {
+				final MethodMapping mapping = klass.getOrCreateMethodMapping(this.methodNames[method], this.methodDescs[method]);
+				if (this.methodDeobfNames[method] != null) mapping.setDeobfuscatedName(this.methodDeobfNames[method]);
+
+				for (int param = this.paramStarts[method]; param < this.paramStarts[method + 1]; param++) {
+					final MethodParameterMapping paramMapping = mapping.getOrCreateParameterMapping(this.paramIndices[param]);
+					if (this.paramDeobfNames[param] != null) paramMapping.setDeobfuscatedName(this.paramDeobfNames[param]);
+				}
+			}
+		}
+		return mappings;
+	}
+
+	private int classId(final String name) {
+		final int mask = this.classIndex.length - 1;
+
+		for (int slot = mix(name.hashCode()) & mask; this.classIndex[slot] != NONE; slot = (slot + 1) & mask) {
+			final int id = this.classIndex[slot];
+			if (this.classNames[id].equals(name)) return id;
+		}
+		return NONE;
+	}
+
+	private int methodId(final String owner, final String name, final String desc) {
+		final int id = this.classId(owner);
+		if (id == NONE) return NONE;
+
+		final int method = search(this.methodNames, this.methodDescs, this.methodStarts[id], this.methodStarts[id + 1], name, desc);
+		return method >= 0 ? method : NONE;
+	}
+
+	/**
+	 * Binary searches a range of members sorted by name and descriptor.
+	 *
+	 * @return The index of the member, or {@code -(insertion point) - 1}
+	 */
+	private static int search(final String[] names, final String[] descs, final int start, final int end,
+	                          final String name, final String desc) {
+		int low = start;
+		int high = end - 1;
+
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+
+			int cmp = names[mid].compareTo(name);
+			if (cmp == 0) cmp = NULLS_FIRST.compare(descs[mid], desc);
+
+			if (cmp < 0) low = mid + 1;
+			else if (cmp > 0) high = mid - 1;
+			else return mid;
+		}
+		return -(low + 1);
+	}
+
+	private static String deobfName(final String deobfName, final String obfName) {
+		return deobfName != null ? deobfName : obfName;
+	}
+
+	private static String desc(final FieldMapping mapping) {
+		return mapping.getType().map(Object::toString).orElse(null);
+	}
+
+	private static String share(final Map<String, String> strings, final String string) {
+		if (string == null) return null;
+
+		final String shared = strings.putIfAbsent(string, string);
+		return shared != null ? shared : string;
+	}
+
+	private static int mix(final int hash) {
+		final int h = hash * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+}
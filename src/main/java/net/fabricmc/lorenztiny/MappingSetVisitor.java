@@ -0,0 +1,296 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import net.fabricmc.mappingio.MappedElementKind;
+import net.fabricmc.mappingio.MappingVisitor;
+import org.cadixdev.bombe.type.signature.MethodSignature;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+import org.cadixdev.lorenz.model.MethodParameterMapping;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link MappingVisitor mapping visitor} that writes mappings straight
+ * into a {@link MappingSet mapping set} as they are visited, without
+ * building an intermediate mapping tree.
+ * <p>
+ * The resulting {@link MappingSet mapping set} will have mappings
+ * using the from namespace (as the obfuscated names in Lorenz) to
+ * the to namespace (as the de-obfuscated names in Lorenz).
+ * <p>
+ * Descriptors are only ever visited in the source namespace. When the
+ * from namespace is not the source namespace, the class names of the
+ * from namespace must be supplied up front so that member descriptors
+ * can be remapped as they are visited.
+ * <p>
+ * Every mapping written is counted to the {@link TinyMappingFormat#getMetrics()
+ * metrics} of the formats, and member descriptors are parsed through the
+ * {@link TinyMappingFormat#getStringPool() pool} of the formats, if any.
+ *
+ * @see TinyMappingFormat#readStreaming(MappingSet, java.nio.file.Path, String, String)
+ * @since 4.1.0
+ */
+public class MappingSetVisitor implements MappingVisitor {
+
+	private static final int SOURCE = -1;
+
+	private final MappingSet mappings;
+	private final String from;
+	private final String to;
+	private final Map<String, String> classNames;
+	private final Map<String, String> descriptors;
+	private final TinyMetrics metrics = TinyMappingFormat.getMetrics();
+	private final TinyStringPool types = TinyMappingFormat.getStringPool();
+
+	private int fromIndex;
+	private int toIndex;
+
+	// The element whose names are currently being visited
+	private MappedElementKind pending;
+	private String srcName;
+	private String srcDesc;
+	private String fromName;
+	private String toName;
+	private int argPosition;
+
+	private ClassMapping<?, ?> currentClass;
+	private MethodMapping currentMethod;
+
+	/**
+	 * Creates a new mapping visitor, populating the given mapping set.
+	 *
+	 * @param mappings The mapping set to populate
+	 * @param from The namespace to use as Lorenz's obfuscated names,
+	 *             this must be the source namespace of the visited mappings
+	 * @param to   The namespace to use as Lorenz's de-obfuscated names
+	 */
+	public MappingSetVisitor(final MappingSet mappings, final String from, final String to) {
+		this(mappings, from, to, null);
+	}
+
+	/**
+	 * Creates a new mapping visitor, populating the given mapping set.
+	 *
+	 * @param mappings The mapping set to populate
+	 * @param from The namespace to use as Lorenz's obfuscated names
+	 * @param to   The namespace to use as Lorenz's de-obfuscated names
+	 * @param classNames The class names from the source namespace to the
+	 *                   from namespace, or {@code null} if the from
+	 *                   namespace is the source namespace
+	 */
+	public MappingSetVisitor(final MappingSet mappings, final String from, final String to,
+	                         final Map<String, String> classNames) {
+		this(mappings, from, to, classNames, new HashMap<>());
+	}
+
+	/**
+	 * Creates a new mapping visitor, populating the given mapping set
+	 * and sharing remapped descriptors through the given map.
+	 * <p>
+	 * Visitors using the same from namespace may share a descriptor map,
+	 * so that each remapped descriptor is only created once.
+	 */
+	MappingSetVisitor(final MappingSet mappings, final String from, final String to,
+	                  final Map<String, String> classNames, final Map<String, String> descriptors) {
+		this.mappings = mappings;
+		this.from = from;
+		this.to = to;
+		this.classNames = classNames;
+		this.descriptors = descriptors;
+	}
+
+	/**
+	 * Gets the mapping set being populated.
+	 *
+	 * @return The mapping set
+	 */
+	public MappingSet getMappings() {
+		return this.mappings;
+	}
+
+	@Override
+	public void visitNamespaces(final String srcNamespace, final List<String> dstNamespaces) {
+		this.fromIndex = indexOf(srcNamespace, dstNamespaces, this.from);
+		this.toIndex = indexOf(srcNamespace, dstNamespaces, this.to);
+
+		if (this.fromIndex != SOURCE && this.classNames == null) {
+			throw new IllegalStateException(String.format("Class names for namespace \"%s\" are required, as it is not the source namespace", this.from));
+		}
+	}
+
+	@Override
+	public boolean visitClass(final String srcName) {
+		this.flush();
+		this.currentMethod = null;
+		this.begin(MappedElementKind.CLASS, srcName);
+		return true;
+	}
+
+	@Override
+	public boolean visitField(final String srcName, final String srcDesc) {
+		this.flush();
+		if (this.currentClass == null) return false;
+
+		this.begin(MappedElementKind.FIELD, srcName);
+		this.srcDesc = srcDesc;
+		return true;
+	}
+
+	@Override
+	public boolean visitMethod(final String srcName, final String srcDesc) {
+		this.flush();
+		if (this.currentClass == null) return false;
+
+		this.begin(MappedElementKind.METHOD, srcName);
+		this.srcDesc = srcDesc;
+		return true;
+	}
+
+	@Override
+	public boolean visitMethodArg(final int argPosition, final int lvIndex, final String srcName) {
+		this.flush();
+		if (this.currentMethod == null) return false;
+
+		this.begin(MappedElementKind.METHOD_ARG, srcName);
+		this.argPosition = argPosition;
+		return true;
+	}
+
+	@Override
+	public boolean visitMethodVar(final int lvtRowIndex, final int lvIndex, final int startOpIdx, final String srcName) {
+		this.flush();
+		return false;
+	}
+
+	@Override
+	public void visitDstName(final MappedElementKind targetKind, final int namespace, final String name) {
+		if (namespace == this.fromIndex) this.fromName = name;
+		if (namespace == this.toIndex) this.toName = name;
+	}
+
+	@Override
+	public boolean visitElementContent(final MappedElementKind targetKind) {
+		this.flush();
+		return true;
+	}
+
+	@Override
+	public void visitComment(final MappedElementKind targetKind, final String comment) {
+	}
+
+	@Override
+	public boolean visitEnd() {
+		this.flush();
+		this.currentClass = null;
+		this.currentMethod = null;
+		return true;
+	}
+
+	private void begin(final MappedElementKind kind, final String srcName) {
+		this.pending = kind;
+		this.srcName = srcName;
+		this.srcDesc = null;
+		this.fromName = this.fromIndex == SOURCE ? srcName : null;
+		this.toName = this.toIndex == SOURCE ? srcName : null;
+	}
+
+	private void flush() {
+		if (this.pending == null) return;
+
+		switch (this.pending) {
+			case CLASS: {
+				String obfName = this.fromName;
+				if (obfName == null) obfName = this.classNames.getOrDefault(this.srcName, this.srcName);
+
+				this.currentClass = this.mappings.getOrCreateClassMapping(obfName);
+				if (this.toName != null) this.currentClass.setDeobfuscatedName(this.toName);
+				if (this.metrics.isEnabled()) this.metrics.count(TinyMetrics.Element.CLASS, 1);
+				break;
+			}
+			case FIELD: {
+				final String obfName = this.fromName != null ? this.fromName : this.srcName;
+				final String obfDesc = this.fromDesc();
+
+				final FieldMapping field;
+				if (obfDesc == null) {
+					field = this.currentClass.getOrCreateFieldMapping(obfName);
+				}
+				else if (this.types != null) {
+					field = this.currentClass.getOrCreateFieldMapping(obfName, this.types.internFieldType(obfDesc));
+				}
+				else {
+					field = this.currentClass.getOrCreateFieldMapping(obfName, obfDesc);
+				}
+				if (this.toName != null) field.setDeobfuscatedName(this.toName);
+				if (this.metrics.isEnabled()) this.metrics.count(TinyMetrics.Element.FIELD, 1);
+				break;
+			}
+			case METHOD: {
+				final String obfName = this.fromName != null ? this.fromName : this.srcName;
+
+				final String obfDesc = this.fromDesc();
+
+				this.currentMethod = this.types != null && obfDesc != null ?
+						this.currentClass.getOrCreateMethodMapping(new MethodSignature(obfName, this.types.internMethodDescriptor(obfDesc))) :
+						this.currentClass.getOrCreateMethodMapping(obfName, obfDesc);
+				if (this.toName != null) this.currentMethod.setDeobfuscatedName(this.toName);
+				if (this.metrics.isEnabled()) this.metrics.count(TinyMetrics.Element.METHOD, 1);
+				break;
+			}
+			case METHOD_ARG: {
+				final MethodParameterMapping param = this.currentMethod.getOrCreateParameterMapping(this.argPosition);
+				if (this.toName != null) param.setDeobfuscatedName(this.toName);
+				if (this.metrics.isEnabled()) this.metrics.count(TinyMetrics.Element.PARAMETER, 1);
+				break;
+			}
+			default:
+				break;
+		}
+
+		this.pending = null;
+	}
+
+	private String fromDesc() {
+		if (this.fromIndex == SOURCE || this.srcDesc == null) return this.srcDesc;
+		return this.descriptors.computeIfAbsent(this.srcDesc, desc -> Descriptors.remap(desc, this.classNames));
+	}
+
+	private static int indexOf(final String srcNamespace, final List<String> dstNamespaces, final String namespace) {
+		if (srcNamespace.equals(namespace)) return SOURCE;
+
+		final int index = dstNamespaces.indexOf(namespace);
+		if (index == -1) {
+			throw new IllegalArgumentException(String.format("Could not find namespace \"%s\" in provided mappings", namespace));
+		}
+		return index;
+	}
+
+}
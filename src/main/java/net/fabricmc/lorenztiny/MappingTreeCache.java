@@ -0,0 +1,275 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import net.fabricmc.mappingio.tree.MappingTree;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe, least-recently-used cache of loaded {@link MappingTree mapping trees}.
+ * <p>
+ * Trees are keyed by the file's path, modification time and size, so an
+ * edited file is always loaded again. The cache is bounded either by the
+ * number of trees, or by the total size of their source files. Concurrent
+ * requests for the same file share a single load.
+ * <p>
+ * Cached trees are shared between all callers, and must not be modified.
+ *
+ * @see TinyMappingFormat#read(org.cadixdev.lorenz.MappingSet, Path, String, String, MappingTreeCache)
+ * @since 4.1.0
+ */
+public final class MappingTreeCache {
+
+	private final long budget;
+	private final boolean weighBySize;
+
+	private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long weight;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	private MappingTreeCache(final long budget, final boolean weighBySize) {
+		if (budget <= 0) {
+			throw new IllegalArgumentException("Cache budget must be positive: " + budget);
+		}
+
+		this.budget = budget;
+		this.weighBySize = weighBySize;
+	}
+
+	/**
+	 * Creates a cache holding at most the given number of trees.
+	 *
+	 * @param maxEntries The maximum number of trees
+	 * @return The cache
+	 */
+	public static MappingTreeCache withMaxEntries(final int maxEntries) {
+		return new MappingTreeCache(maxEntries, false);
+	}
+
+	/**
+	 * Creates a cache holding trees whose source files total at most the
+	 * given number of bytes. The most recently used tree is always kept,
+	 * even if it is larger than the budget.
+	 *
+	 * @param maxBytes The maximum total size of the source files
+	 * @return The cache
+	 */
+	public static MappingTreeCache withMaxBytes(final long maxBytes) {
+		return new MappingTreeCache(maxBytes, true);
+	}
+
+	/**
+	 * Gets the tree for the mappings at the given path, loading it if
+	 * it isn't cached or the file has changed.
+	 *
+	 * @param format The format to load the mappings with
+	 * @param path The path to the mappings
+	 * @return The mapping tree
+	 * @throws IOException if an I/O error occurs reading the file
+	 */
+	public MappingTree get(final TinyMappingFormat format, final Path path) throws IOException {
+		final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		final Key key = new Key(format, path.toAbsolutePath().normalize(),
+				attributes.lastModifiedTime().toMillis(), attributes.size());
+
+		final Entry entry;
+		final boolean load;
+		synchronized (this) {
+			final Entry existing = this.entries.get(key);
+
+			if (existing != null) {
+				this.hits.incrementAndGet();
+				entry = existing;
+				load = false;
+			}
+			else {
+				this.misses.incrementAndGet();
+				entry = new Entry(this.weighBySize ? key.size : 1);
+				this.removeStale(key);
+				this.entries.put(key, entry);
+				this.weight += entry.weight;
+				this.evict();
+				load = true;
+			}
+		}
+
+		if (load) {
+			try (final BufferedReader reader = TinyMappingFormat.open(path)) {
+				entry.tree.complete(format.load(reader));
+			}
+			catch (final Throwable ex) {
+				// Anything left uncompleted would block every other caller waiting on the entry
+				entry.tree.completeExceptionally(ex);
+				synchronized (this) {
+					if (this.entries.remove(key, entry)) this.weight -= entry.weight;
+				}
+				if (ex instanceof UncheckedIOException) throw ((UncheckedIOException) ex).getCause();
+				throw ex;
+			}
+		}
+
+		try {
+			return entry.tree.join();
+		}
+		catch (final CompletionException ex) {
+			if (ex.getCause() instanceof IOException) throw (IOException) ex.getCause();
+			if (ex.getCause() instanceof UncheckedIOException) throw ((UncheckedIOException) ex.getCause()).getCause();
+			if (ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+			if (ex.getCause() instanceof Error) throw (Error) ex.getCause();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Removes every tree from the cache.
+	 */
+	public synchronized void invalidateAll() {
+		this.entries.clear();
+		this.weight = 0;
+	}
+
+	/**
+	 * Gets the number of trees currently cached.
+	 *
+	 * @return The number of trees
+	 */
+	public synchronized int size() {
+		return this.entries.size();
+	}
+
+	/**
+	 * Gets the number of requests served from the cache.
+	 *
+	 * @return The number of hits
+	 */
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	/**
+	 * Gets the number of requests that had to load the file.
+	 *
+	 * @return The number of misses
+	 */
+	public long getMisses() {
+		return this.misses.get();
+	}
+
+	/**
+	 * Gets the number of trees evicted to stay within the budget.
+	 *
+	 * @return The number of evictions
+	 */
+	public long getEvictions() {
+		return this.evictions.get();
+	}
+
+	// Older versions of the same file can never be hit again
+	private void removeStale(final Key key) {
+		final Iterator<Map.Entry<Key, Entry>> it = this.entries.entrySet().iterator();
+		while (it.hasNext()) {
+			final Map.Entry<Key, Entry> existing = it.next();
+
+			if (existing.getKey().format == key.format && existing.getKey().path.equals(key.path)) {
+				this.weight -= existing.getValue().weight;
+				it.remove();
+			}
+		}
+	}
+
+	private void evict() {
+		final Iterator<Entry> it = this.entries.values().iterator();
+		while (this.weight > this.budget && this.entries.size() > 1) {
+			final Entry eldest = it.next();
+			this.weight -= eldest.weight;
+			it.remove();
+			this.evictions.incrementAndGet();
+		}
+	}
+
+	private static final class Key {
+
+		private final TinyMappingFormat format;
+		private final Path path;
+		private final long modified;
+		private final long size;
+
+		Key(final TinyMappingFormat format, final Path path, final long modified, final long size) {
+			this.format = format;
+			this.path = path;
+			this.modified = modified;
+			this.size = size;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof Key)) return false;
+
+			final Key that = (Key) obj;
+			return this.format == that.format &&
+					this.modified == that.modified &&
+					this.size == that.size &&
+					this.path.equals(that.path);
+		}
+
+		@Override
+		public int hashCode() {
+			int result = this.format.hashCode();
+			result = 31 * result + this.path.hashCode();
+			result = 31 * result + Long.hashCode(this.modified);
+			result = 31 * result + Long.hashCode(this.size);
+			return result;
+		}
+
+	}
+
+	private static final class Entry {
+
+		private final CompletableFuture<MappingTree> tree = new CompletableFuture<>();
+		private final long weight;
+
+		Entry(final long weight) {
+			this.weight = weight;
+		}
+
+	}
+
+}
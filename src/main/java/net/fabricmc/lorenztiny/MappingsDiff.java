@@ -0,0 +1,522 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import net.fabricmc.mappingio.tree.MappingTree;
+import org.cadixdev.bombe.type.signature.FieldSignature;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.Mapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+import org.cadixdev.lorenz.model.MethodParameterMapping;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The differences in de-obfuscated names between two versions of some
+ * mappings, which can be applied in place to a {@link MappingSet mapping set}.
+ * <p>
+ * Elements are matched by their obfuscated names (and descriptors), so a
+ * change is only ever an element being added, removed, or renamed. Elements
+ * whose de-obfuscated name is the same as their obfuscated name are treated
+ * as being absent.
+ * <p>
+ * Working out a diff visits every element on both sides, however applying
+ * one only touches the mappings that changed. As Lorenz has no way of
+ * removing a mapping, removed elements are instead reset to their
+ * obfuscated names.
+ *
+ * @see TinyMappingFormat#update(MappingSet, java.nio.file.Path, String, String)
+ * @since 4.1.0
+ */
+public final class MappingsDiff {
+
+	private final List<Change> changes;
+
+	private MappingsDiff(final List<Change> changes) {
+		this.changes = Collections.unmodifiableList(changes);
+	}
+
+	/**
+	 * Computes the differences between two mapping trees.
+	 *
+	 * @param oldTree The old mappings
+	 * @param newTree The new mappings
+	 * @param from The namespace to use as Lorenz's obfuscated names
+	 * @param to   The namespace to use as Lorenz's de-obfuscated names
+	 * @return The differences
+	 */
+	public static MappingsDiff between(final MappingTree oldTree, final MappingTree newTree,
+	                                   final String from, final String to) {
+		return between(names(oldTree, from, to), names(newTree, from, to));
+	}
+
+	/**
+	 * Computes the differences between a mapping set, and a mapping tree
+	 * holding newer mappings.
+	 * <p>
+	 * The mapping set is probed for each element of the tree as it is walked,
+	 * and then swept for the elements the tree no longer has, so the names of
+	 * the mapping set are never copied.
+	 *
+	 * @param mappings The old mappings
+	 * @param newTree The new mappings
+	 * @param from The namespace to use as Lorenz's obfuscated names
+	 * @param to   The namespace to use as Lorenz's de-obfuscated names
+	 * @return The differences
+	 */
+	public static MappingsDiff between(final MappingSet mappings, final MappingTree newTree,
+	                                   final String from, final String to) {
+		final List<Change> changes = new ArrayList<>();
+		final Set<Mapping<?, ?>> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		for (final MappingTree.ClassMapping klass : newTree.getClasses()) {
+			final String owner = klass.getName(from);
+			if (owner == null) continue;
+
+			final ClassMapping<?, ?> classMapping = mappings.getClassMapping(owner).orElse(null);
+			compare(changes, seen, new Key(ElementKind.CLASS, null, owner, null, -1), owner, klass.getName(to), classMapping);
+
+			for (final MappingTree.FieldMapping field : klass.getFields()) {
+				final String name = field.getName(from);
+				if (name == null) continue;
+
+				final String desc = field.getDesc(from);
+				final FieldMapping fieldMapping = classMapping == null ? null : (desc != null ?
+						classMapping.getFieldMapping(FieldSignature.of(name, desc)) :
+						classMapping.getFieldMapping(name)).orElse(null);
+				compare(changes, seen, new Key(ElementKind.FIELD, owner, name, desc, -1), name, field.getName(to), fieldMapping);
+			}
+
+			for (final MappingTree.MethodMapping method : klass.getMethods()) {
+				final String name = method.getName(from);
+				if (name == null) continue;
+
+				final String desc = method.getDesc(from);
+				final MethodMapping methodMapping = classMapping != null ?
+						classMapping.getMethodMapping(name, desc).orElse(null) :
+						null;
+				compare(changes, seen, new Key(ElementKind.METHOD, owner, name, desc, -1), name, method.getName(to), methodMapping);
+
+				for (final MappingTree.MethodArgMapping param : method.getArgs()) {
+					final int index = param.getArgPosition();
+					final MethodParameterMapping paramMapping = methodMapping != null ?
+							methodMapping.getParameterMapping(index).orElse(null) :
+							null;
+					compare(changes, seen, new Key(ElementKind.PARAMETER, owner, name, desc, index),
+							String.valueOf(index), param.getName(to), paramMapping);
+				}
+			}
+		}
+
+		for (final ClassMapping<?, ?> klass : mappings.getTopLevelClassMappings()) {
+			sweep(klass, seen, changes);
+		}
+
+		return new MappingsDiff(changes);
+	}
+
+	private static void compare(final List<Change> changes, final Set<Mapping<?, ?>> seen, final Key key,
+	                            final String obfName, final String newName, final Mapping<?, ?> mapping) {
+		if (key.name == null) return;
+		if (mapping != null) seen.add(mapping);
+
+		final String oldName = mapping != null ? deobfName(mapping) : null;
+		final String name = newName == null || newName.equals(obfName) ? null : newName;
+
+		if (oldName == null ? name != null : !oldName.equals(name)) {
+			changes.add(new Change(key, oldName, name));
+		}
+	}
+
+	/**
+	 * Reports every named element of the mapping set that was not seen in
+	 * the tree as removed.
+	 */
+	private static void sweep(final ClassMapping<?, ?> klass, final Set<Mapping<?, ?>> seen, final List<Change> changes) {
+		final String owner = klass.getFullObfuscatedName();
+		final String className = seen.contains(klass) ? null : deobfName(klass);
+		if (className != null) {
+			changes.add(new Change(new Key(ElementKind.CLASS, null, owner, null, -1), className, null));
+		}
+
+		for (final FieldMapping field : klass.getFieldMappings()) {
+			if (seen.contains(field) || !field.hasDeobfuscatedName()) continue;
+
+			final String desc = field.getType().map(Object::toString).orElse(null);
+			changes.add(new Change(new Key(ElementKind.FIELD, owner, field.getObfuscatedName(), desc, -1),
+					field.getDeobfuscatedName(), null));
+		}
+
+		for (final MethodMapping method : klass.getMethodMappings()) {
+			final String desc = method.getObfuscatedDescriptor();
+			if (!seen.contains(method) && method.hasDeobfuscatedName()) {
+				changes.add(new Change(new Key(ElementKind.METHOD, owner, method.getObfuscatedName(), desc, -1),
+						method.getDeobfuscatedName(), null));
+			}
+
+			for (final MethodParameterMapping param : method.getParameterMappings()) {
+				if (seen.contains(param) || !param.hasDeobfuscatedName()) continue;
+
+				changes.add(new Change(new Key(ElementKind.PARAMETER, owner, method.getObfuscatedName(), desc, param.getIndex()),
+						param.getDeobfuscatedName(), null));
+			}
+		}
+
+		for (final ClassMapping<?, ?> inner : klass.getInnerClassMappings()) {
+			sweep(inner, seen, changes);
+		}
+	}
+
+	/**
+	 * Gets the de-obfuscated name of a mapping, as it would be named in a
+	 * diff, or {@code null} if it has none.
+	 */
+	private static String deobfName(final Mapping<?, ?> mapping) {
+		if (mapping instanceof ClassMapping) {
+			// Inner classes only keep their simple name, so one renamed through its outer class has none of its own
+			final String fullName = mapping.getFullDeobfuscatedName();
+			return fullName.equals(mapping.getFullObfuscatedName()) ? null : fullName;
+		}
+		return mapping.hasDeobfuscatedName() ? mapping.getDeobfuscatedName() : null;
+	}
+
+	private static MappingsDiff between(final Map<Key, String> oldNames, final Map<Key, String> newNames) {
+		final List<Change> changes = new ArrayList<>();
+
+		for (final Map.Entry<Key, String> entry : oldNames.entrySet()) {
+			final String newName = newNames.get(entry.getKey());
+
+			if (newName == null) {
+				changes.add(new Change(entry.getKey(), entry.getValue(), null));
+			}
+			else if (!newName.equals(entry.getValue())) {
+				changes.add(new Change(entry.getKey(), entry.getValue(), newName));
+			}
+		}
+
+		for (final Map.Entry<Key, String> entry : newNames.entrySet()) {
+			if (!oldNames.containsKey(entry.getKey())) {
+				changes.add(new Change(entry.getKey(), null, entry.getValue()));
+			}
+		}
+
+		return new MappingsDiff(changes);
+	}
+
+	/**
+	 * Gets the changes, in no particular order.
+	 *
+	 * @return The changes
+	 */
+	public List<Change> getChanges() {
+		return this.changes;
+	}
+
+	/**
+	 * Gets whether there are no changes.
+	 *
+	 * @return {@code true} if nothing changed
+	 */
+	public boolean isEmpty() {
+		return this.changes.isEmpty();
+	}
+
+	/**
+	 * Applies the changes in place to the given mapping set.
+	 * <p>
+	 * The mapping set must not be read from other threads while the
+	 * changes are being applied.
+	 *
+	 * @param mappings The mapping set to update
+	 * @return The given mapping set
+	 */
+	public MappingSet apply(final MappingSet mappings) {
+		for (final Change change : this.changes) {
+			if (change.getType() == ChangeType.REMOVED) {
+				find(mappings, change.key).ifPresent(mapping -> mapping.setDeobfuscatedName(mapping.getObfuscatedName()));
+			}
+			else {
+				getOrCreate(mappings, change.key).setDeobfuscatedName(change.newName);
+			}
+		}
+		return mappings;
+	}
+
+	private static Optional<? extends Mapping<?, ?>> find(final MappingSet mappings, final Key key) {
+		switch (key.kind) {
+			case CLASS:
+				return mappings.getClassMapping(key.name);
+			case FIELD:
+				return mappings.getClassMapping(key.owner).flatMap(klass -> key.desc != null ?
+						klass.getFieldMapping(FieldSignature.of(key.name, key.desc)) :
+						klass.getFieldMapping(key.name));
+			case METHOD:
+				return mappings.getClassMapping(key.owner).flatMap(klass -> klass.getMethodMapping(key.name, key.desc));
+			case PARAMETER:
+				return mappings.getClassMapping(key.owner)
+						.flatMap(klass -> klass.getMethodMapping(key.name, key.desc))
+						.flatMap(method -> method.getParameterMapping(key.index));
+			default:
+				throw new IllegalStateException("Unknown element kind: " + key.kind);
+		}
+	}
+
+	private static Mapping<?, ?> getOrCreate(final MappingSet mappings, final Key key) {
+		switch (key.kind) {
+			case CLASS:
+				return mappings.getOrCreateClassMapping(key.name);
+			case FIELD: {
+				final ClassMapping<?, ?> klass = mappings.getOrCreateClassMapping(key.owner);
+				return key.desc != null ?
+						klass.getOrCreateFieldMapping(key.name, key.desc) :
+						klass.getOrCreateFieldMapping(key.name);
+			}
+			case METHOD:
+				return mappings.getOrCreateClassMapping(key.owner).getOrCreateMethodMapping(key.name, key.desc);
+			case PARAMETER:
+				return mappings.getOrCreateClassMapping(key.owner).getOrCreateMethodMapping(key.name, key.desc)
+						.getOrCreateParameterMapping(key.index);
+			default:
+				throw new IllegalStateException("Unknown element kind: " + key.kind);
+		}
+	}
+
+	private static Map<Key, String> names(final MappingTree tree, final String from, final String to) {
+		final Map<Key, String> names = new LinkedHashMap<>();
+
+		for (final MappingTree.ClassMapping klass : tree.getClasses()) {
+			final String owner = klass.getName(from);
+			put(names, new Key(ElementKind.CLASS, null, owner, null, -1), owner, klass.getName(to));
+
+			for (final MappingTree.FieldMapping field : klass.getFields()) {
+				final String name = field.getName(from);
+				put(names, new Key(ElementKind.FIELD, owner, name, field.getDesc(from), -1), name, field.getName(to));
+			}
+
+			for (final MappingTree.MethodMapping method : klass.getMethods()) {
+				final String name = method.getName(from);
+				final String desc = method.getDesc(from);
+				put(names, new Key(ElementKind.METHOD, owner, name, desc, -1), name, method.getName(to));
+
+				for (final MappingTree.MethodArgMapping param : method.getArgs()) {
+					// Lorenz names parameters by their index
+					put(names, new Key(ElementKind.PARAMETER, owner, name, desc, param.getArgPosition()),
+							String.valueOf(param.getArgPosition()), param.getName(to));
+				}
+			}
+		}
+
+		return names;
+	}
+
+	private static void put(final Map<Key, String> names, final Key key, final String obfName, final String deobfName) {
+		if (key.name == null || deobfName == null || deobfName.equals(obfName)) return;
+		names.put(key, deobfName);
+	}
+
+	@Override
+	public String toString() {
+		return "MappingsDiff{changes=" + this.changes + '}';
+	}
+
+	/**
+	 * The kind of element a change applies to.
+	 */
+	public enum ElementKind {
+		CLASS,
+		FIELD,
+		METHOD,
+		PARAMETER,
+	}
+
+	/**
+	 * The type of a change.
+	 */
+	public enum ChangeType {
+		ADDED,
+		REMOVED,
+		RENAMED,
+	}
+
+	/**
+	 * A change to the de-obfuscated name of a single element.
+	 */
+	public static final class Change {
+
+		private final Key key;
+		private final String oldName;
+		private final String newName;
+
+		private Change(final Key key, final String oldName, final String newName) {
+			this.key = key;
+			this.oldName = oldName;
+			this.newName = newName;
+		}
+
+		/**
+		 * Gets the type of the change.
+		 *
+		 * @return The change type
+		 */
+		public ChangeType getType() {
+			if (this.oldName == null) return ChangeType.ADDED;
+			if (this.newName == null) return ChangeType.REMOVED;
+			return ChangeType.RENAMED;
+		}
+
+		/**
+		 * Gets the kind of element changed.
+		 *
+		 * @return The element kind
+		 */
+		public ElementKind getElementKind() {
+			return this.key.kind;
+		}
+
+		/**
+		 * Gets the full obfuscated name of the class owning the changed
+		 * member or parameter.
+		 *
+		 * @return The owner, or {@code null} for classes
+		 */
+		public String getOwner() {
+			return this.key.owner;
+		}
+
+		/**
+		 * Gets the obfuscated name of the changed element. For classes this
+		 * is the full name, and for parameters the name of their method.
+		 *
+		 * @return The obfuscated name
+		 */
+		public String getObfuscatedName() {
+			return this.key.name;
+		}
+
+		/**
+		 * Gets the obfuscated descriptor of the changed member, or of the
+		 * method of the changed parameter.
+		 *
+		 * @return The descriptor, or {@code null} if there is none
+		 */
+		public String getObfuscatedDescriptor() {
+			return this.key.desc;
+		}
+
+		/**
+		 * Gets the index of the changed parameter.
+		 *
+		 * @return The index, or {@code -1} if this is not a parameter
+		 */
+		public int getIndex() {
+			return this.key.index;
+		}
+
+		/**
+		 * Gets the de-obfuscated name before the change.
+		 *
+		 * @return The old name, or {@code null} if the element was added
+		 */
+		public String getOldName() {
+			return this.oldName;
+		}
+
+		/**
+		 * Gets the de-obfuscated name after the change.
+		 *
+		 * @return The new name, or {@code null} if the element was removed
+		 */
+		public String getNewName() {
+			return this.newName;
+		}
+
+		@Override
+		public String toString() {
+			return this.getType() + " " + this.key + ": " + this.oldName + " -> " + this.newName;
+		}
+
+	}
+
+	private static final class Key {
+
+		final ElementKind kind;
+		final String owner;
+		final String name;
+		final String desc;
+		final int index;
+
+		Key(final ElementKind kind, final String owner, final String name, final String desc, final int index) {
+			this.kind = kind;
+			this.owner = owner;
+			this.name = name;
+			this.desc = desc;
+			this.index = index;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof Key)) return false;
+
+			final Key that = (Key) obj;
+			return this.kind == that.kind &&
+					this.index == that.index &&
+					Objects.equals(this.owner, that.owner) &&
+					Objects.equals(this.name, that.name) &&
+					Objects.equals(this.desc, that.desc);
+		}
+
+		@Override
+		public int hashCode() {
+			int result = this.kind.hashCode();
+			result = 31 * result + Objects.hashCode(this.owner);
+			result = 31 * result + Objects.hashCode(this.name);
+			result = 31 * result + Objects.hashCode(this.desc);
+			return 31 * result + this.index;
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder builder = new StringBuilder();
+			if (this.owner != null) builder.append(this.owner).append('.');
+			builder.append(this.name);
+			if (this.desc != null) builder.append(this.kind == ElementKind.FIELD ? ":" : "").append(this.desc);
+			if (this.index != -1) builder.append('#').append(this.index);
+			return builder.toString();
+		}
+
+	}
+
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import java.util.Objects;
+
+/**
+ * A pair of namespaces, to read mappings between.
+ * <p>
+ * The from namespace is used as Lorenz's obfuscated names, and the
+ * to namespace as Lorenz's de-obfuscated names.
+ *
+ * @see TinyMappingFormat#readAll(java.nio.file.Path, java.util.Collection)
+ * @since 4.1.0
+ */
+public final class NamespacePair {
+
+	private final String from;
+	private final String to;
+
+	/**
+	 * Creates a new namespace pair.
+	 *
+	 * @param from The namespace to use as Lorenz's obfuscated names
+	 * @param to   The namespace to use as Lorenz's de-obfuscated names
+	 */
+	public NamespacePair(final String from, final String to) {
+		this.from = Objects.requireNonNull(from, "from");
+		this.to = Objects.requireNonNull(to, "to");
+	}
+
+	/**
+	 * Gets the namespace used as Lorenz's obfuscated names.
+	 *
+	 * @return The from namespace
+	 */
+	public String getFrom() {
+		return this.from;
+	}
+
+	/**
+	 * Gets the namespace used as Lorenz's de-obfuscated names.
+	 *
+	 * @return The to namespace
+	 */
+	public String getTo() {
+		return this.to;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) return true;
+		if (!(obj instanceof NamespacePair)) return false;
+
+		final NamespacePair that = (NamespacePair) obj;
+		return this.from.equals(that.from) && this.to.equals(that.to);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * this.from.hashCode() + this.to.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return this.from + " -> " + this.to;
+	}
+
+}
@@ -0,0 +1,248 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import net.fabricmc.mappingio.MappedElementKind;
+import net.fabricmc.mappingio.MappingVisitor;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link MappingVisitor mapping visitor} that projects the visited mappings
+ * down to two namespaces, before passing them on to another visitor.
+ * <p>
+ * The from namespace becomes the source namespace, and the to namespace
+ * the only destination namespace, so names in any other namespace are
+ * never passed on. When the from namespace is not the source namespace
+ * of the visited mappings, the class names of the from namespace must be
+ * supplied up front, so that member descriptors can be remapped.
+ *
+ * @see TinyMappingFormat#loadProjected(java.nio.file.Path, String, String)
+ * @since 4.1.0
+ */
+public class NamespaceProjectionVisitor implements MappingVisitor {
+
+	private static final int SOURCE = -1;
+
+	private final MappingVisitor next;
+	private final String from;
+	private final String to;
+	private final Map<String, String> classNames;
+
+	private int fromIndex;
+	private int toIndex;
+
+	// The element whose names are currently being visited
+	private MappedElementKind pending;
+	private String srcName;
+	private String srcDesc;
+	private String fromName;
+	private String toName;
+	private int argPosition;
+	private int lvIndex;
+	private int lvtRowIndex;
+	private int startOpIdx;
+
+	/**
+	 * Creates a new projecting visitor.
+	 *
+	 * @param next The visitor to pass the projected mappings to
+	 * @param from The namespace to use as the source namespace
+	 * @param to   The namespace to use as the only destination namespace
+	 * @param classNames The class names from the source namespace to the
+	 *                   from namespace, or {@code null} if the from
+	 *                   namespace is the source namespace
+	 */
+	public NamespaceProjectionVisitor(final MappingVisitor next, final String from, final String to,
+	                                  final Map<String, String> classNames) {
+		this.next = next;
+		this.from = from;
+		this.to = to;
+		this.classNames = classNames;
+	}
+
+	@Override
+	public boolean visitHeader() throws IOException {
+		return this.next.visitHeader();
+	}
+
+	@Override
+	public void visitNamespaces(final String srcNamespace, final List<String> dstNamespaces) throws IOException {
+		this.fromIndex = indexOf(srcNamespace, dstNamespaces, this.from);
+		this.toIndex = indexOf(srcNamespace, dstNamespaces, this.to);
+
+		if (this.fromIndex != SOURCE && this.classNames == null) {
+			throw new IllegalStateException(String.format("Class names for namespace \"%s\" are required, as it is not the source namespace", this.from));
+		}
+
+		this.next.visitNamespaces(this.from, this.from.equals(this.to) ?
+				Collections.emptyList() :
+				Collections.singletonList(this.to));
+	}
+
+	@Override
+	public void visitMetadata(final String key, final String value) throws IOException {
+		this.next.visitMetadata(key, value);
+	}
+
+	@Override
+	public boolean visitContent() throws IOException {
+		return this.next.visitContent();
+	}
+
+	@Override
+	public boolean visitClass(final String srcName) throws IOException {
+		this.begin(MappedElementKind.CLASS, srcName);
+		return true;
+	}
+
+	@Override
+	public boolean visitField(final String srcName, final String srcDesc) throws IOException {
+		this.begin(MappedElementKind.FIELD, srcName);
+		this.srcDesc = srcDesc;
+		return true;
+	}
+
+	@Override
+	public boolean visitMethod(final String srcName, final String srcDesc) throws IOException {
+		this.begin(MappedElementKind.METHOD, srcName);
+		this.srcDesc = srcDesc;
+		return true;
+	}
+
+	@Override
+	public boolean visitMethodArg(final int argPosition, final int lvIndex, final String srcName) throws IOException {
+		this.begin(MappedElementKind.METHOD_ARG, srcName);
+		this.argPosition = argPosition;
+		this.lvIndex = lvIndex;
+		return true;
+	}
+
+	@Override
+	public boolean visitMethodVar(final int lvtRowIndex, final int lvIndex, final int startOpIdx, final String srcName) throws IOException {
+		this.begin(MappedElementKind.METHOD_VAR, srcName);
+		this.lvtRowIndex = lvtRowIndex;
+		this.lvIndex = lvIndex;
+		this.startOpIdx = startOpIdx;
+		return true;
+	}
+
+	@Override
+	public void visitDstName(final MappedElementKind targetKind, final int namespace, final String name) {
+		if (namespace == this.fromIndex) this.fromName = name;
+		if (namespace == this.toIndex) this.toName = name;
+	}
+
+	@Override
+	public boolean visitElementContent(final MappedElementKind targetKind) throws IOException {
+		return this.flush();
+	}
+
+	@Override
+	public void visitComment(final MappedElementKind targetKind, final String comment) throws IOException {
+		this.next.visitComment(targetKind, comment);
+	}
+
+	@Override
+	public boolean visitEnd() throws IOException {
+		this.flush();
+		return this.next.visitEnd();
+	}
+
+	private void begin(final MappedElementKind kind, final String srcName) throws IOException {
+		this.flush();
+
+		this.pending = kind;
+		this.srcName = srcName;
+		this.srcDesc = null;
+		this.fromName = this.fromIndex == SOURCE ? srcName : null;
+		this.toName = this.toIndex == SOURCE ? srcName : null;
+	}
+
+	/**
+	 * Passes the pending element on to the next visitor.
+	 *
+	 * @return Whether the next visitor wants the element's content
+	 */
+	private boolean flush() throws IOException {
+		final MappedElementKind kind = this.pending;
+		if (kind == null) return false;
+		this.pending = null;
+
+		String name = this.fromName;
+		if (name == null && kind != MappedElementKind.METHOD_ARG && kind != MappedElementKind.METHOD_VAR) {
+			name = kind == MappedElementKind.CLASS && this.fromIndex != SOURCE ?
+					this.classNames.getOrDefault(this.srcName, this.srcName) :
+					this.srcName;
+		}
+
+		final boolean visit;
+		switch (kind) {
+			case CLASS:
+				visit = this.next.visitClass(name);
+				break;
+			case FIELD:
+				visit = this.next.visitField(name, this.fromDesc());
+				break;
+			case METHOD:
+				visit = this.next.visitMethod(name, this.fromDesc());
+				break;
+			case METHOD_ARG:
+				visit = this.next.visitMethodArg(this.argPosition, this.lvIndex, name);
+				break;
+			case METHOD_VAR:
+				visit = this.next.visitMethodVar(this.lvtRowIndex, this.lvIndex, this.startOpIdx, name);
+				break;
+			default:
+				visit = false;
+				break;
+		}
+
+		if (!visit) return false;
+
+		if (this.toName != null && !this.from.equals(this.to)) {
+			this.next.visitDstName(kind, 0, this.toName);
+		}
+		return this.next.visitElementContent(kind);
+	}
+
+	private String fromDesc() {
+		return this.fromIndex == SOURCE ? this.srcDesc : Descriptors.remap(this.srcDesc, this.classNames);
+	}
+
+	private static int indexOf(final String srcNamespace, final List<String> dstNamespaces, final String namespace) {
+		if (srcNamespace.equals(namespace)) return SOURCE;
+
+		final int index = dstNamespaces.indexOf(namespace);
+		if (index == -1) {
+			throw new IllegalArgumentException(String.format("Could not find namespace \"%s\" in provided mappings", namespace));
+		}
+		return index;
+	}
+
+}
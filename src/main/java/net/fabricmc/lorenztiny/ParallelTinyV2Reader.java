@@ -0,0 +1,635 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import net.fabricmc.mappingio.MappedElementKind;
+import net.fabricmc.mappingio.MappingVisitor;
+import net.fabricmc.mappingio.tree.MemoryMappingTree;
+import org.cadixdev.lorenz.MappingSet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * A reader for Fabric's v2 Tiny format that memory-maps the file and
+ * tokenizes it in parallel.
+ * <p>
+ * The file is split into shards at top-level class ({@code c}) lines,
+ * each of which is tokenized from raw bytes on a {@link ForkJoinPool fork-join pool}.
+ * The shards are then replayed, in file order, into a single
+ * {@link MappingVisitor mapping visitor}, so the visitor sees exactly
+ * the same sequence of calls as it would from a sequential read.
+ *
+ * @see TinyMappingFormat#TINY_2
+ * @since 4.1.0
+ */
+public final class ParallelTinyV2Reader {
+
+	private static final String ESCAPED_NAMES_PROPERTY = "escaped-names";
+
+	// Shards smaller than this aren't worth the scheduling overhead
+	private static final int MIN_SHARD_SIZE = 256 * 1024;
+
+	private static final int OP_CLASS = 0;
+	private static final int OP_FIELD = 1;
+	private static final int OP_METHOD = 2;
+	private static final int OP_ARG = 3;
+	private static final int OP_VAR = 4;
+	private static final int OP_COMMENT = 5;
+
+	private static final MappedElementKind[] KINDS = MappedElementKind.values();
+
+	private ParallelTinyV2Reader() {
+	}
+
+	/**
+	 * Reads the Tiny v2 mappings at the given path into the given visitor,
+	 * using the {@link ForkJoinPool#commonPool() common pool}.
+	 *
+	 * @param path The path to the Tiny mappings
+	 * @param visitor The visitor to read the mappings into
+	 * @throws IOException if an I/O error occurs reading the file, or the file is malformed
+	 */
+	public static void read(final Path path, final MappingVisitor visitor) throws IOException {
+		read(path, visitor, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Reads the Tiny v2 mappings at the given path into the given visitor.
+	 *
+	 * @param path The path to the Tiny mappings
+	 * @param visitor The visitor to read the mappings into
+	 * @param pool The pool to tokenize the file on
+	 * @throws IOException if an I/O error occurs reading the file, or the file is malformed
+	 */
+	public static void read(final Path path, final MappingVisitor visitor, final ForkJoinPool pool) throws IOException {
+		final TinyMetrics metrics = TinyMappingFormat.getMetrics();
+		final long start = metrics.isEnabled() ? System.nanoTime() : 0;
+
+		parse(path, pool).accept(visitor);
+
+		if (metrics.isEnabled()) metrics.phase(TinyMetrics.Phase.PARSE, System.nanoTime() - start);
+	}
+
+	/**
+	 * Reads the Tiny v2 mappings at the given path into a new
+	 * {@link MemoryMappingTree mapping tree}.
+	 *
+	 * @param path The path to the Tiny mappings
+	 * @param pool The pool to tokenize the file on
+	 * @return The mapping tree
+	 * @throws IOException if an I/O error occurs reading the file, or the file is malformed
+	 */
+	public static MemoryMappingTree readTree(final Path path, final ForkJoinPool pool) throws IOException {
+		final MemoryMappingTree tree = new MemoryMappingTree();
+		read(path, tree, pool);
+		return tree;
+	}
+
+	/**
+	 * Reads the Tiny v2 mappings at the given path straight into the given
+	 * {@link MappingSet mapping set}.
+	 * <p>
+	 * The resulting mappings will use the from namespace (as the obfuscated
+	 * names in Lorenz) to the to namespace (as the de-obfuscated names in Lorenz).
+	 *
+	 * @param mappings The mapping set to read to
+	 * @param path The path to the Tiny mappings
+	 * @param from The namespace to use in the tiny file, as Lorenz's
+	 *             obfuscated names
+	 * @param to   The namespace to use in the tiny file, as Lorenz's
+	 *             de-obfuscated names
+	 * @param pool The pool to tokenize the file on
+	 * @return The given mapping set
+	 * @throws IOException if an I/O error occurs reading the file, or the file is malformed
+	 */
+	public static MappingSet read(final MappingSet mappings, final Path path,
+	                              final String from, final String to,
+	                              final ForkJoinPool pool) throws IOException {
+		final TinyMetrics metrics = TinyMappingFormat.getMetrics();
+		final long start = metrics.isEnabled() ? System.nanoTime() : 0;
+
+		final Parsed parsed = parse(path, pool);
+
+		final long parsedAt = metrics.isEnabled() ? System.nanoTime() : 0;
+		if (metrics.isEnabled()) metrics.phase(TinyMetrics.Phase.PARSE, parsedAt - start);
+
+		// The tokenized file is already in memory, so a second replay for the class names is cheap
+		final ClassNameCollector classNames = new ClassNameCollector(from);
+		parsed.accept(classNames);
+		parsed.accept(new MappingSetVisitor(mappings, from, to, classNames.getClassNames()));
+
+		if (metrics.isEnabled()) metrics.phase(TinyMetrics.Phase.CONVERT, System.nanoTime() - parsedAt);
+		return mappings;
+	}
+
+	private static Parsed parse(final Path path, final ForkJoinPool pool) throws IOException {
+		final ByteBuffer buf;
+		try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			final long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Tiny file too large to be memory-mapped: " + path);
+			}
+			buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+
+		final TinyMetrics metrics = TinyMappingFormat.getMetrics();
+		if (metrics.isEnabled()) metrics.bytesRead(buf.limit());
+
+		final int size = buf.limit();
+		final Tokenizer header = new Tokenizer(buf, false);
+
+		// Header: tiny 2 <minor> <namespaces...>
+		int pos = header.readLine(0, size);
+		if (header.columns < 4 || !header.columnEquals(0, "tiny") || !header.columnEquals(1, "2")) {
+			throw new IOException("Invalid or unsupported Tiny v2 header in " + path);
+		}
+
+		final String srcNamespace = header.string(3, false);
+		final List<String> dstNamespaces = new ArrayList<>(header.columns - 4);
+		for (int i = 4; i < header.columns; i++) {
+			dstNamespaces.add(header.string(i, false));
+		}
+
+		// Properties are indented lines before the first class
+		final List<String[]> properties = new ArrayList<>();
+		boolean escapedNames = false;
+
+		while (pos < size && buf.get(pos) == '\t') {
+			pos = header.readLine(pos, size);
+			if (header.columns == 0) continue;
+
+			// Property values are always escaped, whether or not names are, as in mapping-io's reader
+			final String key = header.string(0, false);
+			final String value = header.columns > 1 ? header.string(1, true) : null;
+			if (ESCAPED_NAMES_PROPERTY.equals(key)) escapedNames = true;
+			properties.add(new String[] { key, value });
+		}
+
+		final int contentStart = pos;
+		final int namespaces = dstNamespaces.size() + 1;
+
+		// Split the content into shards at top-level class lines
+		final int shardCount = Math.max(1, Math.min(pool.getParallelism() * 4, (size - contentStart) / MIN_SHARD_SIZE));
+		final int[] bounds = new int[shardCount + 1];
+		bounds[0] = contentStart;
+		for (int i = 1; i < shardCount; i++) {
+			final int candidate = contentStart + (int) ((long) (size - contentStart) * i / shardCount);
+			bounds[i] = findClassLine(buf, Math.max(candidate, bounds[i - 1] + 1), size);
+		}
+		bounds[shardCount] = size;
+
+		final boolean escaped = escapedNames;
+		final List<ForkJoinTask<Shard>> tasks = new ArrayList<>(shardCount);
+		for (int i = 0; i < shardCount; i++) {
+			final int start = bounds[i];
+			final int end = bounds[i + 1];
+			tasks.add(pool.submit(() -> new Tokenizer(buf, escaped).tokenize(start, end, namespaces)));
+		}
+
+		final List<Shard> shards = new ArrayList<>(shardCount);
+		try {
+			for (final ForkJoinTask<Shard> task : tasks) {
+				shards.add(task.join());
+			}
+		}
+		catch (final UncheckedIOException ex) {
+			throw new IOException("Failed to read Tiny v2 file " + path, ex.getCause());
+		}
+
+		return new Parsed(srcNamespace, Collections.unmodifiableList(dstNamespaces), properties, shards);
+	}
+
+	private static int findClassLine(final ByteBuffer buf, final int from, final int end) {
+		for (int i = from; i < end - 1; i++) {
+			if (buf.get(i - 1) == '\n' && buf.get(i) == 'c' && buf.get(i + 1) == '\t') {
+				return i;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * The tokenized contents of a Tiny v2 file, which can be replayed
+	 * into any number of visitors.
+	 */
+	private static final class Parsed {
+
+		private final String srcNamespace;
+		private final List<String> dstNamespaces;
+		private final List<String[]> properties;
+		private final List<Shard> shards;
+
+		Parsed(final String srcNamespace, final List<String> dstNamespaces,
+		       final List<String[]> properties, final List<Shard> shards) {
+			this.srcNamespace = srcNamespace;
+			this.dstNamespaces = dstNamespaces;
+			this.properties = properties;
+			this.shards = shards;
+		}
+
+		void accept(final MappingVisitor visitor) throws IOException {
+			final int namespaces = this.dstNamespaces.size() + 1;
+
+			do {
+				if (visitor.visitHeader()) {
+					visitor.visitNamespaces(this.srcNamespace, this.dstNamespaces);
+
+					for (final String[] property : this.properties) {
+						visitor.visitMetadata(property[0], property[1]);
+					}
+				}
+
+				if (visitor.visitContent()) {
+					final Replay replay = new Replay(visitor, namespaces);
+
+					for (final Shard shard : this.shards) {
+						replay.accept(shard);
+					}
+				}
+			} while (!visitor.visitEnd());
+		}
+
+	}
+
+	/**
+	 * Replays tokenized shards into a visitor, honouring the visitor's
+	 * requests to skip elements.
+	 */
+	private static final class Replay {
+
+		private final MappingVisitor visitor;
+		private final int namespaces;
+
+		private boolean inClass;
+		private boolean inMember;
+		private boolean inMethod;
+		private boolean inArg;
+
+		Replay(final MappingVisitor visitor, final int namespaces) {
+			this.visitor = visitor;
+			this.namespaces = namespaces;
+		}
+
+		void accept(final Shard shard) throws IOException {
+			final MappingVisitor visitor = this.visitor;
+			final int[] ops = shard.ops;
+			final String[] strings = shard.strings;
+			int op = 0;
+			int str = 0;
+
+			while (op < shard.opCount) {
+				switch (ops[op++]) {
+					case OP_CLASS:
+						this.inClass = visitor.visitClass(strings[str])
+								&& this.visitElement(MappedElementKind.CLASS, strings, str);
+						this.inMember = this.inMethod = this.inArg = false;
+						str += this.namespaces;
+						break;
+					case OP_FIELD:
+						this.inMember = this.inClass
+								&& visitor.visitField(strings[str + 1], strings[str])
+								&& this.visitElement(MappedElementKind.FIELD, strings, str + 1);
+						this.inMethod = this.inArg = false;
+						str += this.namespaces + 1;
+						break;
+					case OP_METHOD:
+						this.inMember = this.inMethod = this.inClass
+								&& visitor.visitMethod(strings[str + 1], strings[str])
+								&& this.visitElement(MappedElementKind.METHOD, strings, str + 1);
+						this.inArg = false;
+						str += this.namespaces + 1;
+						break;
+					case OP_ARG:
+						this.inArg = this.inMethod
+								&& visitor.visitMethodArg(-1, ops[op], strings[str])
+								&& this.visitElement(MappedElementKind.METHOD_ARG, strings, str);
+						op += 1;
+						str += this.namespaces;
+						break;
+					case OP_VAR:
+						this.inArg = this.inMethod
+								&& visitor.visitMethodVar(ops[op + 2], ops[op], ops[op + 1], strings[str])
+								&& this.visitElement(MappedElementKind.METHOD_VAR, strings, str);
+						op += 3;
+						str += this.namespaces;
+						break;
+					case OP_COMMENT: {
+						final MappedElementKind kind = KINDS[ops[op++]];
+						if (this.isVisible(kind)) visitor.visitComment(kind, strings[str]);
+						str += 1;
+						break;
+					}
+					default:
+						throw new IllegalStateException("Unknown op " + ops[op - 1]);
+				}
+			}
+		}
+
+		private boolean visitElement(final MappedElementKind kind, final String[] strings, final int offset) throws IOException {
+			for (int i = 1; i < this.namespaces; i++) {
+				final String name = strings[offset + i];
+				if (name != null) this.visitor.visitDstName(kind, i - 1, name);
+			}
+			return this.visitor.visitElementContent(kind);
+		}
+
+		private boolean isVisible(final MappedElementKind kind) {
+			switch (kind) {
+				case CLASS:
+					return this.inClass;
+				case FIELD:
+				case METHOD:
+					return this.inMember;
+				default:
+					return this.inArg;
+			}
+		}
+
+	}
+
+	/**
+	 * A tokenized run of top-level classes, stored as a flat stream of
+	 * ops with their integer and string operands.
+	 */
+	private static final class Shard {
+
+		int[] ops = new int[1024];
+		int opCount;
+		String[] strings = new String[1024];
+		int stringCount;
+
+		void op(final int op) {
+			if (this.opCount == this.ops.length) this.ops = Arrays.copyOf(this.ops, this.opCount * 2);
+			this.ops[this.opCount++] = op;
+		}
+
+		void string(final String string) {
+			if (this.stringCount == this.strings.length) this.strings = Arrays.copyOf(this.strings, this.stringCount * 2);
+			this.strings[this.stringCount++] = string;
+		}
+
+	}
+
+	/**
+	 * Splits lines of the mapped file into tab-separated columns,
+	 * working directly on the bytes.
+	 */
+	private static final class Tokenizer {
+
+		private final ByteBuffer buf;
+		private final boolean escapedNames;
+
+		private byte[] scratch = new byte[256];
+		private int[] starts = new int[8];
+		private int[] ends = new int[8];
+
+		int indent;
+		int columns;
+
+		Tokenizer(final ByteBuffer buf, final boolean escapedNames) {
+			this.buf = buf;
+			this.escapedNames = escapedNames;
+		}
+
+		Shard tokenize(final int start, final int end, final int namespaces) {
+			final Shard shard = new Shard();
+			MappedElementKind member = null;
+			MappedElementKind sub = null;
+			int pos = start;
+
+			while (pos < end) {
+				final int lineStart = pos;
+				pos = this.readLine(pos, end);
+				if (this.columns == 0) continue;
+
+				final int nameColumn;
+				switch (this.indent) {
+					case 0:
+						if (!this.columnEquals(0, "c")) continue;
+						shard.op(OP_CLASS);
+						nameColumn = 1;
+						member = sub = null;
+						break;
+					case 1:
+						if (this.columnEquals(0, "f") || this.columnEquals(0, "m")) {
+							final boolean field = this.columnEquals(0, "f");
+							this.requireColumns(3, lineStart);
+							shard.op(field ? OP_FIELD : OP_METHOD);
+							shard.string(this.string(1, false));
+							member = field ? MappedElementKind.FIELD : MappedElementKind.METHOD;
+							sub = null;
+							nameColumn = 2;
+							break;
+						}
+						if (this.columnEquals(0, "c")) this.comment(shard, MappedElementKind.CLASS, lineStart);
+						continue;
+					case 2:
+						if (member == MappedElementKind.METHOD && this.columnEquals(0, "p")) {
+							this.requireColumns(2, lineStart);
+							shard.op(OP_ARG);
+							shard.op(this.integer(1, lineStart));
+							sub = MappedElementKind.METHOD_ARG;
+							nameColumn = 2;
+							break;
+						}
+						if (member == MappedElementKind.METHOD && this.columnEquals(0, "v")) {
+							this.requireColumns(4, lineStart);
+							shard.op(OP_VAR);
+							shard.op(this.integer(1, lineStart));
+							shard.op(this.integer(2, lineStart));
+							shard.op(this.isEmpty(3) ? -1 : this.integer(3, lineStart));
+							sub = MappedElementKind.METHOD_VAR;
+							nameColumn = 4;
+							break;
+						}
+						if (member != null && this.columnEquals(0, "c")) this.comment(shard, member, lineStart);
+						continue;
+					case 3:
+						if (sub != null && this.columnEquals(0, "c")) this.comment(shard, sub, lineStart);
+						continue;
+					default:
+						continue;
+				}
+
+				// Source name, followed by the names in each destination namespace
+				for (int i = 0; i < namespaces; i++) {
+					final int column = nameColumn + i;
+					final boolean present = column < this.columns && !this.isEmpty(column);
+					shard.string(present ? this.string(column, this.escapedNames) : null);
+				}
+			}
+
+			return shard;
+		}
+
+		private void comment(final Shard shard, final MappedElementKind kind, final int lineStart) {
+			this.requireColumns(2, lineStart);
+			shard.op(OP_COMMENT);
+			shard.op(kind.ordinal());
+			shard.string(this.string(1, true));
+		}
+
+		/**
+		 * Reads the line starting at the given position.
+		 *
+		 * @return The position of the start of the next line
+		 */
+		int readLine(final int start, final int end) {
+			int pos = start;
+			while (pos < end && this.buf.get(pos) == '\t') pos++;
+			this.indent = pos - start;
+			this.columns = 0;
+
+			int columnStart = pos;
+			while (true) {
+				final byte b = pos < end ? this.buf.get(pos) : (byte) '\n';
+
+				if (b == '\t' || b == '\n') {
+					int columnEnd = pos;
+					if (b == '\n' && columnEnd > columnStart && this.buf.get(columnEnd - 1) == '\r') columnEnd--;
+
+					if (b == '\t' || columnEnd > columnStart || this.columns > 0) {
+						this.column(columnStart, columnEnd);
+					}
+					columnStart = pos + 1;
+
+					if (b == '\n') return Math.min(pos + 1, end);
+				}
+				pos++;
+			}
+		}
+
+		private void column(final int start, final int end) {
+			if (this.columns == this.starts.length) {
+				this.starts = Arrays.copyOf(this.starts, this.columns * 2);
+				this.ends = Arrays.copyOf(this.ends, this.columns * 2);
+			}
+			this.starts[this.columns] = start;
+			this.ends[this.columns] = end;
+			this.columns++;
+		}
+
+		boolean isEmpty(final int column) {
+			return this.starts[column] == this.ends[column];
+		}
+
+		boolean columnEquals(final int column, final String value) {
+			final int start = this.starts[column];
+			if (this.ends[column] - start != value.length()) return false;
+
+			for (int i = 0; i < value.length(); i++) {
+				if (this.buf.get(start + i) != value.charAt(i)) return false;
+			}
+			return true;
+		}
+
+		String string(final int column, final boolean escaped) {
+			final int start = this.starts[column];
+			final int length = this.ends[column] - start;
+			if (this.scratch.length < length) this.scratch = new byte[Math.max(length, this.scratch.length * 2)];
+
+			boolean ascii = true;
+			boolean backslash = false;
+			for (int i = 0; i < length; i++) {
+				final byte b = this.buf.get(start + i);
+				this.scratch[i] = b;
+				ascii &= b >= 0;
+				backslash |= b == '\\';
+			}
+
+			final String string = new String(this.scratch, 0, length, ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+			return escaped && backslash ? unescape(string) : string;
+		}
+
+		int integer(final int column, final int lineStart) {
+			final int start = this.starts[column];
+			final int end = this.ends[column];
+			if (start == end) throw malformed(lineStart);
+
+			int value = 0;
+			for (int i = start; i < end; i++) {
+				final int digit = this.buf.get(i) - '0';
+				if (digit < 0 || digit > 9) throw malformed(lineStart);
+				value = value * 10 + digit;
+			}
+			return value;
+		}
+
+		private void requireColumns(final int count, final int lineStart) {
+			if (this.columns < count) throw malformed(lineStart);
+		}
+
+		private static UncheckedIOException malformed(final int lineStart) {
+			return new UncheckedIOException(new IOException("Malformed Tiny v2 line at offset " + lineStart));
+		}
+
+		private static String unescape(final String string) {
+			final StringBuilder builder = new StringBuilder(string.length());
+
+			for (int i = 0; i < string.length(); i++) {
+				final char c = string.charAt(i);
+				if (c != '\\' || i + 1 == string.length()) {
+					builder.append(c);
+					continue;
+				}
+
+				final char next = string.charAt(++i);
+				switch (next) {
+					case 'n':
+						builder.append('\n');
+						break;
+					case 'r':
+						builder.append('\r');
+						break;
+					case 't':
+						builder.append('\t');
+						break;
+					case '0':
+						builder.append('\0');
+						break;
+					default:
+						builder.append(next);
+						break;
+				}
+			}
+
+			return builder.toString();
+		}
+
+	}
+
+}
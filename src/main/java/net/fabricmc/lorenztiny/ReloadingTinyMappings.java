@@ -0,0 +1,289 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import org.cadixdev.lorenz.MappingSet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the {@link MappingSet mappings} read from a Tiny file, reloading
+ * them whenever the file changes.
+ * <p>
+ * The file's directory is watched with a {@link WatchService watch service}.
+ * Changes are debounced, so that a burst of writes to the file causes a
+ * single reload, which then runs on a background thread. Each reload reads
+ * the file into a new mapping set, which is then swapped in atomically.
+ * <p>
+ * {@link #get()} never blocks, and always returns a complete mapping set.
+ * Mapping sets are never modified once returned, so must not be modified
+ * by their readers either. A failed reload, such as of a half-written file,
+ * leaves the current mappings in place until the next change.
+ *
+ * @since 4.1.0
+ */
+public class ReloadingTinyMappings implements Closeable {
+
+	/**
+	 * The default time to wait for further changes, before reloading.
+	 */
+	public static final long DEFAULT_DEBOUNCE_MILLIS = 250;
+
+	private final TinyMappingFormat format;
+	private final Path path;
+	private final String from;
+	private final String to;
+	private final long debounceMillis;
+
+	private final AtomicReference<MappingSet> mappings = new AtomicReference<>();
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+	private final Object reloadLock = new Object();
+
+	private final WatchService watchService;
+	private final ScheduledExecutorService scheduler;
+	private final Thread watcher;
+	private ScheduledFuture<?> pending;
+
+	private volatile long lastReloadNanos;
+
+	/**
+	 * Reads the mappings from the given file, and starts watching it
+	 * for changes.
+	 *
+	 * @param format The format of the file
+	 * @param path The path to the Tiny mappings
+	 * @param from The namespace to use in the tiny file, as Lorenz's
+	 *             obfuscated names
+	 * @param to   The namespace to use in the tiny file, as Lorenz's
+	 *             de-obfuscated names
+	 * @param debounceMillis The time to wait for further changes, before reloading
+	 * @throws IOException if an I/O error occurs reading the file, or
+	 *                     watching its directory
+	 */
+	public ReloadingTinyMappings(final TinyMappingFormat format, final Path path,
+	                             final String from, final String to,
+	                             final long debounceMillis) throws IOException {
+		this.format = format;
+		this.path = path.toAbsolutePath();
+		this.from = from;
+		this.to = to;
+		this.debounceMillis = debounceMillis;
+
+		final long start = System.nanoTime();
+		this.mappings.set(format.read(this.path, from, to));
+		this.lastReloadNanos = System.nanoTime() - start;
+
+		this.watchService = FileSystems.getDefault().newWatchService();
+		try {
+			this.path.getParent().register(this.watchService,
+					StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		}
+		catch (final IOException ex) {
+			this.watchService.close();
+			throw ex;
+		}
+
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+			final Thread thread = new Thread(task, "Tiny mappings reloader: " + this.path.getFileName());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		this.watcher = new Thread(this::watch, "Tiny mappings watcher: " + this.path.getFileName());
+		this.watcher.setDaemon(true);
+		this.watcher.start();
+	}
+
+	/**
+	 * Reads the mappings from the given file, and starts watching it
+	 * for changes, with the {@link #DEFAULT_DEBOUNCE_MILLIS default debounce}.
+	 *
+	 * @param format The format of the file
+	 * @param path The path to the Tiny mappings
+	 * @param from The namespace to use in the tiny file, as Lorenz's
+	 *             obfuscated names
+	 * @param to   The namespace to use in the tiny file, as Lorenz's
+	 *             de-obfuscated names
+	 * @throws IOException if an I/O error occurs reading the file, or
+	 *                     watching its directory
+	 */
+	public ReloadingTinyMappings(final TinyMappingFormat format, final Path path,
+	                             final String from, final String to) throws IOException {
+		this(format, path, from, to, DEFAULT_DEBOUNCE_MILLIS);
+	}
+
+	/**
+	 * Gets the current mappings.
+	 *
+	 * @return The mappings
+	 */
+	public MappingSet get() {
+		return this.mappings.get();
+	}
+
+	/**
+	 * Gets the time taken by the last successful load, or reload, in nanoseconds.
+	 *
+	 * @return The time taken
+	 */
+	public long getLastReloadNanos() {
+		return this.lastReloadNanos;
+	}
+
+	/**
+	 * Adds a listener, to be told of every reload.
+	 *
+	 * @param listener The listener
+	 */
+	public void addListener(final Listener listener) {
+		this.listeners.add(listener);
+	}
+
+	/**
+	 * Removes a previously added listener.
+	 *
+	 * @param listener The listener
+	 */
+	public void removeListener(final Listener listener) {
+		this.listeners.remove(listener);
+	}
+
+	/**
+	 * Reloads the mappings now, on the calling thread.
+	 *
+	 * @return The reloaded mappings
+	 * @throws IOException if an I/O error occurs reading the file
+	 */
+	public MappingSet reload() throws IOException {
+		synchronized (this.reloadLock) {
+			final long start = System.nanoTime();
+			final MappingSet reloaded = this.format.read(this.path, this.from, this.to);
+			this.mappings.set(reloaded);
+
+			final long nanos = System.nanoTime() - start;
+			this.lastReloadNanos = nanos;
+
+			for (final Listener listener : this.listeners) {
+				listener.reloaded(reloaded, nanos);
+			}
+			return reloaded;
+		}
+	}
+
+	private void watch() {
+		try {
+			while (true) {
+				final WatchKey key = this.watchService.take();
+
+				boolean changed = false;
+				for (final WatchEvent<?> event : key.pollEvents()) {
+					// An overflow may have hidden a change to the file
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW || this.path.getFileName().equals(event.context())) {
+						changed = true;
+					}
+				}
+
+				if (changed) this.schedule();
+				if (!key.reset()) break;
+			}
+		}
+		catch (final InterruptedException | ClosedWatchServiceException ex) {
+			// Closed
+		}
+	}
+
+	private synchronized void schedule() {
+		if (this.scheduler.isShutdown()) return;
+
+		// Each change pushes the reload back, until the file settles
+		if (this.pending != null) this.pending.cancel(false);
+		this.pending = this.scheduler.schedule(this::reloadInBackground, this.debounceMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void reloadInBackground() {
+		try {
+			this.reload();
+		}
+		catch (final Exception ex) {
+			for (final Listener listener : this.listeners) {
+				listener.failed(ex);
+			}
+		}
+	}
+
+	/**
+	 * Stops watching the file. The current mappings remain available.
+	 *
+	 * @throws IOException if an I/O error occurs closing the watch service
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			this.scheduler.shutdownNow();
+		}
+		this.watchService.close();
+		this.watcher.interrupt();
+	}
+
+	/**
+	 * A listener for the reloads of {@link ReloadingTinyMappings reloading mappings}.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called after each reload, on the thread that reloaded.
+		 *
+		 * @param mappings The mappings now current
+		 * @param nanos The time taken by the reload, in nanoseconds
+		 */
+		void reloaded(final MappingSet mappings, final long nanos);
+
+		/**
+		 * Called when a background reload fails, leaving the current
+		 * mappings in place.
+		 *
+		 * @param ex The cause of the failure
+		 */
+		default void failed(final Exception ex) {
+		}
+
+	}
+
+}
@@ -24,9 +24,9 @@
 
 package net.fabricmc.lorenztiny;
 
-import java.io.BufferedWriter;
 import java.io.Writer;
 import net.fabricmc.mappingio.MappingReader;
+import net.fabricmc.mappingio.MappingVisitor;
 import net.fabricmc.mappingio.tree.MappingTree;
 import net.fabricmc.mappingio.tree.MemoryMappingTree;
 import org.cadixdev.lorenz.MappingSet;
@@ -37,8 +37,24 @@ import org.cadixdev.lorenz.model.Mapping;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * A helper class for working with Tiny mappings with Lorenz,
@@ -54,10 +70,8 @@ public enum TinyMappingFormat {
 	 */
 	TINY_2 {
 		@Override
-		protected MappingTree load(final BufferedReader reader) throws IOException {
-			MemoryMappingTree mappingTree = new MemoryMappingTree();
-			MappingReader.read(reader, net.fabricmc.mappingio.format.MappingFormat.TINY_2, mappingTree);
-			return mappingTree;
+		protected void accept(final BufferedReader reader, final MappingVisitor visitor) throws IOException {
+			MappingReader.read(reader, net.fabricmc.mappingio.format.MappingFormat.TINY_2, visitor);
 		}
 	},
 
@@ -66,15 +80,23 @@ public enum TinyMappingFormat {
 	 */
 	TINY {
 		@Override
-		protected MappingTree load(final BufferedReader reader) throws IOException {
-			MemoryMappingTree mappingTree = new MemoryMappingTree();
-			MappingReader.read(reader, net.fabricmc.mappingio.format.MappingFormat.TINY, mappingTree);
-			return mappingTree;
+		protected void accept(final BufferedReader reader, final MappingVisitor visitor) throws IOException {
+			MappingReader.read(reader, net.fabricmc.mappingio.format.MappingFormat.TINY, visitor);
 		}
 
 		@Override
 		public MappingsWriter createWriter(final Writer writer, final String from, final String to) {
-			return new TinyMappingsLegacyWriter(writer, from, to);
+			return withMetrics(new TinyMappingsLegacyWriter(writer, from, to));
+		}
+
+		@Override
+		public MappingsWriter createWriter(final OutputStream stream, final String from, final String to) {
+			return withMetrics(new TinyMappingsLegacyWriter(stream, from, to));
+		}
+
+		@Override
+		public MappingsWriter createWriter(final WritableByteChannel channel, final String from, final String to) {
+			return withMetrics(new TinyMappingsLegacyWriter(channel, from, to));
 		}
 	},
 
@@ -83,15 +105,74 @@ public enum TinyMappingFormat {
 	 */
 	DETECT {
 		@Override
-		protected MappingTree load(final BufferedReader reader) throws IOException {
-			MemoryMappingTree mappingTree = new MemoryMappingTree();
-			MappingReader.read(reader, mappingTree);
-			return mappingTree;
+		protected void accept(final BufferedReader reader, final MappingVisitor visitor) throws IOException {
+			MappingReader.read(reader, visitor);
 		}
 	},
 	;
 
-	protected abstract MappingTree load(final BufferedReader reader) throws IOException;
+	private static volatile TinyMetrics metrics = TinyMetrics.NONE;
+
+	/**
+	 * Sets the metrics that all readers and writers created by the
+	 * formats report to, from then on.
+	 *
+	 * @param metrics The metrics, or {@code null} to stop reporting
+	 * @since 4.1.0
+	 */
+	public static void setMetrics(final TinyMetrics metrics) {
+		TinyMappingFormat.metrics = metrics != null ? metrics : TinyMetrics.NONE;
+	}
+
+	/**
+	 * Gets the metrics that all readers and writers created by the
+	 * formats report to.
+	 *
+	 * @return The metrics
+	 * @since 4.1.0
+	 */
+	public static TinyMetrics getMetrics() {
+		return metrics;
+	}
+
+	private static volatile TinyStringPool stringPool;
+
+	/**
+	 * Sets the pool that all mappings loaded by the formats intern their
+	 * names and descriptors with, from then on, so that equal strings are
+	 * only stored once across every loaded tree and mapping set.
+	 *
+	 * @param stringPool The pool, or {@code null} to not intern names
+	 * @see TinyStringPool#shared()
+	 * @since 4.1.0
+	 */
+	public static void setStringPool(final TinyStringPool stringPool) {
+		TinyMappingFormat.stringPool = stringPool;
+	}
+
+	/**
+	 * Gets the pool that all mappings loaded by the formats intern their
+	 * names and descriptors with.
+	 *
+	 * @return The pool, or {@code null} if names are not interned
+	 * @since 4.1.0
+	 */
+	public static TinyStringPool getStringPool() {
+		return stringPool;
+	}
+
+	protected abstract void accept(final BufferedReader reader, final MappingVisitor visitor) throws IOException;
+
+	protected MappingTree load(final BufferedReader reader) throws IOException {
+		final TinyMetrics metrics = TinyMappingFormat.metrics;
+		final long start = metrics.isEnabled() ? System.nanoTime() : 0;
+
+		final MemoryMappingTree mappingTree = new MemoryMappingTree();
+		this.accept(reader, pooled(mappingTree));
+
+		if (metrics.isEnabled()) metrics.phase(TinyMetrics.Phase.PARSE, System.nanoTime() - start);
+		return mappingTree;
+	}
 
 	/**
 	 * Creates a new {@link MappingsWriter mappings writer} for the
@@ -108,7 +189,43 @@ public enum TinyMappingFormat {
 	 * @since 3.0.0
 	 */
 	public MappingsWriter createWriter(final Writer writer, final String from, final String to) {
-		return new TinyMappingsWriter(writer, from, to);
+		return withMetrics(new TinyMappingsWriter(writer, from, to));
+	}
+
+	/**
+	 * Creates a new {@link MappingsWriter mappings writer}, writing UTF-8
+	 * encoded mappings to the stream supplied.
+	 * <p>
+	 * The resulting mappings written will use the {@code from} namespace
+	 * (for the obfuscated names in Lorenz) to the {@code to} namespace (for
+	 * the de-obfuscated names in Lorenz).
+	 *
+	 * @param stream The {@link OutputStream} to write the mappings to
+	 * @param from The namespace to place the obfuscated names under
+	 * @param to The namespace to place the deobfuscated names under
+	 * @return The mappings writer
+	 * @since 4.1.0
+	 */
+	public MappingsWriter createWriter(final OutputStream stream, final String from, final String to) {
+		return withMetrics(new TinyMappingsWriter(stream, from, to));
+	}
+
+	/**
+	 * Creates a new {@link MappingsWriter mappings writer}, writing UTF-8
+	 * encoded mappings to the channel supplied.
+	 * <p>
+	 * The resulting mappings written will use the {@code from} namespace
+	 * (for the obfuscated names in Lorenz) to the {@code to} namespace (for
+	 * the de-obfuscated names in Lorenz).
+	 *
+	 * @param channel The {@link WritableByteChannel} to write the mappings to
+	 * @param from The namespace to place the obfuscated names under
+	 * @param to The namespace to place the deobfuscated names under
+	 * @return The mappings writer
+	 * @since 4.1.0
+	 */
+	public MappingsWriter createWriter(final WritableByteChannel channel, final String from, final String to) {
+		return withMetrics(new TinyMappingsWriter(channel, from, to));
 	}
 
 	/**
@@ -127,8 +244,11 @@ public enum TinyMappingFormat {
 	 * @since 3.0.0
 	 */
 	public void write(final MappingSet mappings, final Path path, final String from, final String to) throws IOException {
-		try (final BufferedWriter writer = Files.newBufferedWriter(path)) {
-			this.createWriter(writer, from, to).write(mappings);
+		try (final MappingsWriter writer = this.createWriter(Files.newOutputStream(path), from, to)) {
+			writer.write(mappings);
+		}
+		catch (final UncheckedIOException ex) {
+			throw ex.getCause();
 		}
 	}
 
@@ -150,8 +270,8 @@ public enum TinyMappingFormat {
 	 */
 	public MappingsReader createReader(final Path path,
 	                                   final String from, final String to) throws IOException {
-		try (final BufferedReader reader = Files.newBufferedReader(path)) {
-			return new TinyMappingsReader(this.load(reader), from, to);
+		try (final BufferedReader reader = open(path)) {
+			return newReader(this.load(reader), from, to);
 		}
 	}
 
@@ -179,6 +299,59 @@ public enum TinyMappingFormat {
 		return mappings;
 	}
 
+	/**
+	 * Creates a new {@link MappingsReader mappings reader} for the
+	 * mappings contained by the path supplied, reusing a tree from
+	 * the given cache where possible.
+	 * <p>
+	 * The resulting {@link Mapping mappings} will use the from namespace
+	 * (as the obfuscated names in Lorenz) to the to namespace (as the
+	 * de-obfuscated names in Lorenz).
+	 *
+	 * @param path The path to the Tiny mappings
+	 * @param from The namespace to use in the tiny file, as Lorenz's
+	 *             obfuscated names
+	 * @param to   The namespace to use in the tiny file, as Lorenz's
+	 *             de-obfuscated names
+	 * @param cache The cache of loaded trees
+	 * @return The mappings reader
+	 * @throws IOException if an I/O error occurs opening the file
+	 * @since 4.1.0
+	 */
+	public MappingsReader createReader(final Path path,
+	                                   final String from, final String to,
+	                                   final MappingTreeCache cache) throws IOException {
+		return newReader(cache.get(this, path), from, to);
+	}
+
+	/**
+	 * Reads Tiny mappings from the given path, into the given {@link MappingSet mapping set},
+	 * reusing a tree from the given cache where possible.
+	 * <p>
+	 * The resulting {@link Mapping mappings} will use the from namespace
+	 * (as the obfuscated names in Lorenz) to the to namespace (as the
+	 * de-obfuscated names in Lorenz).
+	 *
+	 * @param mappings The mapping set to read to
+	 * @param path The path to the Tiny mappings
+	 * @param from The namespace to use in the tiny file, as Lorenz's
+	 *             obfuscated names
+	 * @param to   The namespace to use in the tiny file, as Lorenz's
+	 *             de-obfuscated names
+	 * @param cache The cache of loaded trees
+	 * @return The given mapping set
+	 * @throws IOException if an I/O error occurs opening the file
+	 * @since 4.1.0
+	 */
+	public MappingSet read(final MappingSet mappings, final Path path,
+	                       final String from, final String to,
+	                       final MappingTreeCache cache) throws IOException {
+		try (final MappingsReader reader = this.createReader(path, from, to, cache)) {
+			reader.read(mappings);
+		}
+		return mappings;
+	}
+
 	/**
 	 * Reads Tiny mappings from the given path, into a new {@link MappingSet mapping set}.
 	 * <p>
@@ -196,7 +369,468 @@ public enum TinyMappingFormat {
 	 */
 	public MappingSet read(final Path path,
 	                       final String from, final String to) throws IOException {
-		return this.read(MappingSet.create(), path, from, to);
+		return this.read(InsertionOrderedModelFactory.createMappingSet(), path, from, to);
+	}
+
+	/**
+	 * Updates the given {@link MappingSet mapping set} in place, to match the
+	 * Tiny mappings at the given path.
+	 * <p>
+	 * Only the elements whose de-obfuscated names differ between the mapping
+	 * set and the file are touched, elements no longer present in the file
+	 * are reset to their obfuscated names.
+	 *
+	 * @param mappings The mapping set to update
+	 * @param path The path to the Tiny mappings
+	 * @param from The namespace to use in the tiny file, as Lorenz's
+	 *             obfuscated names
+	 * @param to   The namespace to use in the tiny file, as Lorenz's
+	 *             de-obfuscated names
+	 * @return The changes applied to the mapping set
+	 * @throws IOException if an I/O error occurs reading the file
+	 * @see MappingsDiff
+	 * @since 4.1.0
+	 */
+	public MappingsDiff update(final MappingSet mappings, final Path path,
+	                           final String from, final String to) throws IOException {
+		final MappingTree tree;
+		try (final BufferedReader reader = open(path)) {
+			tree = this.load(reader);
+		}
+
+		final MappingsDiff diff = MappingsDiff.between(mappings, tree, from, to);
+		diff.apply(mappings);
+		return diff;
+	}
+
+	/**
+	 * Loads the mappings at the given path into a {@link MappingTree mapping tree}
+	 * holding only the two given namespaces.
+	 * <p>
+	 * The mappings are projected while they are parsed, so names in any other
+	 * namespace are never stored. The from namespace becomes the source
+	 * namespace of the tree, and the to namespace its only destination namespace.
+	 *
+	 * @param path The path to the mappings
+	 * @param from The namespace to use as the source namespace
+	 * @param to   The namespace to use as the destination namespace
+	 * @return The projected mapping tree
+	 * @throws IOException if an I/O error occurs reading the file
+	 * @see NamespaceProjectionVisitor
+	 * @since 4.1.0
+	 */
+	public MappingTree loadProjected(final Path path, final String from, final String to) throws IOException {
+		final Map<String, String> classNames = this.collectClassNames(path, from);
+		final MemoryMappingTree tree = new MemoryMappingTree();
+
+		this.parse(path, pooled(new NamespaceProjectionVisitor(tree, from, to, classNames)));
+		return tree;
+	}
+
+	/**
+	 * Creates a new {@link MappingsReader mappings reader} for the
+	 * mappings contained by the path supplied, only retaining the
+	 * two namespaces used.
+	 * <p>
+	 * The resulting {@link Mapping mappings} will use the from namespace
+	 * (as the obfuscated names in Lorenz) to the to namespace (as the
+	 * de-obfuscated names in Lorenz).
+	 *
+	 * @param path The path to the Tiny mappings
+	 * @param from The namespace to use in the tiny file, as Lorenz's
+	 *             obfuscated names
+	 * @param to   The namespace to use in the tiny file, as Lorenz's
+	 *             de-obfuscated names
+	 * @return The mappings reader
+	 * @throws IOException if an I/O error occurs opening the file
+	 * @see #loadProjected(Path, String, String)
+	 * @since 4.1.0
+	 */
+	public MappingsReader createProjectedReader(final Path path,
+	                                            final String from, final String to) throws IOException {
+		return newReader(this.loadProjected(path, from, to), from, to);
+	}
+
+	/**
+	 * Loads the mappings at the given path into a {@link TinyRemapTable remap table},
+	 * for looking up names in the from namespace, to the to namespace.
+	 * <p>
+	 * Only the two given namespaces are ever loaded.
+	 *
+	 * @param path The path to the mappings
+	 * @param from The namespace to look names up in
+	 * @param to   The namespace to map names to
+	 * @return The remap table
+	 * @throws IOException if an I/O error occurs reading the file
+	 * @see #loadProjected(Path, String, String)
+	 * @since 4.1.0
+	 */
+	public TinyRemapTable loadRemapTable(final Path path, final String from, final String to) throws IOException {
+		return new TinyRemapTable(this.loadProjected(path, from, to), from, to);
+	}
+
+	/**
+	 * Reads Tiny mappings from the given path, into a new {@link LazyTinyMappingSet lazy mapping set},
+	 * which only creates mappings for classes as they are looked up.
+	 * <p>
+	 * The resulting {@link Mapping mappings} will use the from namespace
+	 * (as the obfuscated names in Lorenz) to the to namespace (as the
+	 * de-obfuscated names in Lorenz).
+	 *
+	 * @param path The path to the Tiny mappings
+	 * @param from The namespace to use in the tiny file, as Lorenz's
+	 *             obfuscated names
+	 * @param to   The namespace to use in the tiny file, as Lorenz's
+	 *             de-obfuscated names
+	 * @return The lazy mapping set
+	 * @throws IOException if an I/O error occurs opening the file
+	 * @since 4.1.0
+	 */
+	public LazyTinyMappingSet readLazily(final Path path,
+	                                     final String from, final String to) throws IOException {
+		try (final BufferedReader reader = open(path)) {
+			return new LazyTinyMappingSet(this.load(reader), from, to);
+		}
+	}
+
+	/**
+	 * Reads Tiny mappings from the given path, into the given {@link MappingSet mapping set},
+	 * without building an intermediate mapping tree.
+	 * <p>
+	 * Unlike {@link #read(MappingSet, Path, String, String)}, mappings are written
+	 * into the mapping set as the file is parsed, so the whole file is never held
+	 * in memory twice. If the from namespace is not the source namespace of the
+	 * file, the class names are first collected in a separate, lighter pass so
+	 * that member descriptors can be remapped.
+	 * <p>
+	 * The resulting {@link Mapping mappings} will use the from namespace
+	 * (as the obfuscated names in Lorenz) to the to namespace (as the
+	 * de-obfuscated names in Lorenz).
+	 *
+	 * @param mappings The mapping set to read to
+	 * @param path The path to the Tiny mappings
+	 * @param from The namespace to use in the tiny file, as Lorenz's
+	 *             obfuscated names
+	 * @param to   The namespace to use in the tiny file, as Lorenz's
+	 *             de-obfuscated names
+	 * @return The given mapping set
+	 * @throws IOException if an I/O error occurs opening the file
+	 * @since 4.1.0
+	 */
+	public MappingSet readStreaming(final MappingSet mappings, final Path path,
+	                                final String from, final String to) throws IOException {
+		final Map<String, String> classNames = this.collectClassNames(path, from);
+
+		this.parse(path, pooled(new MappingSetVisitor(mappings, from, to, classNames)));
+		return mappings;
+	}
+
+	/**
+	 * Reads Tiny mappings from the given path, into a new {@link MappingSet mapping set},
+	 * without building an intermediate mapping tree.
+	 * <p>
+	 * The resulting {@link Mapping mappings} will use the from namespace
+	 * (as the obfuscated names in Lorenz) to the to namespace (as the
+	 * de-obfuscated names in Lorenz).
+	 *
+	 * @param path The path to the Tiny mappings
+	 * @param from The namespace to use in the tiny file, as Lorenz's
+	 *             obfuscated names
+	 * @param to   The namespace to use in the tiny file, as Lorenz's
+	 *             de-obfuscated names
+	 * @return The mapping set
+	 * @throws IOException if an I/O error occurs opening the file
+	 * @see #readStreaming(MappingSet, Path, String, String)
+	 * @since 4.1.0
+	 */
+	public MappingSet readStreaming(final Path path,
+	                                final String from, final String to) throws IOException {
+		return this.readStreaming(MappingSet.create(), path, from, to);
+	}
+
+	/**
+	 * Reads Tiny mappings from the given path, into a new {@link MappingSet mapping set}
+	 * for each of the given namespace pairs, in a single pass over the file.
+	 * <p>
+	 * Each name read from the file is shared between all of the mapping sets,
+	 * as are remapped descriptors between the mapping sets sharing a from
+	 * namespace. If any from namespace is not the source namespace of the file,
+	 * the class names of all such namespaces are first collected together, in a
+	 * separate, lighter pass.
+	 *
+	 * @param path The path to the Tiny mappings
+	 * @param pairs The namespaces to read mappings between
+	 * @return The mapping sets, by namespace pair, in the order given
+	 * @throws IOException if an I/O error occurs opening the file
+	 * @see #readStreaming(MappingSet, Path, String, String)
+	 * @since 4.1.0
+	 */
+	public Map<NamespacePair, MappingSet> readAll(final Path path,
+	                                              final Collection<NamespacePair> pairs) throws IOException {
+		final Map<NamespacePair, MappingSet> result = new LinkedHashMap<>();
+		final Set<String> froms = new LinkedHashSet<>();
+		for (final NamespacePair pair : pairs) {
+			result.put(pair, MappingSet.create());
+			froms.add(pair.getFrom());
+		}
+		if (result.isEmpty()) return result;
+
+		final ClassNameCollector classNames = new ClassNameCollector(froms);
+		this.parse(path, classNames);
+
+		final Map<String, Map<String, String>> descriptors = new HashMap<>();
+		final List<MappingSetVisitor> visitors = new ArrayList<>(result.size());
+		for (final Map.Entry<NamespacePair, MappingSet> entry : result.entrySet()) {
+			final String from = entry.getKey().getFrom();
+			visitors.add(new MappingSetVisitor(entry.getValue(), from, entry.getKey().getTo(),
+					classNames.getClassNames(from), descriptors.computeIfAbsent(from, k -> new HashMap<>())));
+		}
+
+		this.parse(path, pooled(new FanOutMappingVisitor(visitors)));
+		return result;
+	}
+
+	/**
+	 * Writes the given {@link MappingSet mapping set} to the file specified
+	 * by the supplied {@link Path path}, on the given executor.
+	 * <p>
+	 * The file is written behind the rendering through an asynchronous
+	 * channel, so rendering and disk writes overlap.
+	 *
+	 * @param mappings The mappings to write
+	 * @param path The file to write the mappings to
+	 * @param from The namespace to place the obfuscated names under
+	 * @param to The namespace to place the deobfuscated names under
+	 * @param executor The executor to render the mappings on
+	 * @return A future completing once the file is written
+	 * @see #write(MappingSet, Path, String, String)
+	 * @since 4.1.0
+	 */
+	public CompletableFuture<Void> writeAsync(final MappingSet mappings, final Path path,
+	                                          final String from, final String to,
+	                                          final Executor executor) {
+		return supplyAsync(() -> {
+			try (final MappingsWriter writer = this.createWriter(AsyncFileSink.open(path), from, to)) {
+				writer.write(mappings);
+			}
+			catch (final UncheckedIOException ex) {
+				throw ex.getCause();
+			}
+			return null;
+		}, executor);
+	}
+
+	/**
+	 * Creates a new {@link MappingsReader mappings reader} for the
+	 * mappings contained by the path supplied, loading the mappings
+	 * on the given executor.
+	 * <p>
+	 * The file is read ahead through an asynchronous channel while it
+	 * is parsed, with parsing and building the mapping tree running as
+	 * separate stages.
+	 *
+	 * @param path The path to the Tiny mappings
+	 * @param from The namespace to use in the tiny file, as Lorenz's
+	 *             obfuscated names
+	 * @param to   The namespace to use in the tiny file, as Lorenz's
+	 *             de-obfuscated names
+	 * @param executor The executor to load the mappings on
+	 * @return A future completing with the mappings reader
+	 * @see #createReader(Path, String, String)
+	 * @since 4.1.0
+	 */
+	public CompletableFuture<MappingsReader> createReaderAsync(final Path path,
+	                                                           final String from, final String to,
+	                                                           final Executor executor) {
+		final MemoryMappingTree tree = new MemoryMappingTree();
+		return MappingPipeline.run(this, path, pooled(tree), executor)
+				.thenApply(v -> newReader(tree, from, to));
+	}
+
+	/**
+	 * Reads Tiny mappings from the given path, into the given {@link MappingSet mapping set},
+	 * on the given executor.
+	 * <p>
+	 * The file is read ahead through an asynchronous channel, while it is
+	 * parsed in one stage and converted into the mapping set in another, with
+	 * the stages connected by a bounded queue. No intermediate mapping tree is
+	 * built. The mapping set must not be used until the future completes.
+	 * <p>
+	 * The resulting {@link Mapping mappings} will use the from namespace
+	 * (as the obfuscated names in Lorenz) to the to namespace (as the
+	 * de-obfuscated names in Lorenz).
+	 *
+	 * @param mappings The mapping set to read to
+	 * @param path The path to the Tiny mappings
+	 * @param from The namespace to use in the tiny file, as Lorenz's
+	 *             obfuscated names
+	 * @param to   The namespace to use in the tiny file, as Lorenz's
+	 *             de-obfuscated names
+	 * @param executor The executor to read the mappings on
+	 * @return A future completing with the given mapping set
+	 * @see #readStreaming(MappingSet, Path, String, String)
+	 * @since 4.1.0
+	 */
+	public CompletableFuture<MappingSet> readAsync(final MappingSet mappings, final Path path,
+	                                               final String from, final String to,
+	                                               final Executor executor) {
+		return supplyAsync(() -> this.collectClassNames(path, from), executor)
+				.thenCompose(classNames -> MappingPipeline.run(this, path,
+						pooled(new MappingSetVisitor(mappings, from, to, classNames)), executor))
+				.thenApply(v -> mappings);
+	}
+
+	/**
+	 * Reads Tiny mappings from the given path, into a new {@link MappingSet mapping set},
+	 * on the given executor.
+	 *
+	 * @param path The path to the Tiny mappings
+	 * @param from The namespace to use in the tiny file, as Lorenz's
+	 *             obfuscated names
+	 * @param to   The namespace to use in the tiny file, as Lorenz's
+	 *             de-obfuscated names
+	 * @param executor The executor to read the mappings on
+	 * @return A future completing with the mapping set
+	 * @see #readAsync(MappingSet, Path, String, String, Executor)
+	 * @since 4.1.0
+	 */
+	public CompletableFuture<MappingSet> readAsync(final Path path,
+	                                               final String from, final String to,
+	                                               final Executor executor) {
+		return this.readAsync(MappingSet.create(), path, from, to, executor);
+	}
+
+	/**
+	 * Loads the mappings at the given path into a {@link MappingTree mapping tree},
+	 * using a binary cache stored next to the file.
+	 * <p>
+	 * If the cache is valid for the current contents of the file, the tree
+	 * is read from it, otherwise the file is parsed and the cache is
+	 * rebuilt. Failing to write the cache, for example because the directory
+	 * is read-only, does not fail the load.
+	 *
+	 * @param path The path to the mappings
+	 * @return The mapping tree
+	 * @throws IOException if an I/O error occurs reading the file
+	 * @see BinaryMappingsCache
+	 * @since 4.1.0
+	 */
+	public MappingTree loadCached(final Path path) throws IOException {
+		final MappingTree cached = BinaryMappingsCache.read(path, this);
+		if (cached != null) return cached;
+
+		// Checksum exactly the bytes parsed, so a cache never vouches for a file changed since
+		final MappingTree tree;
+		final BinaryMappingsCache.ChecksumInputStream in;
+		try (final BinaryMappingsCache.ChecksumInputStream stream = new BinaryMappingsCache.ChecksumInputStream(Files.newInputStream(path));
+		     final BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8.newDecoder()))) {
+			in = stream;
+			tree = this.load(reader);
+			in.drain();
+		}
+
+		final TinyMetrics metrics = TinyMappingFormat.metrics;
+		if (metrics.isEnabled()) metrics.bytesRead(in.getSize());
+
+		try {
+			BinaryMappingsCache.write(tree, path, this, in.getSize(), in.getChecksum());
+		}
+		catch (final IOException ignored) {
+			// The cache is only an optimisation
+		}
+
+		return tree;
+	}
+
+	/**
+	 * Reads mappings from the given path into the given {@link MappingSet mapping set},
+	 * using a binary cache stored next to the file.
+	 * <p>
+	 * The resulting {@link Mapping mappings} will use the from namespace
+	 * (as the obfuscated names in Lorenz) to the to namespace (as the
+	 * de-obfuscated names in Lorenz).
+	 *
+	 * @param mappings The mapping set to read to
+	 * @param path The path to the mappings
+	 * @param from The namespace to use in the tiny file, as Lorenz's
+	 *             obfuscated names
+	 * @param to   The namespace to use in the tiny file, as Lorenz's
+	 *             de-obfuscated names
+	 * @return The given mapping set
+	 * @throws IOException if an I/O error occurs reading the file
+	 * @see #loadCached(Path)
+	 * @since 4.1.0
+	 */
+	public MappingSet readCached(final MappingSet mappings, final Path path,
+	                             final String from, final String to) throws IOException {
+		try (final MappingsReader reader = newReader(this.loadCached(path), from, to)) {
+			reader.read(mappings);
+		}
+		return mappings;
+	}
+
+	/**
+	 * Collects the class names of the given namespace, from the source
+	 * namespace of the mappings at the given path.
+	 *
+	 * @return The class names, or {@code null} if the namespace is the
+	 *         source namespace
+	 */
+	Map<String, String> collectClassNames(final Path path, final String namespace) throws IOException {
+		final ClassNameCollector collector = new ClassNameCollector(namespace);
+
+		this.parse(path, collector);
+		return collector.getClassNames();
+	}
+
+	/**
+	 * Parses the mappings at the given path into the given visitor,
+	 * reporting the time spent to the metrics.
+	 */
+	private void parse(final Path path, final MappingVisitor visitor) throws IOException {
+		final TinyMetrics metrics = TinyMappingFormat.metrics;
+		final long start = metrics.isEnabled() ? System.nanoTime() : 0;
+
+		try (final BufferedReader reader = open(path)) {
+			this.accept(reader, visitor);
+		}
+
+		if (metrics.isEnabled()) metrics.phase(TinyMetrics.Phase.PARSE, System.nanoTime() - start);
+	}
+
+	private static TinyMappingsReader newReader(final MappingTree tree, final String from, final String to) {
+		final TinyMappingsReader reader = new TinyMappingsReader(tree, from, to);
+		reader.setMetrics(metrics);
+		return reader;
+	}
+
+	private static <W extends AbstractTinyMappingsWriter> W withMetrics(final W writer) {
+		writer.setMetrics(metrics);
+		return writer;
+	}
+
+	static BufferedReader open(final Path path) throws IOException {
+		final TinyMetrics metrics = TinyMappingFormat.metrics;
+		if (metrics.isEnabled()) metrics.bytesRead(Files.size(path));
+		return Files.newBufferedReader(path);
+	}
+
+	private static <T> CompletableFuture<T> supplyAsync(final Callable<T> task, final Executor executor) {
+		final CompletableFuture<T> future = new CompletableFuture<>();
+		executor.execute(() -> {
+			try {
+				future.complete(task.call());
+			}
+			catch (final Throwable ex) {
+				future.completeExceptionally(ex);
+			}
+		});
+		return future;
+	}
+
+	private static MappingVisitor pooled(final MappingVisitor visitor) {
+		final TinyStringPool pool = stringPool;
+		return pool != null ? new InterningMappingVisitor(visitor, pool) : visitor;
 	}
 
 }
@@ -0,0 +1,356 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import net.fabricmc.mappingio.tree.MappingTree;
+import org.cadixdev.bombe.type.signature.MethodSignature;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.io.MappingsReader;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link MappingsReader mappings reader} for reading mappings
+ * across a chain of {@link MappingTree tiny trees}, resolving every
+ * class, field, method and parameter through the whole chain in
+ * a single traversal.
+ * <p>
+ * The first tree supplies the obfuscated names, and the names to
+ * match against the first {@link Hop hop}. Each hop matches the names
+ * from the previous step against its own tree, and carries on with the
+ * names in its target namespace. The names reached after the final hop
+ * are used as the de-obfuscated names.
+ * <p>
+ * Classes, fields and methods are joined as by repeatedly joining with
+ * {@link TinyMappingsJoiner}, without materializing a
+ * {@link MappingSet mapping set} for each step. Unlike that joiner,
+ * parameters are joined too, matching each one by its local variable
+ * index, or by its position where it has none.
+ *
+ * @see TinyMappingsJoiner
+ * @since 4.1.0
+ */
+public class TinyMappingsChainJoiner extends MappingsReader {
+
+	private final MappingTree tree;
+	private final String from;
+	private final String out;
+	private final List<Hop> hops;
+
+	private TinyMetrics metrics = TinyMetrics.NONE;
+	private TinyStringPool stringPool;
+
+	/**
+	 * Creates a new chain joiner.
+	 *
+	 * @param tree The tree to take the obfuscated names from
+	 * @param from The namespace to use as Lorenz's obfuscated names
+	 * @param out The namespace to match against the first hop
+	 * @param hops The hops, in order
+	 * @throws IllegalArgumentException if no hops are given
+	 */
+	public TinyMappingsChainJoiner(final MappingTree tree, final String from, final String out,
+	                               final List<Hop> hops) {
+		if (hops.isEmpty()) {
+			throw new IllegalArgumentException("At least one hop is required");
+		}
+
+		this.tree = tree;
+		this.from = from;
+		this.out = out;
+		this.hops = Collections.unmodifiableList(new ArrayList<>(hops));
+	}
+
+	/**
+	 * Sets the metrics to report joining to.
+	 *
+	 * @param metrics The metrics
+	 */
+	public void setMetrics(final TinyMetrics metrics) {
+		this.metrics = metrics != null ? metrics : TinyMetrics.NONE;
+	}
+
+	/**
+	 * Sets the pool to intern names and descriptors with, as they are
+	 * joined. This is only needed where the trees were not already
+	 * loaded through the same pool.
+	 *
+	 * @param stringPool The pool, or {@code null} to not intern names
+	 */
+	public void setStringPool(final TinyStringPool stringPool) {
+		this.stringPool = stringPool;
+	}
+
+	@Override
+	public MappingSet read(final MappingSet mappings) {
+		final long start = this.metrics.isEnabled() ? System.nanoTime() : 0;
+
+		for (final MappingTree.ClassMapping klass : this.tree.getClasses()) {
+			this.readClass(mappings, klass);
+		}
+
+		if (this.metrics.isEnabled()) this.metrics.phase(TinyMetrics.Phase.PROBE, System.nanoTime() - start);
+		return mappings;
+	}
+
+	/**
+	 * Reads the joined mappings into the given {@link MappingSet mapping set},
+	 * resolving classes concurrently on the given executor.
+	 *
+	 * @param mappings The mapping set to read to
+	 * @param executor The executor to resolve classes on
+	 * @return The given mapping set
+	 * @see TinyMappingsJoiner#read(MappingSet, Executor)
+	 */
+	public MappingSet read(final MappingSet mappings, final Executor executor) {
+		final long start = this.metrics.isEnabled() ? System.nanoTime() : 0;
+
+		ClassPartitions.forEach(mappings, this.tree.getClasses(),
+				klass -> klass.getName(this.from), klass -> this.readClass(mappings, klass),
+				executor);
+
+		if (this.metrics.isEnabled()) this.metrics.phase(TinyMetrics.Phase.PROBE, System.nanoTime() - start);
+		return mappings;
+	}
+
+	private void readClass(final MappingSet mappings, final MappingTree.ClassMapping start) {
+		final ClassMapping<?, ?> klass = mappings.getOrCreateClassMapping(this.intern(start.getName(this.from)));
+
+		final boolean measure = this.metrics.isEnabled();
+		final TinyStringPool types = this.typePool();
+		final String owner = start.getName(this.out);
+		if (owner == null) return;
+
+		final String className = this.resolveClass(owner);
+		if (className != null) {
+			klass.setDeobfuscatedName(this.intern(className));
+		}
+		else if (measure) {
+			this.metrics.joinMiss(TinyMetrics.Element.CLASS, owner);
+		}
+
+		int fields = 0;
+		int methods = 0;
+		int params = 0;
+
+		for (final MappingTree.FieldMapping field : start.getFields()) {
+			final MappingTree.FieldMapping resolved = this.resolveField(owner, field);
+			final String deobfName = resolved != null ? resolved.getName(this.last().to) : null;
+
+			if (deobfName != null) {
+				this.getOrCreateField(klass, types, field.getName(this.from), field.getDesc(this.from))
+						.setDeobfuscatedName(this.intern(deobfName));
+				fields++;
+			}
+			else if (measure && resolved == null) {
+				this.metrics.joinMiss(TinyMetrics.Element.FIELD, owner + '.' + field.getName(this.out));
+			}
+		}
+
+		for (final MappingTree.MethodMapping method : start.getMethods()) {
+			// The method at each hop, resolved once and shared by all of its parameters
+			final MappingTree.MethodMapping[] chain = this.resolveMethod(owner, method);
+			final MappingTree.MethodMapping resolved = chain != null ? chain[chain.length - 1] : null;
+			final String deobfName = resolved != null ? resolved.getName(this.last().to) : null;
+
+			if (deobfName == null) {
+				if (measure && resolved == null) {
+					this.metrics.joinMiss(TinyMetrics.Element.METHOD, owner + '.' + method.getName(this.out) + method.getDesc(this.out));
+				}
+				continue;
+			}
+			methods++;
+
+			final MethodMapping methodMapping = this.getOrCreateMethod(klass, types, method.getName(this.from), method.getDesc(this.from))
+					.setDeobfuscatedName(this.intern(deobfName));
+
+			for (final MappingTree.MethodArgMapping arg : method.getArgs()) {
+				final String argName = this.resolveArg(chain, arg);
+
+				if (argName != null) {
+					methodMapping.getOrCreateParameterMapping(arg.getArgPosition())
+							.setDeobfuscatedName(this.intern(argName));
+					params++;
+				}
+			}
+		}
+
+		if (measure) {
+			this.metrics.count(TinyMetrics.Element.CLASS, 1);
+			this.metrics.count(TinyMetrics.Element.FIELD, fields);
+			this.metrics.count(TinyMetrics.Element.METHOD, methods);
+			this.metrics.count(TinyMetrics.Element.PARAMETER, params);
+		}
+	}
+
+	private FieldMapping getOrCreateField(final ClassMapping<?, ?> klass, final TinyStringPool types,
+	                                      final String name, final String desc) {
+		if (types == null || desc == null) return klass.getOrCreateFieldMapping(this.intern(name), this.intern(desc));
+
+		return klass.getOrCreateFieldMapping(this.intern(name), types.internFieldType(desc));
+	}
+
+	private MethodMapping getOrCreateMethod(final ClassMapping<?, ?> klass, final TinyStringPool types,
+	                                        final String name, final String desc) {
+		if (types == null || desc == null) return klass.getOrCreateMethodMapping(this.intern(name), this.intern(desc));
+
+		return klass.getOrCreateMethodMapping(new MethodSignature(this.intern(name), types.internMethodDescriptor(desc)));
+	}
+
+	/**
+	 * Gets the pool to parse descriptors through, falling back to that of
+	 * the formats, as trees loaded through it only have their strings pooled.
+	 */
+	private TinyStringPool typePool() {
+		return this.stringPool != null ? this.stringPool : TinyMappingFormat.getStringPool();
+	}
+
+	private String intern(final String string) {
+		return this.stringPool != null ? this.stringPool.intern(string) : string;
+	}
+
+	private String resolveClass(String name) {
+		for (final Hop hop : this.hops) {
+			if (name == null) return null;
+
+			final MappingTree.ClassMapping klass = hop.index.getClass(name);
+			if (klass == null) return null;
+
+			name = klass.getName(hop.to);
+		}
+		return name;
+	}
+
+	private MappingTree.FieldMapping resolveField(String owner, final MappingTree.FieldMapping start) {
+		String name = start.getName(this.out);
+		String desc = start.getDesc(this.out);
+		MappingTree.FieldMapping field = null;
+
+		for (final Hop hop : this.hops) {
+			if (owner == null || name == null) return null;
+
+			field = hop.index.getField(owner, name, desc);
+			if (field == null) return null;
+
+			owner = field.getOwner().getName(hop.to);
+			name = field.getName(hop.to);
+			desc = field.getDesc(hop.to);
+		}
+		return field;
+	}
+
+	/**
+	 * Resolves the given method through every hop.
+	 *
+	 * @return The method matched at each hop, or {@code null} if any hop has no match
+	 */
+	private MappingTree.MethodMapping[] resolveMethod(String owner, final MappingTree.MethodMapping start) {
+		String name = start.getName(this.out);
+		String desc = start.getDesc(this.out);
+		final MappingTree.MethodMapping[] chain = new MappingTree.MethodMapping[this.hops.size()];
+
+		for (int i = 0; i < chain.length; i++) {
+			if (owner == null || name == null) return null;
+
+			final Hop hop = this.hops.get(i);
+			final MappingTree.MethodMapping method = hop.index.getMethod(owner, name, desc);
+			if (method == null) return null;
+
+			chain[i] = method;
+			owner = method.getOwner().getName(hop.to);
+			name = method.getName(hop.to);
+			desc = method.getDesc(hop.to);
+		}
+		return chain;
+	}
+
+	private String resolveArg(final MappingTree.MethodMapping[] chain, final MappingTree.MethodArgMapping startArg) {
+		MappingTree.MethodArgMapping arg = startArg;
+
+		for (final MappingTree.MethodMapping method : chain) {
+			arg = findArg(method, arg);
+			if (arg == null) return null;
+		}
+		return arg.getName(this.last().to);
+	}
+
+	private static MappingTree.MethodArgMapping findArg(final MappingTree.MethodMapping method,
+	                                                    final MappingTree.MethodArgMapping arg) {
+		for (final MappingTree.MethodArgMapping candidate : method.getArgs()) {
+			if (arg.getLvIndex() >= 0 ? candidate.getLvIndex() == arg.getLvIndex() :
+					arg.getArgPosition() >= 0 && candidate.getArgPosition() == arg.getArgPosition()) {
+				return candidate;
+			}
+		}
+		return null;
+	}
+
+	private Hop last() {
+		return this.hops.get(this.hops.size() - 1);
+	}
+
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * A single step in a chain of joins.
+	 */
+	public static final class Hop {
+
+		private final TinyMappingsJoinIndex index;
+		private final String to;
+
+		/**
+		 * Creates a hop, matching against the given tree.
+		 *
+		 * @param tree The tree to match against
+		 * @param match The namespace in the tree to match names from the previous step
+		 * @param to The namespace in the tree to continue with
+		 */
+		public Hop(final MappingTree tree, final String match, final String to) {
+			this(new TinyMappingsJoinIndex(tree, match), to);
+		}
+
+		/**
+		 * Creates a hop, matching against a prebuilt index.
+		 *
+		 * @param index The index to match names from the previous step against
+		 * @param to The namespace in the indexed tree to continue with
+		 */
+		public Hop(final TinyMappingsJoinIndex index, final String to) {
+			this.index = index;
+			this.to = to;
+		}
+
+	}
+
+}
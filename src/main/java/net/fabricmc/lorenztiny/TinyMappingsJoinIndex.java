@@ -0,0 +1,176 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import net.fabricmc.mappingio.tree.MappingTree;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * An index over a {@link MappingTree tiny tree}, for matching classes
+ * and members by their names in a single namespace.
+ * <p>
+ * Members are keyed by their owner, name and descriptor, so overloads
+ * and identically named members of different classes never collide.
+ * The index is immutable once built, and can be shared between any number
+ * of {@link TinyMappingsJoiner joiners} and threads.
+ *
+ * @see TinyMappingsJoiner
+ * @since 4.1.0
+ */
+public final class TinyMappingsJoinIndex {
+
+	private final MappingTree tree;
+	private final String namespace;
+
+	private final Map<String, MappingTree.ClassMapping> classes = new HashMap<>();
+	private final Map<MemberKey, MappingTree.FieldMapping> fields = new HashMap<>();
+	private final Map<MemberKey, MappingTree.MethodMapping> methods = new HashMap<>();
+
+	/**
+	 * Builds an index over the given tree.
+	 *
+	 * @param tree The tiny tree to index
+	 * @param namespace The namespace to index names by
+	 */
+	public TinyMappingsJoinIndex(final MappingTree tree, final String namespace) {
+		this.tree = tree;
+		this.namespace = namespace;
+
+		for (final MappingTree.ClassMapping klass : tree.getClasses()) {
+			final String owner = klass.getName(namespace);
+			if (owner == null) continue;
+
+			this.classes.put(owner, klass);
+
+			for (final MappingTree.FieldMapping field : klass.getFields()) {
+				final String name = field.getName(namespace);
+				if (name == null) continue;
+
+				this.fields.put(new MemberKey(owner, name, field.getDesc(namespace)), field);
+			}
+
+			for (final MappingTree.MethodMapping method : klass.getMethods()) {
+				final String name = method.getName(namespace);
+				if (name == null) continue;
+
+				this.methods.put(new MemberKey(owner, name, method.getDesc(namespace)), method);
+			}
+		}
+	}
+
+	/**
+	 * Gets the indexed tree.
+	 *
+	 * @return The tree
+	 */
+	public MappingTree getTree() {
+		return this.tree;
+	}
+
+	/**
+	 * Gets the namespace names are indexed by.
+	 *
+	 * @return The namespace
+	 */
+	public String getNamespace() {
+		return this.namespace;
+	}
+
+	/**
+	 * Gets the class with the given name.
+	 *
+	 * @param name The name of the class
+	 * @return The class, or {@code null} if there is no such class
+	 */
+	public MappingTree.ClassMapping getClass(final String name) {
+		return this.classes.get(name);
+	}
+
+	/**
+	 * Gets the field with the given owner, name and descriptor.
+	 * <p>
+	 * Fields indexed without a descriptor will match any descriptor.
+	 *
+	 * @param owner The name of the owning class
+	 * @param name The name of the field
+	 * @param desc The descriptor of the field, may be {@code null}
+	 * @return The field, or {@code null} if there is no such field
+	 */
+	public MappingTree.FieldMapping getField(final String owner, final String name, final String desc) {
+		final MappingTree.FieldMapping field = this.fields.get(new MemberKey(owner, name, desc));
+		if (field != null || desc == null) return field;
+
+		return this.fields.get(new MemberKey(owner, name, null));
+	}
+
+	/**
+	 * Gets the method with the given owner, name and descriptor.
+	 *
+	 * @param owner The name of the owning class
+	 * @param name The name of the method
+	 * @param desc The descriptor of the method
+	 * @return The method, or {@code null} if there is no such method
+	 */
+	public MappingTree.MethodMapping getMethod(final String owner, final String name, final String desc) {
+		return this.methods.get(new MemberKey(owner, name, desc));
+	}
+
+	private static final class MemberKey {
+
+		private final String owner;
+		private final String name;
+		private final String desc;
+		private final int hash;
+
+		MemberKey(final String owner, final String name, final String desc) {
+			this.owner = owner;
+			this.name = name;
+			this.desc = desc;
+			this.hash = (owner.hashCode() * 31 + name.hashCode()) * 31 + Objects.hashCode(desc);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof MemberKey)) return false;
+
+			final MemberKey that = (MemberKey) obj;
+			return this.hash == that.hash &&
+					this.owner.equals(that.owner) &&
+					this.name.equals(that.name) &&
+					Objects.equals(this.desc, that.desc);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+	}
+
+}
@@ -25,12 +25,15 @@
 package net.fabricmc.lorenztiny;
 
 import net.fabricmc.mappingio.tree.MappingTree;
+import org.cadixdev.bombe.type.signature.MethodSignature;
 import org.cadixdev.lorenz.MappingSet;
 import org.cadixdev.lorenz.io.MappingsReader;
 import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.Mapping;
+import org.cadixdev.lorenz.model.MethodMapping;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.Executor;
 
 /**
  * A {@link MappingsReader mappings reader} for reading mappings
@@ -50,6 +53,10 @@ public class TinyMappingsJoiner extends MappingsReader {
 	private final String to;
 	private final String matchB;
 
+	private TinyMappingsJoinIndex indexB;
+	private TinyMetrics metrics = TinyMetrics.NONE;
+	private TinyStringPool stringPool;
+
 	public TinyMappingsJoiner(final MappingTree treeA, final String from, final String matchA,
 	                          final MappingTree treeB, final String to, final String matchB) {
 		this.treeA = treeA;
@@ -66,65 +73,196 @@ public class TinyMappingsJoiner extends MappingsReader {
 		this(treeA, from, match, treeB, to, match);
 	}
 
+	/**
+	 * Creates a joiner matching against a prebuilt index, which may
+	 * be shared between many joiners.
+	 *
+	 * @param treeA The tree to take the obfuscated names from
+	 * @param from The namespace in tree A to use as Lorenz's obfuscated names
+	 * @param matchA The namespace in tree A to match against the index
+	 * @param indexB The index of the tree to take the de-obfuscated names from
+	 * @param to The namespace in the indexed tree to use as Lorenz's de-obfuscated names
+	 * @since 4.1.0
+	 */
+	public TinyMappingsJoiner(final MappingTree treeA, final String from, final String matchA,
+	                          final TinyMappingsJoinIndex indexB, final String to) {
+		this(treeA, from, matchA, indexB.getTree(), to, indexB.getNamespace());
+		this.indexB = indexB;
+	}
+
+	/**
+	 * Sets the metrics to report joining to.
+	 *
+	 * @param metrics The metrics
+	 * @since 4.1.0
+	 */
+	public void setMetrics(final TinyMetrics metrics) {
+		this.metrics = metrics != null ? metrics : TinyMetrics.NONE;
+	}
+
+	/**
+	 * Sets the pool to intern names and descriptors with, as they are
+	 * joined. This is only needed where the trees were not already
+	 * loaded through the same pool.
+	 *
+	 * @param stringPool The pool, or {@code null} to not intern names
+	 * @since 4.1.0
+	 */
+	public void setStringPool(final TinyStringPool stringPool) {
+		this.stringPool = stringPool;
+	}
+
 	@Override
 	public MappingSet read(final MappingSet mappings) {
-		// These maps have matched name -> definition from a
-		final Map<String, MappingTree.ClassMapping> classes = new HashMap<>();
-		final Map<String, MappingTree.FieldMapping> fields = new HashMap<>();
-		final Map<String, MappingTree.MethodMapping> methods = new HashMap<>();
+		final TinyMappingsJoinIndex index = this.getIndex();
+		final long start = this.metrics.isEnabled() ? System.nanoTime() : 0;
 
-		for (final MappingTree.ClassMapping klass : this.treeB.getClasses()) {
-			classes.put(klass.getName(this.matchA), klass);
+		for (final MappingTree.ClassMapping classA : this.treeA.getClasses()) {
+			this.readClass(mappings, index, classA);
+		}
 
-			for (final MappingTree.FieldMapping field : klass.getFields()) {
-				fields.put(field.getName(this.matchA), field);
-			}
+		if (this.metrics.isEnabled()) this.metrics.phase(TinyMetrics.Phase.PROBE, System.nanoTime() - start);
+		return mappings;
+	}
 
-			for (final MappingTree.MethodMapping method : klass.getMethods()) {
-				methods.put(method.getName(this.matchA), method);
-			}
+	/**
+	 * Reads the joined mappings into the given {@link MappingSet mapping set},
+	 * probing the classes of tree A concurrently on the given executor,
+	 * typically a {@link java.util.concurrent.ForkJoinPool fork-join pool}.
+	 * <p>
+	 * The resulting mappings are the same as those produced by
+	 * {@link #read(MappingSet)}.
+	 *
+	 * @param mappings The mapping set to read to
+	 * @param executor The executor to probe classes on
+	 * @return The given mapping set
+	 * @since 4.1.0
+	 */
+	public MappingSet read(final MappingSet mappings, final Executor executor) {
+		final TinyMappingsJoinIndex index = this.getIndex();
+		final long start = this.metrics.isEnabled() ? System.nanoTime() : 0;
+
+		ClassPartitions.forEach(mappings, this.treeA.getClasses(),
+				klass -> klass.getName(this.from), klass -> this.readClass(mappings, index, klass),
+				executor);
+
+		if (this.metrics.isEnabled()) this.metrics.phase(TinyMetrics.Phase.PROBE, System.nanoTime() - start);
+		return mappings;
+	}
+
+	private synchronized TinyMappingsJoinIndex getIndex() {
+		if (this.indexB == null) {
+			final long start = this.metrics.isEnabled() ? System.nanoTime() : 0;
+			this.indexB = new TinyMappingsJoinIndex(this.treeB, this.matchB);
+			if (this.metrics.isEnabled()) this.metrics.phase(TinyMetrics.Phase.INDEX, System.nanoTime() - start);
 		}
+		return this.indexB;
+	}
 
-		for (final MappingTree.ClassMapping classA : this.treeA.getClasses()) {
-			final MappingTree.ClassMapping classB = classes.get(classA.getName(this.matchB));
+	private void readClass(final MappingSet mappings, final TinyMappingsJoinIndex index,
+	                       final MappingTree.ClassMapping classA) {
+		final boolean measure = this.metrics.isEnabled();
+		final TinyStringPool types = this.typePool();
+		final String owner = classA.getName(this.matchA);
+		final MappingTree.ClassMapping classB = owner != null ? index.getClass(owner) : null;
 
-			final ClassMapping<?, ?> klass = mappings.getOrCreateClassMapping(classA.getName(this.from));
-			if (classB != null) {
-				String deobfName = classB.getName(this.to);
+		final ClassMapping<?, ?> klass = mappings.getOrCreateClassMapping(this.intern(classA.getName(this.from)));
+		if (classB != null) {
+			String deobfName = this.intern(classB.getName(this.to));
 
-				if (deobfName != null) {
-					klass.setDeobfuscatedName(deobfName);
-				}
+			if (deobfName != null) {
+				if (measure) this.checkCollision(klass, deobfName, TinyMetrics.Element.CLASS);
+				klass.setDeobfuscatedName(deobfName);
 			}
+		}
+		else if (measure) {
+			this.metrics.joinMiss(TinyMetrics.Element.CLASS, owner);
+		}
+
+		if (owner == null) return;
+
+		int fields = 0;
+		int methods = 0;
 
-			for (final MappingTree.FieldMapping fieldA : classA.getFields()) {
-				final MappingTree.FieldMapping fieldB = fields.get(fieldA.getName(this.matchB));
+		for (final MappingTree.FieldMapping fieldA : classA.getFields()) {
+			final String name = fieldA.getName(this.matchA);
+			final MappingTree.FieldMapping fieldB = name != null ?
+					index.getField(owner, name, fieldA.getDesc(this.matchA)) :
+					null;
 
-				if (fieldB != null) {
-					String deobfName = fieldB.getName(this.to);
+			if (fieldB != null) {
+				String deobfName = this.intern(fieldB.getName(this.to));
 
-					if (deobfName != null) {
-						klass.getOrCreateFieldMapping(fieldA.getName(this.from), fieldA.getDesc(this.from))
-								.setDeobfuscatedName(deobfName);
-					}
+				if (deobfName != null) {
+					final FieldMapping field = this.getOrCreateField(klass, types, fieldA.getName(this.from), fieldA.getDesc(this.from));
+					if (measure) this.checkCollision(field, deobfName, TinyMetrics.Element.FIELD);
+					field.setDeobfuscatedName(deobfName);
+					fields++;
 				}
 			}
+			else if (measure) {
+				this.metrics.joinMiss(TinyMetrics.Element.FIELD, owner + '.' + name);
+			}
+		}
 
-			for (final MappingTree.MethodMapping methodA : classA.getMethods()) {
-				final MappingTree.MethodMapping methodB = methods.get(methodA.getName(this.matchB));
+		for (final MappingTree.MethodMapping methodA : classA.getMethods()) {
+			final String name = methodA.getName(this.matchA);
+			final MappingTree.MethodMapping methodB = name != null ?
+					index.getMethod(owner, name, methodA.getDesc(this.matchA)) :
+					null;
 
-				if (methodB != null) {
-					String deobfName = methodB.getName(this.to);
+			if (methodB != null) {
+				String deobfName = this.intern(methodB.getName(this.to));
 
-					if (deobfName != null) {
-						klass.getOrCreateMethodMapping(methodA.getName(this.from), methodA.getDesc(this.from))
-								.setDeobfuscatedName(deobfName);
-					}
+				if (deobfName != null) {
+					final MethodMapping method = this.getOrCreateMethod(klass, types, methodA.getName(this.from), methodA.getDesc(this.from));
+					if (measure) this.checkCollision(method, deobfName, TinyMetrics.Element.METHOD);
+					method.setDeobfuscatedName(deobfName);
+					methods++;
 				}
 			}
+			else if (measure) {
+				this.metrics.joinMiss(TinyMetrics.Element.METHOD, owner + '.' + name + methodA.getDesc(this.matchA));
+			}
 		}
 
-		return mappings;
+		if (measure) {
+			this.metrics.count(TinyMetrics.Element.CLASS, 1);
+			this.metrics.count(TinyMetrics.Element.FIELD, fields);
+			this.metrics.count(TinyMetrics.Element.METHOD, methods);
+		}
+	}
+
+	private FieldMapping getOrCreateField(final ClassMapping<?, ?> klass, final TinyStringPool types,
+	                                      final String name, final String desc) {
+		if (types == null || desc == null) return klass.getOrCreateFieldMapping(this.intern(name), this.intern(desc));
+
+		return klass.getOrCreateFieldMapping(this.intern(name), types.internFieldType(desc));
+	}
+
+	private MethodMapping getOrCreateMethod(final ClassMapping<?, ?> klass, final TinyStringPool types,
+	                                        final String name, final String desc) {
+		if (types == null || desc == null) return klass.getOrCreateMethodMapping(this.intern(name), this.intern(desc));
+
+		return klass.getOrCreateMethodMapping(new MethodSignature(this.intern(name), types.internMethodDescriptor(desc)));
+	}
+
+	/**
+	 * Gets the pool to parse descriptors through, falling back to that of
+	 * the formats, as trees loaded through it only have their strings pooled.
+	 */
+	private TinyStringPool typePool() {
+		return this.stringPool != null ? this.stringPool : TinyMappingFormat.getStringPool();
+	}
+
+	private String intern(final String string) {
+		return this.stringPool != null ? this.stringPool.intern(string) : string;
+	}
+
+	private void checkCollision(final Mapping<?, ?> mapping, final String deobfName, final TinyMetrics.Element element) {
+		if (mapping.hasDeobfuscatedName() && !deobfName.equals(mapping.getDeobfuscatedName())) {
+			this.metrics.collision(element, mapping.getFullObfuscatedName());
+		}
 	}
 
 	@Override
@@ -24,9 +24,12 @@
 
 package net.fabricmc.lorenztiny;
 
+import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 import org.cadixdev.lorenz.MappingSet;
 import org.cadixdev.lorenz.io.MappingsWriter;
 import org.cadixdev.lorenz.model.ClassMapping;
@@ -43,78 +46,136 @@ import org.cadixdev.lorenz.model.MethodMapping;
  */
 public class TinyMappingsLegacyWriter extends AbstractTinyMappingsWriter {
 
-	private final List<ClassMapping<?, ?>> classMappings = new ArrayList<>();
-	private final List<FieldMapping> fieldMappings = new ArrayList<>();
-	private final List<MethodMapping> methodMappings = new ArrayList<>();
-
 	public TinyMappingsLegacyWriter(final Writer writer, final String from, final String to) {
 		super(writer, from, to);
 	}
 
+	/**
+	 * Creates a writer encoding the mappings as UTF-8 to the given stream.
+	 *
+	 * @param stream The stream to write to
+	 * @param from The namespace to place the obfuscated names under
+	 * @param to The namespace to place the deobfuscated names under
+	 * @since 4.1.0
+	 */
+	public TinyMappingsLegacyWriter(final OutputStream stream, final String from, final String to) {
+		super(stream, from, to);
+	}
+
+	/**
+	 * Creates a writer encoding the mappings as UTF-8 to the given channel.
+	 *
+	 * @param channel The channel to write to
+	 * @param from The namespace to place the obfuscated names under
+	 * @param to The namespace to place the deobfuscated names under
+	 * @since 4.1.0
+	 */
+	public TinyMappingsLegacyWriter(final WritableByteChannel channel, final String from, final String to) {
+		super(channel, from, to);
+	}
+
 	@Override
 	public void write(final MappingSet mappings) {
+		final boolean measure = this.metrics.isEnabled();
+		final long start = measure ? System.nanoTime() : 0;
+		final long written = this.getOutput().getWritten();
+		long sorting = 0;
+
 		this.writeHeaderLine();
 
-		mappings.getTopLevelClassMappings().forEach(this::collectMappings);
+		// Each section is collected, sorted in place and written before the next,
+		// so only one section's worth of references is held at a time
+		final List<ClassMapping<?, ?>> classes = new ArrayList<>();
+		mappings.getTopLevelClassMappings().forEach(klass -> collectClasses(klass, classes));
+		sorting += this.sort(classes, this.getConfig().getClassMappingComparator());
+		if (measure) this.metrics.count(TinyMetrics.Element.CLASS, classes.size());
+		classes.forEach(this::writeClassMapping);
+		classes.clear();
+
+		final List<FieldMapping> fields = new ArrayList<>();
+		forEachClass(mappings, klass -> {
+			for (final FieldMapping field : klass.getFieldMappings()) {
+				if (field.hasDeobfuscatedName()) fields.add(field);
+			}
+		});
+		sorting += this.sort(fields, this.getConfig().getFieldMappingComparator());
+		if (measure) this.metrics.count(TinyMetrics.Element.FIELD, fields.size());
+		fields.forEach(this::writeFieldMapping);
+		fields.clear();
+
+		final List<MethodMapping> methods = new ArrayList<>();
+		forEachClass(mappings, klass -> {
+			for (final MethodMapping method : klass.getMethodMappings()) {
+				if (method.hasDeobfuscatedName()) methods.add(method);
+			}
+		});
+		sorting += this.sort(methods, this.getConfig().getMethodMappingComparator());
+		if (measure) this.metrics.count(TinyMetrics.Element.METHOD, methods.size());
+		methods.forEach(this::writeMethodMapping);
+
+		this.getOutput().flush();
+		if (measure) this.reportWrite(start, sorting, written);
+	}
 
-		this.classMappings.stream()
-				.filter(ClassMapping::hasDeobfuscatedName)
-				.sorted(this.getConfig().getClassMappingComparator())
-				.forEach(this::writeClassMapping);
+	private void writeHeaderLine() {
+		this.getOutput().append("v1\t")
+				.append(this.from)
+				.append('\t')
+				.append(this.to)
+				.newLine();
+	}
 
-		this.fieldMappings.stream()
-				.filter(FieldMapping::hasDeobfuscatedName)
-				.sorted(this.getConfig().getFieldMappingComparator())
-				.forEach(this::writeFieldMapping);
+	private static void collectClasses(final ClassMapping<?, ?> mapping, final List<ClassMapping<?, ?>> classes) {
+		if (mapping.hasDeobfuscatedName()) classes.add(mapping);
 
-		this.methodMappings.stream()
-				.filter(MethodMapping::hasDeobfuscatedName)
-				.sorted(this.getConfig().getMethodMappingComparator())
-				.forEach(this::writeMethodMapping);
+		for (final ClassMapping<?, ?> inner : mapping.getInnerClassMappings()) {
+			collectClasses(inner, classes);
+		}
 	}
 
-	private void writeHeaderLine() {
-		this.writer.print("v1\t");
-		this.writer.print(this.from);
-		this.writer.print('\t');
-		this.writer.print(this.to);
-		this.writer.println();
+	private static void forEachClass(final MappingSet mappings, final Consumer<ClassMapping<?, ?>> consumer) {
+		for (final ClassMapping<?, ?> klass : mappings.getTopLevelClassMappings()) {
+			forEachClass(klass, consumer);
+		}
 	}
 
-	private void collectMappings(final ClassMapping<?, ?> mapping) {
-		this.classMappings.add(mapping);
+	private static void forEachClass(final ClassMapping<?, ?> mapping, final Consumer<ClassMapping<?, ?>> consumer) {
+		consumer.accept(mapping);
 
-		this.fieldMappings.addAll(mapping.getFieldMappings());
-		this.methodMappings.addAll(mapping.getMethodMappings());
-		mapping.getInnerClassMappings().forEach(this::collectMappings);
+		for (final ClassMapping<?, ?> inner : mapping.getInnerClassMappings()) {
+			forEachClass(inner, consumer);
+		}
 	}
 
 	private void writeClassMapping(final ClassMapping<?, ?> mapping) {
-		this.writer.print("CLASS\t");
-		this.writer.print(mapping.getFullObfuscatedName());
-		this.writer.print('\t');
-		this.writer.println(mapping.getFullDeobfuscatedName());
+		this.getOutput().append("CLASS\t")
+				.append(mapping.getFullObfuscatedName())
+				.append('\t')
+				.append(mapping.getFullDeobfuscatedName())
+				.newLine();
 	}
 
 	private void writeFieldMapping(final FieldMapping mapping) {
-		this.writer.print("FIELD\t");
-		this.writer.print(mapping.getParent().getFullObfuscatedName());
-		this.writer.print('\t');
-		this.writer.print(this.requireType(mapping));
-		this.writer.print('\t');
-		this.writer.print(mapping.getObfuscatedName());
-		this.writer.print('\t');
-		this.writer.println(mapping.getDeobfuscatedName());
+		this.getOutput().append("FIELD\t")
+				.append(mapping.getParent().getFullObfuscatedName())
+				.append('\t')
+				.type(this.requireType(mapping))
+				.append('\t')
+				.append(mapping.getObfuscatedName())
+				.append('\t')
+				.append(mapping.getDeobfuscatedName())
+				.newLine();
 	}
 
 	private void writeMethodMapping(final MethodMapping mapping) {
-		this.writer.print("METHOD\t");
-		this.writer.print(mapping.getParent().getFullObfuscatedName());
-		this.writer.print('\t');
-		this.writer.print(mapping.getObfuscatedDescriptor());
-		this.writer.print('\t');
-		this.writer.print(mapping.getObfuscatedName());
-		this.writer.print('\t');
-		this.writer.println(mapping.getDeobfuscatedName());
+		this.getOutput().append("METHOD\t")
+				.append(mapping.getParent().getFullObfuscatedName())
+				.append('\t')
+				.descriptor(mapping.getDescriptor())
+				.append('\t')
+				.append(mapping.getObfuscatedName())
+				.append('\t')
+				.append(mapping.getDeobfuscatedName())
+				.newLine();
 	}
 }
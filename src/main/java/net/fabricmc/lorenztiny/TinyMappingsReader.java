@@ -25,11 +25,16 @@
 package net.fabricmc.lorenztiny;
 
 import net.fabricmc.mappingio.tree.MappingTree;
+import org.cadixdev.bombe.type.signature.MethodSignature;
 import org.cadixdev.lorenz.MappingSet;
 import org.cadixdev.lorenz.io.MappingsReader;
 import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.Mapping;
 import org.cadixdev.lorenz.model.MethodMapping;
 
+import java.util.concurrent.Executor;
+
 /**
  * A {@link MappingsReader mappings reader} for Fabric's Tiny
  * format.
@@ -45,6 +50,9 @@ public class TinyMappingsReader extends MappingsReader {
 	private final String from;
 	private final String to;
 
+	private TinyMetrics metrics = TinyMetrics.NONE;
+	private TinyStringPool stringPool;
+	// Set while reading into an empty mapping set using descriptor caching mappings
 	/**
 	 * Creates a new mappings reader for Fabric's Tiny format, from a
 	 * {@link MappingTree tiny tree}.
@@ -69,30 +77,167 @@ public class TinyMappingsReader extends MappingsReader {
 		this.validateNamespace(tree, to);
 	}
 
+	/**
+	 * Sets the metrics to report conversion to.
+	 *
+	 * @param metrics The metrics
+	 * @since 4.1.0
+	 */
+	public void setMetrics(final TinyMetrics metrics) {
+		this.metrics = metrics != null ? metrics : TinyMetrics.NONE;
+	}
+
+	/**
+	 * Sets the pool to intern names and descriptors with, as they are
+	 * converted. This is only needed where the tree was not already
+	 * loaded through the same pool.
+	 * <p>
+	 * Member descriptors are parsed through this pool, or otherwise through
+	 * the {@link TinyMappingFormat#getStringPool() pool of the formats}, so
+	 * that equal descriptors share the one parsed type.
+	 *
+	 * @param stringPool The pool, or {@code null} to not intern names
+	 * @since 4.1.0
+	 */
+	public void setStringPool(final TinyStringPool stringPool) {
+		this.stringPool = stringPool;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * When reading into an empty mapping set created by a
+	 * {@link DescriptorCachingModelFactory descriptor caching factory},
+	 * the de-obfuscated descriptors of all fields and methods are taken
+	 * from the tree as they are read.
+	 */
 	@Override
 	public MappingSet read(final MappingSet mappings) {
+		final long start = this.metrics.isEnabled() ? System.nanoTime() : 0;
+		final DescriptorCachingModelFactory presets = presetsFor(mappings);
+
 		for (final MappingTree.ClassMapping klass : this.tree.getClasses()) {
-			final ClassMapping<?, ?> mapping = mappings.getOrCreateClassMapping(klass.getName(this.from))
-					.setDeobfuscatedName(klass.getName(this.to));
+			this.readClass(mappings, klass, presets);
+		}
+		if (presets != null) presets.seal(mappings);
 
-			for (final MappingTree.FieldMapping field : klass.getFields()) {
-				mapping.getOrCreateFieldMapping(field.getName(this.from), field.getDesc(this.from))
-						.setDeobfuscatedName(field.getName(this.to));
-			}
+		if (this.metrics.isEnabled()) this.metrics.phase(TinyMetrics.Phase.CONVERT, System.nanoTime() - start);
+		return mappings;
+	}
+
+	/**
+	 * Reads the mappings into the given {@link MappingSet mapping set},
+	 * converting classes concurrently on the given executor.
+	 * <p>
+	 * Classes are partitioned by their top-level class, so that no two
+	 * tasks ever insert into the same class mapping. The resulting mappings
+	 * are the same as those produced by {@link #read(MappingSet)}.
+	 *
+	 * @param mappings The mapping set to read to
+	 * @param executor The executor to convert classes on
+	 * @return The given mapping set
+	 * @since 4.1.0
+	 */
+	public MappingSet read(final MappingSet mappings, final Executor executor) {
+		final long start = this.metrics.isEnabled() ? System.nanoTime() : 0;
+		final DescriptorCachingModelFactory presets = presetsFor(mappings);
 
-			for (final MappingTree.MethodMapping method : klass.getMethods()) {
-				final MethodMapping methodmapping = mapping
-						.getOrCreateMethodMapping(method.getName(this.from), method.getDesc(this.from))
-						.setDeobfuscatedName(method.getName(this.to));
+		ClassPartitions.forEach(mappings, this.tree.getClasses(),
+				klass -> klass.getName(this.from), klass -> this.readClass(mappings, klass, presets),
+				executor);
+		if (presets != null) presets.seal(mappings);
 
-				for (final MappingTree.MethodArgMapping param : method.getArgs()) {
-					methodmapping.getOrCreateParameterMapping(param.getArgPosition())
-							.setDeobfuscatedName(param.getName(this.to));
-				}
+		if (this.metrics.isEnabled()) this.metrics.phase(TinyMetrics.Phase.CONVERT, System.nanoTime() - start);
+		return mappings;
+	}
+
+	void readClass(final MappingSet mappings, final MappingTree.ClassMapping klass) {
+		this.readClass(mappings, klass, null);
+	}
+
+	/**
+	 * Reads a single class, presetting the de-obfuscated descriptors of its
+	 * members where given a factory to preset them in.
+	 */
+	private void readClass(final MappingSet mappings, final MappingTree.ClassMapping klass,
+	                       final DescriptorCachingModelFactory presets) {
+		final boolean measure = this.metrics.isEnabled();
+		final TinyStringPool types = this.typePool();
+		int params = 0;
+
+		final ClassMapping<?, ?> mapping = mappings.getOrCreateClassMapping(this.intern(klass.getName(this.from)));
+		this.rename(mapping, this.intern(klass.getName(this.to)), TinyMetrics.Element.CLASS, measure);
+
+		for (final MappingTree.FieldMapping field : klass.getFields()) {
+			final FieldMapping fieldmapping = this.getOrCreateField(mapping, types, field);
+			this.rename(fieldmapping, this.intern(field.getName(this.to)), TinyMetrics.Element.FIELD, measure);
+			if (presets != null) presets.preset(fieldmapping, field.getDesc(this.to));
+		}
+
+		for (final MappingTree.MethodMapping method : klass.getMethods()) {
+			final MethodMapping methodmapping = this.getOrCreateMethod(mapping, types, method);
+			this.rename(methodmapping, this.intern(method.getName(this.to)), TinyMetrics.Element.METHOD, measure);
+			if (presets != null) presets.preset(methodmapping, method.getDesc(this.to));
+
+			for (final MappingTree.MethodArgMapping param : method.getArgs()) {
+				this.rename(methodmapping.getOrCreateParameterMapping(param.getArgPosition()),
+						this.intern(param.getName(this.to)), TinyMetrics.Element.PARAMETER, measure);
+				params++;
 			}
 		}
 
-		return mappings;
+		if (measure) {
+			this.metrics.count(TinyMetrics.Element.CLASS, 1);
+			this.metrics.count(TinyMetrics.Element.FIELD, klass.getFields().size());
+			this.metrics.count(TinyMetrics.Element.METHOD, klass.getMethods().size());
+			this.metrics.count(TinyMetrics.Element.PARAMETER, params);
+		}
+	}
+
+	private static DescriptorCachingModelFactory presetsFor(final MappingSet mappings) {
+		// Descriptors from the tree only hold when the tree is all there is to the set
+		if (mappings.getModelFactory() instanceof DescriptorCachingModelFactory && mappings.getTopLevelClassMappings().isEmpty()) {
+			return (DescriptorCachingModelFactory) mappings.getModelFactory();
+		}
+		return null;
+	}
+
+	private FieldMapping getOrCreateField(final ClassMapping<?, ?> mapping, final TinyStringPool types,
+	                                      final MappingTree.FieldMapping field) {
+		final String name = this.intern(field.getName(this.from));
+		final String desc = field.getDesc(this.from);
+		if (types == null || desc == null) return mapping.getOrCreateFieldMapping(name, this.intern(desc));
+
+		return mapping.getOrCreateFieldMapping(name, types.internFieldType(desc));
+	}
+
+	private MethodMapping getOrCreateMethod(final ClassMapping<?, ?> mapping, final TinyStringPool types,
+	                                        final MappingTree.MethodMapping method) {
+		final String name = this.intern(method.getName(this.from));
+		final String desc = method.getDesc(this.from);
+		if (types == null || desc == null) return mapping.getOrCreateMethodMapping(name, this.intern(desc));
+
+		return mapping.getOrCreateMethodMapping(new MethodSignature(name, types.internMethodDescriptor(desc)));
+	}
+
+	/**
+	 * Gets the pool to parse descriptors through, falling back to that of
+	 * the formats, as trees loaded through it only have their strings pooled.
+	 */
+	private TinyStringPool typePool() {
+		return this.stringPool != null ? this.stringPool : TinyMappingFormat.getStringPool();
+	}
+
+	private String intern(final String string) {
+		return this.stringPool != null ? this.stringPool.intern(string) : string;
+	}
+
+	private void rename(final Mapping<?, ?> mapping, final String deobfName, final TinyMetrics.Element element,
+	                    final boolean measure) {
+		if (measure && deobfName != null && mapping.hasDeobfuscatedName() && !deobfName.equals(mapping.getDeobfuscatedName())) {
+			this.metrics.collision(element, mapping.getFullObfuscatedName());
+		}
+		mapping.setDeobfuscatedName(deobfName);
 	}
 
 	@Override
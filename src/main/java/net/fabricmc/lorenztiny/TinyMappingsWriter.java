@@ -24,13 +24,24 @@
 
 package net.fabricmc.lorenztiny;
 
+import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import org.cadixdev.lorenz.MappingSet;
 import org.cadixdev.lorenz.model.ClassMapping;
 import org.cadixdev.lorenz.model.FieldMapping;
 import org.cadixdev.lorenz.model.MethodMapping;
 import org.cadixdev.lorenz.model.MethodParameterMapping;
+import org.cadixdev.lorenz.model.TopLevelClassMapping;
 
 /**
  * A {@link org.cadixdev.lorenz.io.MappingsWriter mappings writer} for Fabric's v2
@@ -42,77 +53,169 @@ import org.cadixdev.lorenz.model.MethodParameterMapping;
  */
 public class TinyMappingsWriter extends AbstractTinyMappingsWriter {
 
+	// The number of classes that may be rendered ahead of the output
+	private static final int RENDER_WINDOW = 256;
+
+	private static final Comparator<MethodParameterMapping> PARAMETER_ORDER =
+			Comparator.comparingInt(MethodParameterMapping::getIndex);
+
+	private Executor executor;
+
 	public TinyMappingsWriter(final Writer writer, final String from, final String to) {
 		super(writer, from, to);
 	}
 
+	/**
+	 * Creates a writer encoding the mappings as UTF-8 to the given stream.
+	 *
+	 * @param stream The stream to write to
+	 * @param from The namespace to place the obfuscated names under
+	 * @param to The namespace to place the deobfuscated names under
+	 * @since 4.1.0
+	 */
+	public TinyMappingsWriter(final OutputStream stream, final String from, final String to) {
+		super(stream, from, to);
+	}
+
+	/**
+	 * Creates a writer encoding the mappings as UTF-8 to the given channel.
+	 *
+	 * @param channel The channel to write to
+	 * @param from The namespace to place the obfuscated names under
+	 * @param to The namespace to place the deobfuscated names under
+	 * @since 4.1.0
+	 */
+	public TinyMappingsWriter(final WritableByteChannel channel, final String from, final String to) {
+		super(channel, from, to);
+	}
+
+	/**
+	 * Sets the executor to render classes on.
+	 * <p>
+	 * When set, each top-level class is rendered into its own buffer
+	 * concurrently, and the buffers are written out in the sorted order.
+	 * The output is identical to that of sequential writing.
+	 *
+	 * @param executor The executor, typically a {@link java.util.concurrent.ForkJoinPool fork-join pool},
+	 *                 or {@code null} to render on the calling thread
+	 * @since 4.1.0
+	 */
+	public void setExecutor(final Executor executor) {
+		this.executor = executor;
+	}
+
 	@Override
 	public void write(final MappingSet mappings) {
+		final boolean measure = this.metrics.isEnabled();
+		final long start = measure ? System.nanoTime() : 0;
+		final long written = this.getOutput().getWritten();
+
 		this.writeHeaderLine();
 
-		mappings.getTopLevelClassMappings().stream()
-				.filter(ClassMapping::hasMappings)
-				.sorted(this.getConfig().getClassMappingComparator())
-				.forEach(this::writeClassMapping);
+		final List<TopLevelClassMapping> classes = new ArrayList<>();
+		for (final TopLevelClassMapping klass : mappings.getTopLevelClassMappings()) {
+			if (klass.hasMappings()) classes.add(klass);
+		}
+		final long sorting = this.sort(classes, this.getConfig().getClassMappingComparator());
+
+		if (this.executor == null) {
+			classes.forEach(klass -> this.writeClassMapping(this.getOutput(), klass));
+		}
+		else {
+			this.writeConcurrently(classes.iterator());
+		}
+
+		this.getOutput().flush();
+		if (measure) this.reportWrite(start, sorting, written);
 	}
 
-	private void writeClassMapping(final ClassMapping<?, ?> mapping) {
-		this.writer.print("c\t");
-		this.writer.print(mapping.getFullObfuscatedName());
-		this.writer.print('\t');
-		this.writer.println(mapping.getFullDeobfuscatedName());
-
-		mapping.getMethodMappings().stream()
-				.filter(MethodMapping::hasMappings)
-				.sorted(this.getConfig().getMethodMappingComparator())
-				.forEach(this::writeMethodMapping);
-
-		mapping.getFieldMappings().stream()
-				.filter(FieldMapping::hasDeobfuscatedName)
-				.sorted(this.getConfig().getFieldMappingComparator())
-				.forEach(this::writeFieldMapping);
-
-		mapping.getInnerClassMappings().stream()
-				.filter(ClassMapping::hasMappings)
-				.sorted(this.getConfig().getClassMappingComparator())
-				.forEach(this::writeClassMapping);
+	private void writeConcurrently(final Iterator<TopLevelClassMapping> classes) {
+		// Only a window of rendered classes is held at any time
+		final Deque<CompletableFuture<TinyOutput>> pending = new ArrayDeque<>(RENDER_WINDOW);
+
+		try {
+			while (classes.hasNext() || !pending.isEmpty()) {
+				while (classes.hasNext() && pending.size() < RENDER_WINDOW) {
+					final ClassMapping<?, ?> klass = classes.next();
+
+					pending.add(CompletableFuture.supplyAsync(() -> {
+						final TinyOutput out = new TinyOutput();
+						this.writeClassMapping(out, klass);
+						return out;
+					}, this.executor));
+				}
+
+				pending.poll().join().writeTo(this.getOutput());
+			}
+		}
+		catch (final CompletionException ex) {
+			if (ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+			if (ex.getCause() instanceof Error) throw (Error) ex.getCause();
+			throw ex;
+		}
+	}
+
+	private void writeClassMapping(final TinyOutput out, final ClassMapping<?, ?> mapping) {
+		if (this.metrics.isEnabled()) this.metrics.count(TinyMetrics.Element.CLASS, 1);
+
+		out.append("c\t")
+				.append(mapping.getFullObfuscatedName())
+				.append('\t')
+				.append(mapping.getFullDeobfuscatedName())
+				.newLine();
+
+		forEachSorted(mapping.getMethodMappings(), MethodMapping::hasMappings,
+				this.getConfig().getMethodMappingComparator(), method -> this.writeMethodMapping(out, method));
+
+		forEachSorted(mapping.getFieldMappings(), FieldMapping::hasDeobfuscatedName,
+				this.getConfig().getFieldMappingComparator(), field -> this.writeFieldMapping(out, field));
+
+		forEachSorted(mapping.getInnerClassMappings(), ClassMapping::hasMappings,
+				this.getConfig().getClassMappingComparator(), klass -> this.writeClassMapping(out, klass));
 	}
 
-	private void writeMethodMapping(final MethodMapping mapping) {
-		this.writer.print("\tm\t");
-		this.writer.print(mapping.getObfuscatedDescriptor());
-		this.writer.print('\t');
-		this.writer.print(mapping.getObfuscatedName());
-		this.writer.print('\t');
-		this.writer.println(mapping.getDeobfuscatedName());
-
-		mapping.getParameterMappings().stream()
-				.filter(MethodParameterMapping::hasDeobfuscatedName)
-				.sorted(Comparator.comparingInt(MethodParameterMapping::getIndex))
-				.forEach(this::writeParamMapping);
+	private void writeMethodMapping(final TinyOutput out, final MethodMapping mapping) {
+		if (this.metrics.isEnabled()) this.metrics.count(TinyMetrics.Element.METHOD, 1);
+
+		out.append("\tm\t")
+				.descriptor(mapping.getDescriptor())
+				.append('\t')
+				.append(mapping.getObfuscatedName())
+				.append('\t')
+				.append(mapping.getDeobfuscatedName())
+				.newLine();
+
+		forEachSorted(mapping.getParameterMappings(), MethodParameterMapping::hasDeobfuscatedName,
+				PARAMETER_ORDER, param -> this.writeParamMapping(out, param));
 	}
 
-	private void writeParamMapping(final MethodParameterMapping mapping) {
-		this.writer.print("\t\tp\t");
-		this.writer.print(mapping.getIndex());
-		this.writer.print("\t\t");
-		this.writer.println(mapping.getDeobfuscatedName());
+	private void writeParamMapping(final TinyOutput out, final MethodParameterMapping mapping) {
+		if (this.metrics.isEnabled()) this.metrics.count(TinyMetrics.Element.PARAMETER, 1);
+
+		out.append("\t\tp\t")
+				.append(mapping.getIndex())
+				.append("\t\t")
+				.append(mapping.getDeobfuscatedName())
+				.newLine();
 	}
 
-	private void writeFieldMapping(final FieldMapping mapping) {
-		this.writer.print("\tf\t");
-		this.writer.print(this.requireType(mapping));
-		this.writer.print('\t');
-		this.writer.print(mapping.getObfuscatedName());
-		this.writer.print('\t');
-		this.writer.println(mapping.getDeobfuscatedName());
+	private void writeFieldMapping(final TinyOutput out, final FieldMapping mapping) {
+		if (this.metrics.isEnabled()) this.metrics.count(TinyMetrics.Element.FIELD, 1);
+
+		out.append("\tf\t")
+				.type(this.requireType(mapping))
+				.append('\t')
+				.append(mapping.getObfuscatedName())
+				.append('\t')
+				.append(mapping.getDeobfuscatedName())
+				.newLine();
 	}
 
 	private void writeHeaderLine() {
-		this.writer.print("tiny\t2\t0\t");
-		this.writer.print(this.from);
-		this.writer.print('\t');
-		this.writer.print(this.to);
-		this.writer.println();
+		this.getOutput().append("tiny\t2\t0\t")
+				.append(this.from)
+				.append('\t')
+				.append(this.to)
+				.newLine();
 	}
 }
@@ -0,0 +1,157 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+/**
+ * A listener for metrics reported while reading, writing and joining
+ * Tiny mappings.
+ * <p>
+ * Every reporting site first checks {@link #isEnabled()}, so the
+ * {@link #NONE no-op metrics} do not even read the clock, and cost
+ * nothing on hot paths. Implementations may be called from several
+ * threads at once, when reading or writing concurrently, and so must
+ * be thread-safe.
+ *
+ * @see TinyMetricsRecorder
+ * @see TinyMappingFormat#setMetrics(TinyMetrics)
+ * @since 4.1.0
+ */
+public interface TinyMetrics {
+
+	/**
+	 * Metrics that ignore everything reported to them.
+	 */
+	TinyMetrics NONE = new TinyMetrics() {
+		@Override
+		public boolean isEnabled() {
+			return false;
+		}
+	};
+
+	/**
+	 * Gets whether metrics should be reported at all.
+	 *
+	 * @return {@code true} if metrics should be reported
+	 */
+	default boolean isEnabled() {
+		return true;
+	}
+
+	/**
+	 * Reports the time spent in a phase of work.
+	 *
+	 * @param phase The phase
+	 * @param nanos The time spent, in nanoseconds
+	 */
+	default void phase(final Phase phase, final long nanos) {
+	}
+
+	/**
+	 * Reports the amount of mappings read.
+	 *
+	 * @param bytes The number of bytes read
+	 */
+	default void bytesRead(final long bytes) {
+	}
+
+	/**
+	 * Reports the amount of mappings written.
+	 *
+	 * @param bytes The number of bytes written, or of chars when
+	 *              writing to a {@link java.io.Writer}
+	 */
+	default void bytesWritten(final long bytes) {
+	}
+
+	/**
+	 * Reports the number of elements read, written or joined.
+	 *
+	 * @param element The kind of element
+	 * @param count The number of elements
+	 */
+	default void count(final Element element, final long count) {
+	}
+
+	/**
+	 * Reports an element that could not be matched while joining.
+	 *
+	 * @param element The kind of element
+	 * @param name The name of the element, in the namespace matched on
+	 */
+	default void joinMiss(final Element element, final String name) {
+	}
+
+	/**
+	 * Reports an element that was given a de-obfuscated name, where it
+	 * already had a different one.
+	 *
+	 * @param element The kind of element
+	 * @param name The full obfuscated name of the element
+	 */
+	default void collision(final Element element, final String name) {
+	}
+
+	/**
+	 * A phase of work.
+	 */
+	enum Phase {
+		/**
+		 * Parsing mappings, into a mapping tree or, when streamed, straight
+		 * into a mapping set. This includes reading the file.
+		 */
+		PARSE,
+		/**
+		 * Converting a mapping tree into a mapping set.
+		 */
+		CONVERT,
+		/**
+		 * Sorting mappings before they are written.
+		 */
+		SORT,
+		/**
+		 * Rendering mappings as text.
+		 */
+		RENDER,
+		/**
+		 * Building the index of the tree being joined against.
+		 */
+		INDEX,
+		/**
+		 * Probing the index of the tree being joined against.
+		 */
+		PROBE,
+	}
+
+	/**
+	 * A kind of mapping element.
+	 */
+	enum Element {
+		CLASS,
+		FIELD,
+		METHOD,
+		PARAMETER,
+	}
+
+}
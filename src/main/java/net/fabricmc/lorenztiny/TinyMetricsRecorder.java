@@ -0,0 +1,166 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link TinyMetrics Metrics} that keep running totals of everything
+ * reported to them.
+ *
+ * @since 4.1.0
+ */
+public class TinyMetricsRecorder implements TinyMetrics {
+
+	private final Map<Phase, LongAdder> phases = adders(Phase.class);
+	private final Map<Element, LongAdder> counts = adders(Element.class);
+	private final Map<Element, LongAdder> joinMisses = adders(Element.class);
+	private final Map<Element, LongAdder> collisions = adders(Element.class);
+	private final LongAdder bytesRead = new LongAdder();
+	private final LongAdder bytesWritten = new LongAdder();
+
+	@Override
+	public void phase(final Phase phase, final long nanos) {
+		this.phases.get(phase).add(nanos);
+	}
+
+	@Override
+	public void bytesRead(final long bytes) {
+		this.bytesRead.add(bytes);
+	}
+
+	@Override
+	public void bytesWritten(final long bytes) {
+		this.bytesWritten.add(bytes);
+	}
+
+	@Override
+	public void count(final Element element, final long count) {
+		this.counts.get(element).add(count);
+	}
+
+	@Override
+	public void joinMiss(final Element element, final String name) {
+		this.joinMisses.get(element).increment();
+	}
+
+	@Override
+	public void collision(final Element element, final String name) {
+		this.collisions.get(element).increment();
+	}
+
+	/**
+	 * Gets the total time spent in the given phase.
+	 *
+	 * @param phase The phase
+	 * @return The time spent, in nanoseconds
+	 */
+	public long getPhaseNanos(final Phase phase) {
+		return this.phases.get(phase).sum();
+	}
+
+	/**
+	 * Gets the total number of bytes read.
+	 *
+	 * @return The number of bytes
+	 */
+	public long getBytesRead() {
+		return this.bytesRead.sum();
+	}
+
+	/**
+	 * Gets the total number of bytes written.
+	 *
+	 * @return The number of bytes
+	 */
+	public long getBytesWritten() {
+		return this.bytesWritten.sum();
+	}
+
+	/**
+	 * Gets the total number of the given kind of element.
+	 *
+	 * @param element The kind of element
+	 * @return The number of elements
+	 */
+	public long getCount(final Element element) {
+		return this.counts.get(element).sum();
+	}
+
+	/**
+	 * Gets the total number of join misses, of the given kind of element.
+	 *
+	 * @param element The kind of element
+	 * @return The number of misses
+	 */
+	public long getJoinMisses(final Element element) {
+		return this.joinMisses.get(element).sum();
+	}
+
+	/**
+	 * Gets the total number of name collisions, of the given kind of element.
+	 *
+	 * @param element The kind of element
+	 * @return The number of collisions
+	 */
+	public long getCollisions(final Element element) {
+		return this.collisions.get(element).sum();
+	}
+
+	/**
+	 * Resets every total to zero.
+	 */
+	public void reset() {
+		this.phases.values().forEach(LongAdder::reset);
+		this.counts.values().forEach(LongAdder::reset);
+		this.joinMisses.values().forEach(LongAdder::reset);
+		this.collisions.values().forEach(LongAdder::reset);
+		this.bytesRead.reset();
+		this.bytesWritten.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "TinyMetricsRecorder{" +
+				"phases=" + this.phases +
+				", counts=" + this.counts +
+				", joinMisses=" + this.joinMisses +
+				", collisions=" + this.collisions +
+				", bytesRead=" + this.bytesRead +
+				", bytesWritten=" + this.bytesWritten +
+				'}';
+	}
+
+	private static <E extends Enum<E>> Map<E, LongAdder> adders(final Class<E> type) {
+		final Map<E, LongAdder> adders = new EnumMap<>(type);
+		for (final E key : type.getEnumConstants()) {
+			adders.put(key, new LongAdder());
+		}
+		return adders;
+	}
+
+}
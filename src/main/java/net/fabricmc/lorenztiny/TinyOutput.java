@@ -0,0 +1,375 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import org.cadixdev.bombe.type.ArrayType;
+import org.cadixdev.bombe.type.BaseType;
+import org.cadixdev.bombe.type.FieldType;
+import org.cadixdev.bombe.type.MethodDescriptor;
+import org.cadixdev.bombe.type.ObjectType;
+import org.cadixdev.bombe.type.Type;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * An unsynchronized, buffered output for writing Tiny files.
+ * <p>
+ * Text is rendered into a reusable character buffer, which is written out
+ * in large blocks, either straight to a {@link Writer writer} or encoded as
+ * UTF-8 in bulk to an {@link OutputStream output stream} or
+ * {@link WritableByteChannel channel}. Unlike {@link java.io.PrintWriter},
+ * no lock is taken per call, and types and descriptors are rendered
+ * without creating intermediate strings.
+ * <p>
+ * An output may also be purely in-memory, in which case its buffer grows
+ * as needed and is later copied to another output in one go.
+ * <p>
+ * I/O errors are rethrown as {@link UncheckedIOException}s. Text that
+ * cannot be encoded, such as an unpaired surrogate, is an error rather
+ * than being silently replaced.
+ */
+final class TinyOutput implements Closeable, Flushable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final String LINE_SEPARATOR = System.lineSeparator();
+
+	private final Writer writer;
+	private final OutputStream stream;
+	private final WritableByteChannel channel;
+	private final CharsetEncoder encoder;
+	private final ByteBuffer bytes;
+
+	private char[] buf;
+	private int pos;
+	private long written;
+
+	/**
+	 * Creates an output that only buffers in memory, to later be
+	 * {@link #writeTo(TinyOutput) written} to another output.
+	 */
+	TinyOutput() {
+		this(null, null, null);
+	}
+
+	TinyOutput(final Writer writer) {
+		this(writer, null, null);
+	}
+
+	TinyOutput(final OutputStream stream) {
+		this(null, stream, null);
+	}
+
+	TinyOutput(final WritableByteChannel channel) {
+		this(null, null, channel);
+	}
+
+	private TinyOutput(final Writer writer, final OutputStream stream, final WritableByteChannel channel) {
+		this.writer = writer;
+		this.stream = stream;
+		this.channel = channel;
+		this.buf = new char[this.isInMemory() ? 1024 : BUFFER_SIZE];
+
+		if (writer == null && (stream != null || channel != null)) {
+			this.encoder = StandardCharsets.UTF_8.newEncoder()
+					.onMalformedInput(CodingErrorAction.REPORT)
+					.onUnmappableCharacter(CodingErrorAction.REPORT);
+			this.bytes = ByteBuffer.allocate(BUFFER_SIZE);
+		}
+		else {
+			this.encoder = null;
+			this.bytes = null;
+		}
+	}
+
+	TinyOutput append(final String str) {
+		int off = 0;
+		int len = str.length();
+
+		while (len > 0) {
+			if (this.pos == this.buf.length) this.drain();
+
+			final int count = Math.min(len, this.buf.length - this.pos);
+			str.getChars(off, off + count, this.buf, this.pos);
+			this.pos += count;
+			off += count;
+			len -= count;
+		}
+		return this;
+	}
+
+	TinyOutput append(final char[] chars, int off, int len) {
+		while (len > 0) {
+			if (this.pos == this.buf.length) this.drain();
+
+			final int count = Math.min(len, this.buf.length - this.pos);
+			System.arraycopy(chars, off, this.buf, this.pos, count);
+			this.pos += count;
+			off += count;
+			len -= count;
+		}
+		return this;
+	}
+
+	TinyOutput append(final char c) {
+		if (this.pos == this.buf.length) this.drain();
+		this.buf[this.pos++] = c;
+		return this;
+	}
+
+	TinyOutput append(final int value) {
+		if (value < 0) {
+			if (value == Integer.MIN_VALUE) return this.append(Integer.toString(value));
+			return this.append('-').append(-value);
+		}
+
+		if (this.buf.length - this.pos < 10) this.drain();
+
+		int digits = 1;
+		for (int n = value; n >= 10; n /= 10) digits++;
+
+		int n = value;
+		for (int i = this.pos + digits - 1; i >= this.pos; i--) {
+			this.buf[i] = (char) ('0' + n % 10);
+			n /= 10;
+		}
+		this.pos += digits;
+		return this;
+	}
+
+	TinyOutput type(final Type type) {
+		if (type instanceof ObjectType) {
+			return this.append('L').append(((ObjectType) type).getClassName()).append(';');
+		}
+		if (type instanceof ArrayType) {
+			final ArrayType array = (ArrayType) type;
+			for (int i = 0; i < array.getDimCount(); i++) this.append('[');
+			return this.type(array.getComponent());
+		}
+		if (type instanceof BaseType) {
+			return this.append(((BaseType) type).getKey());
+		}
+		return this.append(type.toString());
+	}
+
+	TinyOutput descriptor(final MethodDescriptor descriptor) {
+		this.append('(');
+		for (final FieldType param : descriptor.getParamTypes()) {
+			this.type(param);
+		}
+		return this.append(')').type(descriptor.getReturnType());
+	}
+
+	TinyOutput newLine() {
+		return this.append(LINE_SEPARATOR);
+	}
+
+	/**
+	 * Gets a {@link Writer writer} appending to this output. It does no
+	 * buffering of its own, so writing through it may be freely interleaved
+	 * with appending to this output directly.
+	 *
+	 * @return The writer
+	 */
+	Writer asWriter() {
+		return new Writer() {
+			@Override
+			public void write(final char[] cbuf, final int off, final int len) throws IOException {
+				try {
+					TinyOutput.this.append(cbuf, off, len);
+				}
+				catch (final UncheckedIOException ex) {
+					throw ex.getCause();
+				}
+			}
+
+			@Override
+			public void write(final String str, final int off, final int len) throws IOException {
+				try {
+					TinyOutput.this.append(str.substring(off, off + len));
+				}
+				catch (final UncheckedIOException ex) {
+					throw ex.getCause();
+				}
+			}
+
+			@Override
+			public void flush() throws IOException {
+				try {
+					TinyOutput.this.flush();
+				}
+				catch (final UncheckedIOException ex) {
+					throw ex.getCause();
+				}
+			}
+
+			@Override
+			public void close() throws IOException {
+				try {
+					TinyOutput.this.close();
+				}
+				catch (final UncheckedIOException ex) {
+					throw ex.getCause();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Appends everything buffered by this in-memory output to the given output.
+	 *
+	 * @param out The output to write to
+	 */
+	void writeTo(final TinyOutput out) {
+		out.append(this.buf, 0, this.pos);
+	}
+
+	/**
+	 * Writes the buffered text to the underlying output, without
+	 * flushing it. In-memory outputs grow their buffer instead.
+	 */
+	private void drain() {
+		if (this.pos == 0) return;
+
+		if (this.isInMemory()) {
+			this.buf = Arrays.copyOf(this.buf, this.buf.length * 2);
+			return;
+		}
+
+		try {
+			if (this.writer != null) {
+				this.writer.write(this.buf, 0, this.pos);
+				this.written += this.pos;
+				this.pos = 0;
+				return;
+			}
+
+			final CharBuffer chars = CharBuffer.wrap(this.buf, 0, this.pos);
+			this.encode(chars, false);
+
+			// An unpaired high surrogate is kept until the rest of it arrives
+			final int remaining = chars.remaining();
+			System.arraycopy(this.buf, chars.position(), this.buf, 0, remaining);
+			this.pos = remaining;
+		}
+		catch (final IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	private void encode(final CharBuffer chars, final boolean endOfInput) throws IOException {
+		while (true) {
+			final CoderResult result = this.encoder.encode(chars, this.bytes, endOfInput);
+			if (result.isOverflow()) {
+				this.writeBytes();
+				continue;
+			}
+			if (result.isError()) result.throwException();
+			break;
+		}
+		this.writeBytes();
+	}
+
+	private void writeBytes() throws IOException {
+		this.bytes.flip();
+		this.written += this.bytes.remaining();
+		if (this.channel != null) {
+			while (this.bytes.hasRemaining()) {
+				this.channel.write(this.bytes);
+			}
+		}
+		else {
+			this.stream.write(this.bytes.array(), this.bytes.arrayOffset() + this.bytes.position(), this.bytes.remaining());
+		}
+		this.bytes.clear();
+	}
+
+	/**
+	 * Gets the amount written through to the underlying output so far, in
+	 * bytes, or in chars when writing to a {@link Writer}.
+	 *
+	 * @return The amount written
+	 */
+	long getWritten() {
+		return this.written;
+	}
+
+	private boolean isInMemory() {
+		return this.writer == null && this.stream == null && this.channel == null;
+	}
+
+	@Override
+	public void flush() {
+		if (this.isInMemory()) return;
+		this.drain();
+
+		try {
+			if (this.writer != null) this.writer.flush();
+			if (this.stream != null) this.stream.flush();
+		}
+		catch (final IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	@Override
+	public void close() {
+		if (this.isInMemory()) return;
+		this.drain();
+
+		try {
+			if (this.writer != null) {
+				this.writer.close();
+				return;
+			}
+
+			this.encode(CharBuffer.wrap(this.buf, 0, this.pos), true);
+			this.pos = 0;
+			while (this.encoder.flush(this.bytes).isOverflow()) {
+				this.writeBytes();
+			}
+			this.writeBytes();
+
+			if (this.channel != null) this.channel.close();
+			if (this.stream != null) this.stream.close();
+		}
+		catch (final IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+}
@@ -0,0 +1,384 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import net.fabricmc.mappingio.tree.MappingTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A frozen lookup table, from the names of classes, fields and methods
+ * in one namespace of a {@link MappingTree mapping tree} to their names
+ * in another.
+ * <p>
+ * The table is built for answering very many lookups, such as those of a
+ * bytecode remapper. All names are held in a single string table, and
+ * referred to by index from open-addressing hash tables, so that lookups
+ * never allocate. Once built, the table is immutable, and safe to share
+ * between any number of threads.
+ *
+ * @see TinyMappingFormat#loadRemapTable(java.nio.file.Path, String, String)
+ * @since 4.1.0
+ */
+public final class TinyRemapTable {
+
+	// Marks an empty slot, or a member without a descriptor
+	private static final int NONE = -1;
+
+	private final String from;
+	private final String to;
+	private final String[] strings;
+
+	private final int[] classHashes;
+	private final int[] classKeys;
+	private final int[] classValues;
+
+	private final MemberTable fields;
+	private final MemberTable methods;
+
+	/**
+	 * Builds a table from the given tree.
+	 *
+	 * @param tree The tree to build the table from
+	 * @param from The namespace to look names up in
+	 * @param to The namespace to map names to
+	 * @throws IllegalArgumentException if the {@code from} or {@code to} namespace is not present in the tree
+	 */
+	public TinyRemapTable(final MappingTree tree, final String from, final String to) {
+		this.from = from;
+		this.to = to;
+
+		final int fromId = namespaceId(tree, from);
+		final int toId = namespaceId(tree, to);
+
+		final StringTable strings = new StringTable();
+		final List<int[]> classes = new ArrayList<>();
+		final List<int[]> fields = new ArrayList<>();
+		final List<int[]> methods = new ArrayList<>();
+
+		for (final MappingTree.ClassMapping klass : tree.getClasses()) {
+			final String owner = klass.getName(fromId);
+			if (owner == null) continue;
+
+			final int ownerId = strings.add(owner);
+			final String deobfName = klass.getName(toId);
+			if (deobfName != null) classes.add(new int[] { ownerId, strings.add(deobfName) });
+
+			for (final MappingTree.FieldMapping field : klass.getFields()) {
+				final String name = field.getName(fromId);
+				final String fieldDeobfName = field.getName(toId);
+				if (name == null || fieldDeobfName == null) continue;
+
+				fields.add(new int[] { ownerId, strings.add(name), strings.add(field.getDesc(fromId)), strings.add(fieldDeobfName) });
+			}
+
+			for (final MappingTree.MethodMapping method : klass.getMethods()) {
+				final String name = method.getName(fromId);
+				final String methodDeobfName = method.getName(toId);
+				if (name == null || methodDeobfName == null) continue;
+
+				methods.add(new int[] { ownerId, strings.add(name), strings.add(method.getDesc(fromId)), strings.add(methodDeobfName) });
+			}
+		}
+
+		this.strings = strings.toArray();
+
+		final int capacity = capacity(classes.size());
+		this.classHashes = new int[capacity];
+		this.classKeys = new int[capacity];
+		this.classValues = new int[capacity];
+		Arrays.fill(this.classKeys, NONE);
+
+		for (final int[] entry : classes) {
+			final String name = this.strings[entry[0]];
+			final int hash = mix(name.hashCode());
+
+			int slot = hash & (capacity - 1);
+			while (this.classKeys[slot] != NONE && !(this.classHashes[slot] == hash && this.strings[this.classKeys[slot]].equals(name))) {
+				slot = (slot + 1) & (capacity - 1);
+			}
+
+			this.classHashes[slot] = hash;
+			this.classKeys[slot] = entry[0];
+			this.classValues[slot] = entry[1];
+		}
+
+		this.fields = new MemberTable(this.strings, fields);
+		this.methods = new MemberTable(this.strings, methods);
+	}
+
+	/**
+	 * Gets the namespace names are looked up in.
+	 *
+	 * @return The namespace
+	 */
+	public String getFrom() {
+		return this.from;
+	}
+
+	/**
+	 * Gets the namespace names are mapped to.
+	 *
+	 * @return The namespace
+	 */
+	public String getTo() {
+		return this.to;
+	}
+
+	/**
+	 * Gets the number of distinct names held by the table.
+	 *
+	 * @return The number of names
+	 */
+	public int getStringCount() {
+		return this.strings.length;
+	}
+
+	/**
+	 * Maps the name of a class.
+	 *
+	 * @param name The name of the class
+	 * @return The mapped name, or {@code null} if the class is not mapped
+	 */
+	public String mapClass(final String name) {
+		final int hash = mix(name.hashCode());
+		final int mask = this.classKeys.length - 1;
+
+		for (int slot = hash & mask; this.classKeys[slot] != NONE; slot = (slot + 1) & mask) {
+			if (this.classHashes[slot] == hash && this.strings[this.classKeys[slot]].equals(name)) {
+				return this.strings[this.classValues[slot]];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Maps the name of a field. Fields mapped without a descriptor match
+	 * any descriptor.
+	 *
+	 * @param owner The name of the owning class
+	 * @param name The name of the field
+	 * @param desc The descriptor of the field, may be {@code null}
+	 * @return The mapped name, or {@code null} if the field is not mapped
+	 */
+	public String mapField(final String owner, final String name, final String desc) {
+		final String deobfName = this.fields.get(owner, name, desc);
+		return deobfName != null || desc == null ? deobfName : this.fields.get(owner, name, null);
+	}
+
+	/**
+	 * Maps the name of a method.
+	 *
+	 * @param owner The name of the owning class
+	 * @param name The name of the method
+	 * @param desc The descriptor of the method
+	 * @return The mapped name, or {@code null} if the method is not mapped
+	 */
+	public String mapMethod(final String owner, final String name, final String desc) {
+		return this.methods.get(owner, name, desc);
+	}
+
+	/**
+	 * Maps the names of many classes at once.
+	 *
+	 * @param names The names of the classes
+	 * @param results The array to store the mapped names in, at the same
+	 *                indices, with {@code null} for classes that are not mapped
+	 * @return The number of classes that were mapped
+	 */
+	public int mapClasses(final String[] names, final String[] results) {
+		checkLength(names.length, results);
+
+		int mapped = 0;
+		for (int i = 0; i < names.length; i++) {
+			if ((results[i] = this.mapClass(names[i])) != null) mapped++;
+		}
+		return mapped;
+	}
+
+	/**
+	 * Maps the names of many fields at once.
+	 *
+	 * @param owners The names of the owning classes
+	 * @param names The names of the fields
+	 * @param descs The descriptors of the fields, which may hold {@code null}
+	 * @param results The array to store the mapped names in, at the same
+	 *                indices, with {@code null} for fields that are not mapped
+	 * @return The number of fields that were mapped
+	 */
+	public int mapFields(final String[] owners, final String[] names, final String[] descs, final String[] results) {
+		checkLength(names.length, owners, descs, results);
+
+		int mapped = 0;
+		for (int i = 0; i < names.length; i++) {
+			if ((results[i] = this.mapField(owners[i], names[i], descs[i])) != null) mapped++;
+		}
+		return mapped;
+	}
+
+	/**
+	 * Maps the names of many methods at once.
+	 *
+	 * @param owners The names of the owning classes
+	 * @param names The names of the methods
+	 * @param descs The descriptors of the methods
+	 * @param results The array to store the mapped names in, at the same
+	 *                indices, with {@code null} for methods that are not mapped
+	 * @return The number of methods that were mapped
+	 */
+	public int mapMethods(final String[] owners, final String[] names, final String[] descs, final String[] results) {
+		checkLength(names.length, owners, descs, results);
+
+		int mapped = 0;
+		for (int i = 0; i < names.length; i++) {
+			if ((results[i] = this.mapMethod(owners[i], names[i], descs[i])) != null) mapped++;
+		}
+		return mapped;
+	}
+
+	private static void checkLength(final int length, final String[]... arrays) {
+		for (final String[] array : arrays) {
+			if (array.length < length) {
+				throw new IllegalArgumentException("Expected arrays of at least " + length + " elements, got " + array.length);
+			}
+		}
+	}
+
+	private static int namespaceId(final MappingTree tree, final String namespace) {
+		final int id = tree.getNamespaceId(namespace);
+		if (id == MappingTree.NULL_NAMESPACE_ID) {
+			throw new IllegalArgumentException(String.format("Could not find namespace \"%s\" in provided tiny tree", namespace));
+		}
+		return id;
+	}
+
+	/**
+	 * Gets a power of two table capacity, keeping the load factor at most a half.
+	 */
+	private static int capacity(final int size) {
+		return Integer.highestOneBit(Math.max(size, 1) * 2 - 1) << 1;
+	}
+
+	private static int mix(final int hash) {
+		final int h = hash * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static int hash(final String owner, final String name, final String desc) {
+		return mix((owner.hashCode() * 31 + name.hashCode()) * 31 + (desc != null ? desc.hashCode() : 0));
+	}
+
+	/**
+	 * An open-addressing table of members, keyed by owner, name and descriptor.
+	 */
+	private static final class MemberTable {
+
+		private final String[] strings;
+		private final int[] hashes;
+		private final int[] owners;
+		private final int[] names;
+		private final int[] descs;
+		private final int[] values;
+
+		MemberTable(final String[] strings, final List<int[]> entries) {
+			this.strings = strings;
+
+			final int capacity = capacity(entries.size());
+			this.hashes = new int[capacity];
+			this.owners = new int[capacity];
+			this.names = new int[capacity];
+			this.descs = new int[capacity];
+			this.values = new int[capacity];
+			Arrays.fill(this.owners, NONE);
+
+			for (final int[] entry : entries) {
+				final int slot = this.find(strings[entry[0]], strings[entry[1]], entry[2] != NONE ? strings[entry[2]] : null);
+
+				this.hashes[slot] = hash(strings[entry[0]], strings[entry[1]], entry[2] != NONE ? strings[entry[2]] : null);
+				this.owners[slot] = entry[0];
+				this.names[slot] = entry[1];
+				this.descs[slot] = entry[2];
+				this.values[slot] = entry[3];
+			}
+		}
+
+		String get(final String owner, final String name, final String desc) {
+			final int slot = this.find(owner, name, desc);
+			return this.owners[slot] != NONE ? this.strings[this.values[slot]] : null;
+		}
+
+		/**
+		 * Finds the slot holding the given member, or the empty slot it belongs in.
+		 */
+		private int find(final String owner, final String name, final String desc) {
+			final int hash = hash(owner, name, desc);
+			final int mask = this.owners.length - 1;
+
+			int slot = hash & mask;
+			while (this.owners[slot] != NONE && !this.matches(slot, hash, owner, name, desc)) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		private boolean matches(final int slot, final int hash, final String owner, final String name, final String desc) {
+			if (this.hashes[slot] != hash) return false;
+			if (!this.strings[this.names[slot]].equals(name)) return false;
+			if (!this.strings[this.owners[slot]].equals(owner)) return false;
+
+			final int descId = this.descs[slot];
+			return descId == NONE ? desc == null : this.strings[descId].equals(desc);
+		}
+
+	}
+
+	/**
+	 * Assigns each distinct string an index, while the table is being built.
+	 */
+	private static final class StringTable {
+
+		private final Map<String, Integer> ids = new HashMap<>();
+		private final List<String> strings = new ArrayList<>();
+
+		int add(final String string) {
+			if (string == null) return NONE;
+
+			return this.ids.computeIfAbsent(string, key -> {
+				this.strings.add(key);
+				return this.strings.size() - 1;
+			});
+		}
+
+		String[] toArray() {
+			return this.strings.toArray(new String[0]);
+		}
+
+	}
+
+}
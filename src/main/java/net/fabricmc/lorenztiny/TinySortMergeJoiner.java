@@ -0,0 +1,552 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import net.fabricmc.lorenztiny.JoinRecordSorter.Record;
+import net.fabricmc.lorenztiny.JoinRecordSorter.RecordIterator;
+import net.fabricmc.mappingio.MappedElementKind;
+import net.fabricmc.mappingio.MappingVisitor;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.io.MappingsReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link MappingsReader mappings reader} for joining mappings from
+ * across two Tiny files, using a namespace present in both to match,
+ * without loading either file into a tree.
+ * <p>
+ * Each file is streamed once to collect its class names, and once more
+ * into an external sort, ordered by the matched namespace. Sorted runs
+ * are spilled to temporary files whenever more than a chunk of records
+ * are held. The two sorted inputs are then merged, holding only the
+ * members of a single class of the second file in memory at a time.
+ * <p>
+ * The resulting mappings are the same as those produced by a
+ * {@link TinyMappingsJoiner joiner} over the two files' trees.
+ *
+ * @see TinyMappingsJoiner
+ * @since 4.1.0
+ */
+public class TinySortMergeJoiner extends MappingsReader {
+
+	// The number of records held in memory before a run is spilled, by default
+	private static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+
+	private final TinyMappingFormat formatA;
+	private final Path pathA;
+	private final String from;
+	private final String matchA;
+
+	private final TinyMappingFormat formatB;
+	private final Path pathB;
+	private final String to;
+	private final String matchB;
+
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	private Path tempDirectory;
+	private Executor executor;
+	private TinyMetrics metrics = TinyMetrics.NONE;
+
+	/**
+	 * Creates a new joiner.
+	 *
+	 * @param formatA The format of file A
+	 * @param pathA The file to take the obfuscated names from
+	 * @param from The namespace in file A to use as Lorenz's obfuscated names
+	 * @param matchA The namespace in file A to match against file B
+	 * @param formatB The format of file B
+	 * @param pathB The file to take the de-obfuscated names from
+	 * @param to The namespace in file B to use as Lorenz's de-obfuscated names
+	 * @param matchB The namespace in file B to match against file A
+	 */
+	public TinySortMergeJoiner(final TinyMappingFormat formatA, final Path pathA, final String from, final String matchA,
+	                           final TinyMappingFormat formatB, final Path pathB, final String to, final String matchB) {
+		this.formatA = formatA;
+		this.pathA = pathA;
+		this.from = from;
+		this.matchA = matchA;
+		this.formatB = formatB;
+		this.pathB = pathB;
+		this.to = to;
+		this.matchB = matchB;
+	}
+
+	/**
+	 * Creates a new joiner over two Tiny v2 files.
+	 *
+	 * @param pathA The file to take the obfuscated names from
+	 * @param from The namespace in file A to use as Lorenz's obfuscated names
+	 * @param pathB The file to take the de-obfuscated names from
+	 * @param to The namespace in file B to use as Lorenz's de-obfuscated names
+	 * @param match The namespace present in both files to match with
+	 */
+	public TinySortMergeJoiner(final Path pathA, final String from,
+	                           final Path pathB, final String to,
+	                           final String match) {
+		this(TinyMappingFormat.TINY_2, pathA, from, match, TinyMappingFormat.TINY_2, pathB, to, match);
+	}
+
+	/**
+	 * Sets the number of records from each file to hold in memory,
+	 * before a sorted run is spilled to disk.
+	 *
+	 * @param chunkSize The number of records
+	 */
+	public void setChunkSize(final int chunkSize) {
+		if (chunkSize < 1) throw new IllegalArgumentException("The chunk size must be positive");
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Sets the directory to spill sorted runs to.
+	 *
+	 * @param tempDirectory The directory, or {@code null} to use the
+	 *                      default temporary-file directory
+	 */
+	public void setTempDirectory(final Path tempDirectory) {
+		this.tempDirectory = tempDirectory;
+	}
+
+	/**
+	 * Sets the executor to sort file B on, while file A is sorted on the
+	 * calling thread.
+	 *
+	 * @param executor The executor, or {@code null} to sort both files
+	 *                 on the calling thread
+	 */
+	public void setExecutor(final Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Sets the metrics to report joining to.
+	 *
+	 * @param metrics The metrics
+	 */
+	public void setMetrics(final TinyMetrics metrics) {
+		this.metrics = metrics != null ? metrics : TinyMetrics.NONE;
+	}
+
+	@Override
+	public MappingSet read(final MappingSet mappings) throws IOException {
+		this.join(new MappingSetVisitor(mappings, this.from, this.to));
+		return mappings;
+	}
+
+	/**
+	 * Joins the two files, passing the joined mappings straight on to the
+	 * given visitor, such as a mapping-io {@link net.fabricmc.mappingio.MappingWriter writer}.
+	 * <p>
+	 * The mappings are visited using the from namespace as the source
+	 * namespace, and the to namespace as the only destination namespace.
+	 * Classes are visited in the order of their names in the matched
+	 * namespace.
+	 *
+	 * @param visitor The visitor to pass the joined mappings to
+	 * @throws IOException if an I/O error occurs reading either file, or
+	 *                     spilling sorted runs
+	 */
+	public void join(final MappingVisitor visitor) throws IOException {
+		final Path directory = this.tempDirectory != null ?
+				this.tempDirectory.resolve("lorenz-tiny-join-" + System.nanoTime()) :
+				Files.createTempDirectory("lorenz-tiny-join");
+
+		try (final JoinRecordSorter sortedA = new JoinRecordSorter(this.chunkSize, directory, "a");
+		     final JoinRecordSorter sortedB = new JoinRecordSorter(this.chunkSize, directory, "b")) {
+			final long start = this.metrics.isEnabled() ? System.nanoTime() : 0;
+			this.sort(sortedA, sortedB);
+			if (this.metrics.isEnabled()) this.metrics.phase(TinyMetrics.Phase.SORT, System.nanoTime() - start);
+
+			do {
+				final long probe = this.metrics.isEnabled() ? System.nanoTime() : 0;
+				try (final RecordIterator recordsA = sortedA.open();
+				     final RecordIterator recordsB = sortedB.open()) {
+					this.merge(recordsA, recordsB, visitor);
+				}
+				if (this.metrics.isEnabled()) this.metrics.phase(TinyMetrics.Phase.PROBE, System.nanoTime() - probe);
+			} while (!visitor.visitEnd());
+		}
+		finally {
+			Files.deleteIfExists(directory);
+		}
+	}
+
+	private void sort(final JoinRecordSorter sortedA, final JoinRecordSorter sortedB) throws IOException {
+		if (this.executor == null) {
+			this.sort(this.formatA, this.pathA, this.matchA, this.from, true, sortedA);
+			this.sort(this.formatB, this.pathB, this.matchB, this.to, false, sortedB);
+			return;
+		}
+
+		final CompletableFuture<Void> futureB = CompletableFuture.runAsync(() -> {
+			try {
+				this.sort(this.formatB, this.pathB, this.matchB, this.to, false, sortedB);
+			}
+			catch (final IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		}, this.executor);
+
+		try {
+			this.sort(this.formatA, this.pathA, this.matchA, this.from, true, sortedA);
+		}
+		finally {
+			// Never leave file B being sorted into a sorter that is about to be closed
+			try {
+				futureB.join();
+			}
+			catch (final CompletionException ex) {
+				final Throwable cause = ex.getCause();
+				if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+				if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+				if (cause instanceof Error) throw (Error) cause;
+				throw ex;
+			}
+		}
+	}
+
+	private void sort(final TinyMappingFormat format, final Path path, final String match, final String value,
+	                  final boolean obfuscated, final JoinRecordSorter sorter) throws IOException {
+		final ClassNameCollector classNames = new ClassNameCollector(Arrays.asList(match, value));
+		try (final BufferedReader reader = TinyMappingFormat.open(path)) {
+			format.accept(reader, classNames);
+		}
+
+		try (final BufferedReader reader = TinyMappingFormat.open(path)) {
+			format.accept(reader, new RecordCollector(sorter, match, value, obfuscated,
+					classNames.getClassNames(match), classNames.getClassNames(value)));
+		}
+	}
+
+	private void merge(final RecordIterator recordsA, final RecordIterator recordsB,
+	                   final MappingVisitor visitor) throws IOException {
+		if (visitor.visitHeader()) {
+			visitor.visitNamespaces(this.from, Collections.singletonList(this.to));
+		}
+		if (!visitor.visitContent()) return;
+
+		final boolean measure = this.metrics.isEnabled();
+		final ClassGroup groupB = new ClassGroup();
+		boolean visitMembers = false;
+
+		for (Record recordA = recordsA.next(); recordA != null; recordA = recordsA.next()) {
+			final String owner = recordA.owner;
+
+			if (recordA.kind == JoinRecordSorter.CLASS) {
+				// Classes without a name to match by are kept, without a de-obfuscated name
+				if (owner != null && !owner.equals(groupB.owner)) {
+					groupB.load(owner, recordsB);
+				}
+
+				final String deobfName = owner != null ? groupB.className : null;
+				if (measure) {
+					if (owner != null && !groupB.found) this.metrics.joinMiss(TinyMetrics.Element.CLASS, owner);
+					this.metrics.count(TinyMetrics.Element.CLASS, 1);
+				}
+
+				visitMembers = false;
+				if (visitor.visitClass(recordA.value)) {
+					if (deobfName != null) visitor.visitDstName(MappedElementKind.CLASS, 0, deobfName);
+					visitMembers = visitor.visitElementContent(MappedElementKind.CLASS) && owner != null;
+				}
+				continue;
+			}
+
+			if (!visitMembers) continue;
+
+			if (recordA.kind == JoinRecordSorter.FIELD) {
+				final String deobfName = groupB.getField(recordA.name, recordA.desc);
+
+				if (deobfName != null) {
+					if (visitor.visitField(recordA.value, recordA.valueDesc)) {
+						visitor.visitDstName(MappedElementKind.FIELD, 0, deobfName);
+						visitor.visitElementContent(MappedElementKind.FIELD);
+					}
+					if (measure) this.metrics.count(TinyMetrics.Element.FIELD, 1);
+				}
+				else if (measure) {
+					this.metrics.joinMiss(TinyMetrics.Element.FIELD, owner + '.' + recordA.name);
+				}
+			}
+			else {
+				final String deobfName = groupB.getMethod(recordA.name, recordA.desc);
+
+				if (deobfName != null) {
+					if (visitor.visitMethod(recordA.value, recordA.valueDesc)) {
+						visitor.visitDstName(MappedElementKind.METHOD, 0, deobfName);
+						visitor.visitElementContent(MappedElementKind.METHOD);
+					}
+					if (measure) this.metrics.count(TinyMetrics.Element.METHOD, 1);
+				}
+				else if (measure) {
+					this.metrics.joinMiss(TinyMetrics.Element.METHOD, owner + '.' + recordA.name + recordA.desc);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * The records of a single class of file B, and its members, by name
+	 * and then descriptor in the matched namespace.
+	 */
+	private static final class ClassGroup {
+
+		String owner;
+		boolean found;
+		String className;
+		private final Map<String, Map<String, String>> fields = new HashMap<>();
+		private final Map<String, Map<String, String>> methods = new HashMap<>();
+
+		/**
+		 * Skips file B forward to the given class, and loads its records.
+		 * Classes are visited in sorted order, so no records of file B
+		 * are ever needed again once skipped.
+		 */
+		void load(final String owner, final RecordIterator records) throws IOException {
+			this.owner = owner;
+			this.found = false;
+			this.className = null;
+			this.fields.clear();
+			this.methods.clear();
+
+			Record record = records.peek();
+			while (record != null && record.owner.compareTo(owner) < 0) {
+				records.next();
+				record = records.peek();
+			}
+
+			for (; record != null && record.owner.equals(owner); records.next(), record = records.peek()) {
+				switch (record.kind) {
+					case JoinRecordSorter.CLASS:
+						if (!this.found) this.className = record.value;
+						this.found = true;
+						break;
+					case JoinRecordSorter.FIELD:
+						this.fields.computeIfAbsent(record.name, name -> new HashMap<>()).putIfAbsent(record.desc, record.value);
+						break;
+					default:
+						this.methods.computeIfAbsent(record.name, name -> new HashMap<>()).putIfAbsent(record.desc, record.value);
+						break;
+				}
+			}
+		}
+
+		/**
+		 * Gets the de-obfuscated name of a field. Fields without a descriptor
+		 * match any descriptor.
+		 */
+		String getField(final String name, final String desc) {
+			final Map<String, String> byDesc = this.fields.get(name);
+			if (byDesc == null) return null;
+
+			final String deobfName = byDesc.get(desc);
+			return deobfName != null || desc == null ? deobfName : byDesc.get(null);
+		}
+
+		String getMethod(final String name, final String desc) {
+			final Map<String, String> byDesc = this.methods.get(name);
+			return byDesc != null ? byDesc.get(desc) : null;
+		}
+
+	}
+
+	/**
+	 * Collects the records of one file into a sorter.
+	 * <p>
+	 * Every record is keyed by its names in the matched namespace. Records
+	 * of file A carry their names and descriptors in the from namespace,
+	 * while records of file B carry their names in the to namespace.
+	 */
+	private static final class RecordCollector implements MappingVisitor {
+
+		private static final int SOURCE = -1;
+
+		private final JoinRecordSorter sorter;
+		private final String match;
+		private final String value;
+		private final boolean obfuscated;
+		private final Map<String, String> matchClassNames;
+		private final Map<String, String> valueClassNames;
+
+		private int matchIndex;
+		private int valueIndex;
+
+		// The name of the current class, in the matched namespace
+		private String owner;
+
+		// The element whose names are currently being visited
+		private MappedElementKind pending;
+		private String srcName;
+		private String srcDesc;
+		private String matchName;
+		private String valueName;
+
+		RecordCollector(final JoinRecordSorter sorter, final String match, final String value, final boolean obfuscated,
+		                final Map<String, String> matchClassNames, final Map<String, String> valueClassNames) {
+			this.sorter = sorter;
+			this.match = match;
+			this.value = value;
+			this.obfuscated = obfuscated;
+			this.matchClassNames = matchClassNames;
+			this.valueClassNames = valueClassNames;
+		}
+
+		@Override
+		public void visitNamespaces(final String srcNamespace, final List<String> dstNamespaces) {
+			this.matchIndex = indexOf(srcNamespace, dstNamespaces, this.match);
+			this.valueIndex = indexOf(srcNamespace, dstNamespaces, this.value);
+		}
+
+		@Override
+		public boolean visitClass(final String srcName) throws IOException {
+			this.flush();
+			this.begin(MappedElementKind.CLASS, srcName, null);
+			return true;
+		}
+
+		@Override
+		public boolean visitField(final String srcName, final String srcDesc) throws IOException {
+			this.flush();
+			if (this.owner == null) return false;
+
+			this.begin(MappedElementKind.FIELD, srcName, srcDesc);
+			return true;
+		}
+
+		@Override
+		public boolean visitMethod(final String srcName, final String srcDesc) throws IOException {
+			this.flush();
+			if (this.owner == null) return false;
+
+			this.begin(MappedElementKind.METHOD, srcName, srcDesc);
+			return true;
+		}
+
+		@Override
+		public boolean visitMethodArg(final int argPosition, final int lvIndex, final String srcName) throws IOException {
+			this.flush();
+			return false;
+		}
+
+		@Override
+		public boolean visitMethodVar(final int lvtRowIndex, final int lvIndex, final int startOpIdx, final String srcName) throws IOException {
+			this.flush();
+			return false;
+		}
+
+		@Override
+		public void visitDstName(final MappedElementKind targetKind, final int namespace, final String name) {
+			if (namespace == this.matchIndex) this.matchName = name;
+			if (namespace == this.valueIndex) this.valueName = name;
+		}
+
+		@Override
+		public boolean visitElementContent(final MappedElementKind targetKind) throws IOException {
+			this.flush();
+			return targetKind == MappedElementKind.CLASS;
+		}
+
+		@Override
+		public void visitComment(final MappedElementKind targetKind, final String comment) {
+		}
+
+		@Override
+		public boolean visitEnd() throws IOException {
+			this.flush();
+			this.owner = null;
+			return true;
+		}
+
+		private void begin(final MappedElementKind kind, final String srcName, final String srcDesc) {
+			this.pending = kind;
+			this.srcName = srcName;
+			this.srcDesc = srcDesc;
+			this.matchName = this.matchIndex == SOURCE ? srcName : null;
+			this.valueName = this.valueIndex == SOURCE ? srcName : null;
+		}
+
+		private void flush() throws IOException {
+			final MappedElementKind kind = this.pending;
+			if (kind == null) return;
+			this.pending = null;
+
+			if (kind == MappedElementKind.CLASS) {
+				this.owner = this.matchName;
+
+				String name = this.valueName;
+				if (name == null && this.obfuscated) name = this.valueClassNames.getOrDefault(this.srcName, this.srcName);
+
+				// Only file A has any use for classes without a name to match by
+				if (this.owner != null || this.obfuscated) {
+					this.sorter.add(new Record(this.owner, JoinRecordSorter.CLASS, null, null, name, null));
+				}
+				return;
+			}
+
+			if (this.matchName == null) return;
+
+			String name = this.valueName;
+			if (name == null && this.obfuscated) name = this.srcName;
+
+			this.sorter.add(new Record(this.owner,
+					kind == MappedElementKind.FIELD ? JoinRecordSorter.FIELD : JoinRecordSorter.METHOD,
+					this.matchName, remap(this.srcDesc, this.matchClassNames),
+					name, this.obfuscated ? remap(this.srcDesc, this.valueClassNames) : null));
+		}
+
+		private static String remap(final String desc, final Map<String, String> classNames) {
+			return desc == null || classNames == null ? desc : Descriptors.remap(desc, classNames);
+		}
+
+		private static int indexOf(final String srcNamespace, final List<String> dstNamespaces, final String namespace) {
+			if (srcNamespace.equals(namespace)) return SOURCE;
+
+			final int index = dstNamespaces.indexOf(namespace);
+			if (index == -1) {
+				throw new IllegalArgumentException(String.format("Could not find namespace \"%s\" in provided mappings", namespace));
+			}
+			return index;
+		}
+
+	}
+
+}
@@ -0,0 +1,250 @@
+/*
+ * This file is part of lorenz-tiny, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2020 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.lorenztiny;
+
+import org.cadixdev.bombe.type.FieldType;
+import org.cadixdev.bombe.type.MethodDescriptor;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * A thread-safe pool of strings, used to store equal names and
+ * descriptors only once across every loaded mapping tree and
+ * {@link org.cadixdev.lorenz.MappingSet mapping set}.
+ * <p>
+ * Two kinds of pool are available: {@link #weak() weak pools} hold every
+ * string for as long as it is referenced from elsewhere, and
+ * {@link #bounded(int) bounded pools} hold a fixed number of strings,
+ * replacing older strings as new ones arrive.
+ * <p>
+ * Pools also hold the {@link FieldType field types} and
+ * {@link MethodDescriptor method descriptors} parsed from descriptors,
+ * so that equal descriptors are only parsed, and stored, once.
+ *
+ * @see TinyMappingFormat#setStringPool(TinyStringPool)
+ * @see InterningMappingVisitor
+ * @since 4.1.0
+ */
+public abstract class TinyStringPool {
+
+	private static final TinyStringPool SHARED = weak();
+
+	TinyStringPool() {
+	}
+
+	/**
+	 * Gets a process-wide weak pool.
+	 *
+	 * @return The shared pool
+	 */
+	public static TinyStringPool shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Creates a new pool, holding strings weakly. Strings are held for as
+	 * long as they are referenced from outside of the pool, so every equal
+	 * string in use is only ever stored once.
+	 *
+	 * @return The pool
+	 */
+	public static TinyStringPool weak() {
+		return new Weak();
+	}
+
+	/**
+	 * Creates a new pool, holding up to the given number of strings. When a
+	 * string hashes to a slot holding another string, it replaces it, so the
+	 * pool never grows however many strings pass through it.
+	 *
+	 * @param capacity The number of strings to hold, rounded up to a power of two
+	 * @return The pool
+	 */
+	public static TinyStringPool bounded(final int capacity) {
+		if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+		return new Bounded(capacity);
+	}
+
+	/**
+	 * Gets the pooled string equal to the given string, adding it to the
+	 * pool if there is none.
+	 *
+	 * @param string The string, may be {@code null}
+	 * @return The pooled string, or {@code null} if given {@code null}
+	 */
+	public abstract String intern(final String string);
+
+	/**
+	 * Gets the pooled field type parsed from the given descriptor, parsing
+	 * it and adding it to the pool if there is none.
+	 *
+	 * @param descriptor The field descriptor, may be {@code null}
+	 * @return The pooled type, or {@code null} if given {@code null}
+	 */
+	public FieldType internFieldType(final String descriptor) {
+		if (descriptor == null) return null;
+		return (FieldType) this.internParsed(descriptor, FieldType::of);
+	}
+
+	/**
+	 * Gets the pooled method descriptor parsed from the given descriptor,
+	 * parsing it and adding it to the pool if there is none.
+	 *
+	 * @param descriptor The method descriptor, may be {@code null}
+	 * @return The pooled descriptor, or {@code null} if given {@code null}
+	 */
+	public MethodDescriptor internMethodDescriptor(final String descriptor) {
+		if (descriptor == null) return null;
+		return (MethodDescriptor) this.internParsed(descriptor, MethodDescriptor::of);
+	}
+
+	/**
+	 * Gets the pooled value parsed from the given descriptor. Method
+	 * descriptors always start with {@code (}, and field descriptors never
+	 * do, so both kinds share the one table.
+	 */
+	abstract Object internParsed(final String descriptor, final Function<String, ?> parser);
+
+	// Spread the hash, as String's hash is weak in the low bits for similar names
+	static int spread(final int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * A pool split into independently locked segments of weak maps.
+	 */
+	private static final class Weak extends TinyStringPool {
+
+		private static final int SEGMENTS = 64;
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private final Map<String, WeakReference<String>>[] segments = new Map[SEGMENTS];
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private final Map<String, WeakReference<Object>>[] parsed = new Map[SEGMENTS];
+
+		Weak() {
+			for (int i = 0; i < SEGMENTS; i++) {
+				this.segments[i] = new WeakHashMap<>();
+				this.parsed[i] = new WeakHashMap<>();
+			}
+		}
+
+		@Override
+		public String intern(final String string) {
+			if (string == null) return null;
+
+			final Map<String, WeakReference<String>> segment = this.segments[spread(string.hashCode()) & (SEGMENTS - 1)];
+			synchronized (segment) {
+				final WeakReference<String> ref = segment.get(string);
+				final String pooled = ref != null ? ref.get() : null;
+				if (pooled != null) return pooled;
+
+				segment.put(string, new WeakReference<>(string));
+				return string;
+			}
+		}
+
+		@Override
+		Object internParsed(final String descriptor, final Function<String, ?> parser) {
+			// Keyed by the pooled string, which lives as long as anything else is using it
+			final String key = this.intern(descriptor);
+			final Map<String, WeakReference<Object>> segment = this.parsed[spread(key.hashCode()) & (SEGMENTS - 1)];
+			synchronized (segment) {
+				final WeakReference<Object> ref = segment.get(key);
+				final Object pooled = ref != null ? ref.get() : null;
+				if (pooled != null) return pooled;
+			}
+
+			final Object value = parser.apply(key);
+			synchronized (segment) {
+				final WeakReference<Object> ref = segment.get(key);
+				final Object pooled = ref != null ? ref.get() : null;
+				if (pooled != null) return pooled;
+
+				segment.put(key, new WeakReference<>(value));
+				return value;
+			}
+		}
+
+	}
+
+	/**
+	 * A lossy, direct-mapped pool, which never blocks.
+	 */
+	private static final class Bounded extends TinyStringPool {
+
+		private final AtomicReferenceArray<String> slots;
+		private final AtomicReferenceArray<Parsed> parsed;
+		private final int mask;
+
+		Bounded(final int capacity) {
+			final int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+			this.slots = new AtomicReferenceArray<>(size);
+			this.parsed = new AtomicReferenceArray<>(size);
+			this.mask = size - 1;
+		}
+
+		@Override
+		public String intern(final String string) {
+			if (string == null) return null;
+
+			final int slot = spread(string.hashCode()) & this.mask;
+			final String pooled = this.slots.get(slot);
+			if (string.equals(pooled)) return pooled;
+
+			this.slots.lazySet(slot, string);
+			return string;
+		}
+
+		@Override
+		Object internParsed(final String descriptor, final Function<String, ?> parser) {
+			final int slot = spread(descriptor.hashCode()) & this.mask;
+			final Parsed pooled = this.parsed.get(slot);
+			if (pooled != null && descriptor.equals(pooled.descriptor)) return pooled.value;
+
+			final Object value = parser.apply(descriptor);
+			this.parsed.lazySet(slot, new Parsed(this.intern(descriptor), value));
+			return value;
+		}
+
+		private static final class Parsed {
+
+			final String descriptor;
+			final Object value;
+
+			Parsed(final String descriptor, final Object value) {
+				this.descriptor = descriptor;
+				this.value = value;
+			}
+
+		}
+
+	}
+
+}